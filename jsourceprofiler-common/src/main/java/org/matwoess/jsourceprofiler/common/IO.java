@@ -100,6 +100,17 @@ public class IO {
     return getOutputDir().resolve("metadata.dat");
   }
 
+  /**
+   * Returns the path to the counter header file.
+   * It contains the number of blocks and the counter settings,
+   * read by the <code>__Counter</code> class at the start of the instrumented program.
+   *
+   * @return <code>counter.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getCounterHeaderPath() {
+    return getOutputDir().resolve("counter.dat");
+  }
+
   /**
    * Returns the path to the resulting counts file.
    * This data is written as soon as the instrumented version is run and is used for report generation.
@@ -110,6 +121,138 @@ public class IO {
     return getOutputDir().resolve("counts.dat");
   }
 
+  /**
+   * Returns the path to the method timings file.
+   * It is only written by instrumented programs with enabled method timing.
+   *
+   * @return <code>timings.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getTimingsPath() {
+    return getOutputDir().resolve("timings.dat");
+  }
+
+  /**
+   * Returns the path to the file listing the blocks that were shared between threads.
+   * It is only written by instrumented programs using the adaptive counter mode.
+   *
+   * @return <code>shared.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getSharedBlocksPath() {
+    return getOutputDir().resolve("shared.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the block counts of every thread (or group of threads).
+   * It is only written by instrumented programs using the per-thread counter mode.
+   *
+   * @return <code>threads.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getThreadCountsPath() {
+    return getOutputDir().resolve("threads.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the block counts of the named phases recorded by the program.
+   * It is only written if the instrumented program calls <code>__Counter.begin</code>.
+   *
+   * @return <code>phases.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getPhasesPath() {
+    return getOutputDir().resolve("phases.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the number of calls between every caller and callee method.
+   * It is only written if calls were counted with <code>--call-graph</code>.
+   *
+   * @return <code>calls.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getCallEdgesPath() {
+    return getOutputDir().resolve("calls.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the iteration count histograms of all executed loops.
+   * It is only written if loop histograms were enabled with <code>--loop-histograms</code>.
+   *
+   * @return <code>loops.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getLoopHistogramsPath() {
+    return getOutputDir().resolve("loops.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the number of exceptions leaving every block, by their source line.
+   * It is only written if exception exits were recorded with <code>--exception-exits</code>.
+   *
+   * @return <code>exceptions.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getExceptionExitsPath() {
+    return getOutputDir().resolve("exceptions.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the number of executions of every path through the path-profiled methods.
+   * It is only written if paths were recorded with <code>--paths</code>.
+   *
+   * @return <code>paths.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getPathsPath() {
+    return getOutputDir().resolve("paths.dat");
+  }
+
+  /**
+   * Returns the path to the file containing the sparse counter deltas of all timeline snapshots.
+   * It is only written if a timeline was recorded with <code>--timeline</code>.
+   *
+   * @return <code>timeline.dat</code> relative to the {@link #outputDir}
+   */
+  public static Path getTimelinePath() {
+    return getOutputDir().resolve("timeline.dat");
+  }
+
+  /**
+   * Returns the directory containing the run-unique counts files.
+   * Every run of a program instrumented with <code>--unique-counts</code> writes its own counts file into it,
+   * instead of overwriting the {@link #getCountsPath() counts file}.
+   *
+   * @return <code>runs</code> relative to the {@link #outputDir}
+   */
+  public static Path getRunCountsDir() {
+    return getOutputDir().resolve("runs");
+  }
+
+  /**
+   * Returns the directory containing the periodic or on-demand counter snapshots of a running program.
+   *
+   * @return <code>snapshots</code> relative to the {@link #outputDir}
+   */
+  public static Path getSnapshotsDir() {
+    return getOutputDir().resolve("snapshots");
+  }
+
+  /**
+   * Returns the path to the counts snapshot with the given sequence number.
+   * It has the same format as the {@link #getCountsPath() counts file}.
+   *
+   * @param sequenceNumber the (1-based) sequence number of the snapshot
+   * @return <code>counts-NNNNNN.dat</code> inside the {@link #getSnapshotsDir() snapshots directory}
+   */
+  public static Path getSnapshotPath(int sequenceNumber) {
+    return getSnapshotsDir().resolve(String.format("counts-%06d.dat", sequenceNumber));
+  }
+
+  /**
+   * Returns the path to the control file for requesting a counter snapshot.
+   * If this file is created while the instrumented program is running, it is deleted
+   * and a new snapshot is written.
+   *
+   * @return <code>snapshot.trigger</code> relative to the {@link #outputDir}
+   */
+  public static Path getSnapshotTriggerPath() {
+    return getOutputDir().resolve("snapshot.trigger");
+  }
+
   /**
    * Returns the containing root directory for the generated report.
    *
@@ -128,6 +271,60 @@ public class IO {
     return getReportDir().resolve("index.html");
   }
 
+  /**
+   * Returns the file path of the report overview of the threads (only generated in the per-thread counter mode).
+   *
+   * @return <code>threads.html</code> relative to the report directory
+   */
+  public static Path getReportThreadIndexPath() {
+    return getReportDir().resolve("threads.html");
+  }
+
+  /**
+   * Returns the file path of the report call graph (only generated if calls were counted).
+   *
+   * @return <code>callgraph.html</code> relative to the report directory
+   */
+  public static Path getReportCallGraphPath() {
+    return getReportDir().resolve("callgraph.html");
+  }
+
+  /**
+   * Returns the file path of the report overview of the loops (only generated if loop histograms were recorded).
+   *
+   * @return <code>loops.html</code> relative to the report directory
+   */
+  public static Path getReportLoopIndexPath() {
+    return getReportDir().resolve("loops.html");
+  }
+
+  /**
+   * Returns the file path of the report overview of the counter increments per method (only generated if hits were counted).
+   *
+   * @return <code>overhead.html</code> relative to the report directory
+   */
+  public static Path getReportOverheadPath() {
+    return getReportDir().resolve("overhead.html");
+  }
+
+  /**
+   * Returns the file path of the report page of the hottest paths (only generated if paths were recorded).
+   *
+   * @return <code>paths.html</code> relative to the report directory
+   */
+  public static Path getReportPathsPath() {
+    return getReportDir().resolve("paths.html");
+  }
+
+  /**
+   * Returns the file path of the report timeline of classes and methods (only generated if a timeline was recorded).
+   *
+   * @return <code>timeline.html</code> relative to the report directory
+   */
+  public static Path getReportTimelinePath() {
+    return getReportDir().resolve("timeline.html");
+  }
+
   /**
    * Returns the path of a JavaScript or CSS report file relative to the report directory.
    *
@@ -15,7 +15,11 @@ public enum RunMode {
   /**
    * Only generate the report from existing counts, metadata and source code files.
    */
-  REPORT_ONLY;
+  REPORT_ONLY,
+  /**
+   * Merge the counts files of multiple runs and generate the report from the merged counts.
+   */
+  MERGE_COUNTS;
 
   /**
    * {@return a description for the run mode}
@@ -26,6 +30,7 @@ public enum RunMode {
       case DEFAULT -> "Instrument, compile, run, report";
       case INSTRUMENT_ONLY -> "Instrument only";
       case REPORT_ONLY -> "Generate report only";
+      case MERGE_COUNTS -> "Merge counts, report";
     };
   }
 }
\ No newline at end of file
@@ -155,7 +155,8 @@ public class AppController implements RecursiveDirectoryWatcher.FileEventListene
    * Initializes the run mode control.
    */
   private void initRunModeControl() {
-    cbRunMode.getItems().setAll(RunMode.values());
+    // merging the counts of multiple runs is only supported on the command line
+    cbRunMode.getItems().setAll(RunMode.DEFAULT, RunMode.INSTRUMENT_ONLY, RunMode.REPORT_ONLY);
     cbRunMode.valueProperty().bindBidirectional(appState.runMode);
   }
 
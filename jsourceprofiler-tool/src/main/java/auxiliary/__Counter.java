@@ -1,79 +1,2073 @@
 package auxiliary;
 
+import javax.management.*;
 import java.io.*;
-import java.util.concurrent.atomic.AtomicLongArray;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Cleaner;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * This class is used to count the number of times a block of code is executed.
+ * <p>
+ * If enabled in the metadata, an instance of this class is registered as a platform MBean,
+ * giving access to the live counters (see {@link #invoke}).
  */
-public class __Counter {
+public class __Counter implements DynamicMBean {
+  private static final VarHandle LONG_ARRAY = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final int N_STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+  private static final VarHandle MAPPED_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final int MAPPED_HEADER_SIZE = 8; // padded, so that all counters are 8-byte aligned
+  private static final long SNAPSHOT_POLL_MILLIS = 500;
+  private static final String MBEAN_NAME = "auxiliary:type=__Counter";
+  private static final ThreadLocal<long[]> SAMPLING_STATE = ThreadLocal.withInitial(__Counter::newSamplingState);
+  private static final long SHARED_BLOCK = -1; // owner of a block that was promoted to atomic increments
+  private static final ThreadLocal<long[]> TIMING_STACK = ThreadLocal.withInitial(() -> new long[32]);
+  private static final ThreadLocal<long[]> THREAD_COUNTS = ThreadLocal.withInitial(__Counter::createThreadCounts);
+  private static final ThreadLocal<int[]> CURRENT_METHOD = ThreadLocal.withInitial(() -> new int[]{-1});
+  private static final int MIN_CALL_EDGE_CAPACITY = 1024;
+  private static final int PATH_TABLE_CAPACITY = 256;
+  private static final int MAX_OVERFLOW_PATHS = 4096;
+  private static final int N_LOOP_BUCKETS = 64;
+  private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.SHOW_REFLECT_FRAMES);
+  private static final ThreadLocal<int[]> FRAME_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+  private static final int N_TRACKED_EXCEPTIONS = 4;
+  private static final ThreadLocal<Object[][]> TRACKED_EXCEPTIONS = ThreadLocal.withInitial(() -> new Object[N_TRACKED_EXCEPTIONS][]);
+  private static final int MAX_TIMELINE_SNAPSHOTS = 4096;
+  private static final int MAX_TIMELINE_ENTRIES = 1 << 20;
+  private static final int INITIAL_TIMELINE_SECONDS = 1;
+  private static final Object TIMELINE_LOCK = new Object();
+  private static final int HEADER_VERSION = 7;
+  private static final String RUN_ID_PROPERTY = "jsourceprofiler.runId";
+  private static final String COUNTING_PROPERTY = "jsourceprofiler.counting";
+  private static final MethodType INC_TYPE = MethodType.methodType(void.class, int.class);
+  private static final MutableCallSite TOGGLEABLE_INC = new MutableCallSite(MethodHandles.empty(INC_TYPE));
+  private static final MethodHandle TOGGLEABLE_INVOKER = TOGGLEABLE_INC.dynamicInvoker();
+
+  private static int nBlocks;
+  private static String countsFileName;
+  private static int[] blockCounts;
+  private static boolean toggleable;
+  private static volatile boolean countingEnabled;
+  private static AtomicIntegerArray atomicBlockCounts;
+  private static volatile Map<Integer, Long> promotedCounts = Map.of();
+  private static volatile Map<Integer, Long> carriedHalves = Map.of();
+  private static long[][] stripedBlockCounts;
+  private static byte[] coveredBlocks;
+  private static ConcurrentSkipListMap<Integer, long[]> holderCounts;
+  private static MappedByteBuffer mappedCounts;
+  private static long[] blockOwners;
+  private static Map<long[], String> liveThreadCounts;
+  private static Map<String, long[]> threadGroupCounts;
+  private static Pattern threadNamePattern;
+  private static Cleaner threadCountsCleaner;
+  private static int samplingRate;
+  private static int snapshotInterval;
+  private static int timelineInterval;
+  private static boolean registerMBean;
+  private static long[] totalTimes;
+  private static long[] selfTimes;
+  private static long[] maxTimes;
+  private static long[] cpuTimes;
+  private static ThreadMXBean threadMXBean;
+  private static long[] callEdges;
+  private static AtomicLong droppedCalls;
+  private static long[][] loopHistograms;
+  private static Map<Long, long[]> exceptionExits;
+  private static long[][] pathTables;
+  private static AtomicReferenceArray<Map<Long, long[]>> overflowPaths;
+  private static AtomicLong droppedPaths;
+  private static long timelineStart;
+  private static long[] timelineLastCounts;
+  private static long[] timelineTimes;
+  private static long[] timelineOffsets;
+  private static int[] timelineBlocks;
+  private static long[] timelineDeltas;
+  private static int nTimelineSnapshots;
+  private static long nTimelineEntries;
+  private static Map<String, long[]> phaseCounts = new LinkedHashMap<>();
+  private static String activePhase;
+  private static long[] phaseStartCounts;
+  private static boolean phasesHookRegistered;
+
   static {
-    init(".profiler/metadata.dat");
-    Runtime.getRuntime().addShutdownHook(new Thread(() -> save((".profiler/counts.dat"))));
+    init(".profiler/counter.dat", ".profiler/counts.dat", ".profiler/runs");
+    if (mappedCounts == null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> save(countsFileName)));
+    }
+    if (blockOwners != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> saveSharedBlocks(".profiler/shared.dat")));
+    }
+    if (totalTimes != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> saveTimes(".profiler/timings.dat")));
+    }
+    if (liveThreadCounts != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> saveNamedCounts(".profiler/threads.dat", getThreadCounts())));
+    }
+    if (callEdges != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> saveCallEdges(".profiler/calls.dat")));
+    }
+    if (loopHistograms != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> saveLoopHistograms(".profiler/loops.dat")));
+    }
+    if (exceptionExits != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> saveExceptionExits(".profiler/exceptions.dat")));
+    }
+    if (pathTables != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> savePaths(".profiler/paths.dat")));
+    }
+    if (snapshotInterval >= 0) {
+      startSnapshotThread(".profiler/snapshots", ".profiler/snapshot.trigger", snapshotInterval);
+    }
+    if (timelineInterval > 0) {
+      startTimelineThread(timelineInterval);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        takeTimelineSnapshot();
+        saveTimeline(".profiler/timeline.dat");
+      }));
+    }
+    if (registerMBean) {
+      registerMBean();
+    }
+  }
+
+  /**
+   * Begins recording the block counts of a named phase of the program, like the steady state after a warmup.
+   * <p>
+   * This can be called by the profiled program itself (or by reflection, if it should also run uninstrumented).
+   * The counts of a phase are the difference of the counters between the calls to <code>begin</code> and {@link #end},
+   * so the counting itself is not affected at all.
+   * If another phase is active, it is ended first. A phase can be recorded multiple times, its counts are added up.
+   * Phases are global: block entries of all threads are attributed to the active phase.
+   * <p>
+   * The first call registers the shutdown hook writing the phases file, so that programs without phases never write it.
+   *
+   * @param phase the name of the phase
+   */
+  public static synchronized void begin(String phase) {
+    if (activePhase != null) {
+      end();
+    }
+    if (!phasesHookRegistered) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> savePhases(".profiler/phases.dat")));
+      phasesHookRegistered = true;
+    }
+    phaseStartCounts = getCounts(0, nBlocks);
+    activePhase = phase;
+  }
+
+  /**
+   * Ends the recording of the active phase, started with {@link #begin}.
+   * <p>
+   * All recorded phases are written to the phases file at the end of the program.
+   *
+   * @throws IllegalStateException if no phase is active
+   */
+  public static synchronized void end() {
+    if (activePhase == null) {
+      throw new IllegalStateException("No active phase to end.");
+    }
+    long[] counts = getCounts(0, nBlocks);
+    long[] phase = phaseCounts.computeIfAbsent(activePhase, k -> new long[nBlocks]);
+    for (int i = 0; i < nBlocks; i++) {
+      phase[i] += counts[i] - phaseStartCounts[i];
+    }
+    activePhase = null;
+    phaseStartCounts = null;
+  }
+
+  /**
+   * Increments the counter for the given block.
+   * <p>
+   * The regular counters are 32-bit integers that wrap around freely.
+   * Whenever a counter enters the other half of its range (at 2<sup>31</sup> or when wrapping around to 0),
+   * this is recorded in the carried halves of the block (see {@link #carry}), so the count itself never overflows.
+   *
+   * @param n the block id
+   */
+  public static void inc(int n) {
+    if ((++blockCounts[n] & Integer.MAX_VALUE) == 0) {
+      carry(n);
+    }
+  }
+
+  /**
+   * Adds the given number of hits to the counter of the given block.
+   * <p>
+   * This is used to flush the hits of a loop body, which were accumulated in a local variable during the loop.
+   * If the counter would leave its current half, the sum is recorded together with the carried halves
+   * (like by {@link #carry}).
+   *
+   * @param n    the block id
+   * @param hits the number of hits to add
+   */
+  public static void addHits(int n, long hits) {
+    int counter = blockCounts[n];
+    if ((counter & Integer.MAX_VALUE) + hits <= Integer.MAX_VALUE) {
+      blockCounts[n] = counter + (int) hits;
+    } else {
+      addHitsCarried(n, hits);
+    }
+  }
+
+  /**
+   * Adds the given number of hits to the counter of the given block,
+   * recording all halves the count passes in the carried halves of the block.
+   *
+   * @param n    the block id
+   * @param hits the number of hits to add
+   */
+  private static synchronized void addHitsCarried(int n, long hits) {
+    long halves = carriedHalves.getOrDefault(n, 0L);
+    long count = (halves << 31) + offsetInHalf(blockCounts[n], halves) + hits;
+    blockCounts[n] = (int) count;
+    setCarriedHalves(n, count >>> 31);
+  }
+
+  /**
+   * Increments the counter for the given block, if counting is enabled.
+   * <p>
+   * The call goes through the target of a {@link MutableCallSite}, which is either {@link #inc} or a no-op.
+   * As the invoker is a constant, the JIT compiler inlines the current target and drops the call entirely
+   * while counting is disabled. Enabling or disabling counting (see {@link #enable}, {@link #disable})
+   * relinks the call site, which deoptimizes the compiled code depending on the old target.
+   *
+   * @param n the block id
+   */
+  public static void incToggleable(int n) {
+    try {
+      TOGGLEABLE_INVOKER.invokeExact(n);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Enables the counters of the toggleable counter mode (see {@link #incToggleable}).
+   * <p>
+   * The counts recorded before disabling are kept, the counters continue from there.
+   *
+   * @throws IllegalStateException if the program was not instrumented with toggleable counters
+   */
+  public static synchronized void enable() {
+    setCountingEnabled(true);
+  }
+
+  /**
+   * Disables the counters of the toggleable counter mode (see {@link #incToggleable}).
+   * <p>
+   * Block entries are not counted until {@link #enable} is called, the counts are still written at the end.
+   *
+   * @throws IllegalStateException if the program was not instrumented with toggleable counters
+   */
+  public static synchronized void disable() {
+    setCountingEnabled(false);
+  }
+
+  /**
+   * Returns whether block entries are currently counted.
+   * <p>
+   * This is always the case, unless the counters are toggleable and were disabled.
+   *
+   * @return whether counting is enabled
+   */
+  public static boolean isEnabled() {
+    return !toggleable || countingEnabled;
+  }
+
+  /**
+   * Sets the target of the toggleable call site to {@link #inc} or to a no-op,
+   * and makes the new target visible to all threads.
+   *
+   * @param enabled whether to count block entries
+   * @throws IllegalStateException if the program was not instrumented with toggleable counters
+   */
+  private static void setCountingEnabled(boolean enabled) {
+    if (!toggleable) {
+      throw new IllegalStateException("The counters are not toggleable, instrument with --toggleable.");
+    }
+    if (enabled == countingEnabled) {
+      return;
+    }
+    MethodHandle target;
+    try {
+      target = enabled ? MethodHandles.lookup().findStatic(__Counter.class, "inc", INC_TYPE) : MethodHandles.empty(INC_TYPE);
+    } catch (ReflectiveOperationException e) {
+      throw new RuntimeException(e);
+    }
+    TOGGLEABLE_INC.setTarget(target);
+    MutableCallSite.syncAll(new MutableCallSite[]{TOGGLEABLE_INC});
+    countingEnabled = enabled;
+  }
+
+  /**
+   * Registers the counter-array of a holder class generated for a source file in the <code>HOLDER</code> counter mode.
+   * <p>
+   * This is called by the static initializer of the holder class, which then increments the array elements directly.
+   * The array covers the blocks from <code>first</code> to <code>first + length - 1</code>.
+   * If the holder class is initialized again (in another class loader), the already registered array is returned,
+   * so that the counts of all copies of the class are added up.
+   *
+   * @param first  the global id of the first block of the source file
+   * @param length the number of blocks of the source file
+   * @return the counter-array of the holder class
+   * @throws IllegalStateException if the program was not instrumented with counter holders
+   */
+  public static long[] register(int first, int length) {
+    if (holderCounts == null) {
+      throw new IllegalStateException("The counters are not held by generated classes, instrument with --holders.");
+    }
+    if (first < 0 || first + length > nBlocks) {
+      throw new IndexOutOfBoundsException("Invalid block range: " + first + " to " + (first + length));
+    }
+    return holderCounts.computeIfAbsent(first, k -> new long[length]);
+  }
+
+  /**
+   * Increments the counter for the given block, in a synchronized way.
+   *
+   * @param n the block id
+   */
+  public static void incSync(int n) {
+    if (atomicBlockCounts.incrementAndGet(n) < 0) {
+      carrySync(n);
+    }
+  }
+
+  /**
+   * Records that the regular counter of the given block entered the next half of its range,
+   * if it is (still) beyond the last recorded half.
+   * <p>
+   * The counter itself is never modified here. As the increments are not synchronized,
+   * a thread that read the counter before the crossing can later write a value of the previous half back.
+   * Such a value is recognized by its (small) negative offset, so it only loses increments like any other
+   * unsynchronized update, and the next crossing of the same half is not recorded a second time.
+   * <p>
+   * Counters only rarely cross a half, so the carried halves are kept in a small map,
+   * which is replaced on every update, so that it can be read without locking.
+   *
+   * @param n the block id
+   */
+  private static synchronized void carry(int n) {
+    long halves = carriedHalves.getOrDefault(n, 0L);
+    if (offsetInHalf(blockCounts[n], halves) >= 1L << 31) {
+      setCarriedHalves(n, halves + 1);
+    }
+  }
+
+  /**
+   * Returns the offset of the given regular counter value from the start of the last recorded half.
+   * <p>
+   * Offsets between -2<sup>30</sup> and 3 * 2<sup>30</sup> are recognized, which covers values written back
+   * by stale increments (slightly negative) and crossings that were not recorded yet (2<sup>31</sup> and more).
+   *
+   * @param counter the value of the regular counter
+   * @param halves  the number of carried halves of the block
+   * @return the offset of the counter from the start of its half
+   */
+  private static long offsetInHalf(int counter, long halves) {
+    int offset = counter - ((int) halves << 31);
+    return Integer.toUnsignedLong(offset + (1 << 30)) - (1 << 30);
+  }
+
+  /**
+   * Sets the number of carried halves of the given block.
+   * Must only be called while holding the class lock.
+   *
+   * @param n      the block id
+   * @param halves the new number of carried halves
+   */
+  private static void setCarriedHalves(int n, long halves) {
+    Map<Integer, Long> carried = new HashMap<>(carriedHalves);
+    carried.put(n, halves);
+    carriedHalves = carried;
+  }
+
+  /**
+   * Carries 2<sup>31</sup> from the synchronized counter of the given block to its promoted count,
+   * if the counter (still) has its sign bit set.
+   * <p>
+   * Concurrent increments are not lost, as the counter is decremented atomically.
+   * If multiple threads see the sign bit set, only the first one carries.
+   *
+   * @param n the block id
+   */
+  private static synchronized void carrySync(int n) {
+    if (atomicBlockCounts.get(n) < 0) {
+      atomicBlockCounts.addAndGet(n, Integer.MIN_VALUE);
+      promote(n);
+    }
+  }
+
+  /**
+   * Adds 2<sup>31</sup> to the promoted count of the given block.
+   * Must only be called while holding the class lock.
+   *
+   * @param n the block id
+   */
+  private static void promote(int n) {
+    Map<Integer, Long> promoted = new HashMap<>(promotedCounts);
+    promoted.merge(n, 1L << 31, Long::sum);
+    promotedCounts = promoted;
+  }
+
+  /**
+   * Increments the counter for the given block, using striped cells.
+   * <p>
+   * Every thread is mapped to one of the stripes by its thread id, so that concurrent increments
+   * of the same block by different threads mostly update different cache lines.
+   * The increment itself is still atomic, as multiple threads (or virtual threads) can share the same stripe.
+   *
+   * @param n the block id
+   */
+  public static void incStriped(int n) {
+    int stripe = probe(Thread.currentThread());
+    long[] cells = stripedBlockCounts[stripe];
+    if (cells == null) {
+      cells = createStripe(stripe);
+    }
+    LONG_ARRAY.getAndAdd(cells, n, 1L);
+  }
+
+  /**
+   * Increments the counter for the given block, directly inside the memory-mapped counts file.
+   * <p>
+   * The increment is atomic, and the counts file always contains the current counts.
+   *
+   * @param n the block id
+   */
+  public static void incMapped(int n) {
+    MAPPED_LONG.getAndAdd(mappedCounts, MAPPED_HEADER_SIZE + (n << 3), 1L);
+  }
+
+  /**
+   * Increments the counter for the given block, adapting to the threads that execute it.
+   * <p>
+   * The first thread entering a block becomes its owner, and increments the regular counter
+   * without any synchronization. As long as no other thread enters the block, this is as cheap as {@link #inc}.
+   * Once a second thread is observed, the block is marked as shared (promoted),
+   * and all further increments of all threads go to the atomic counter, like {@link #incSync}.
+   * The owner might still do a few plain increments until it sees the promotion,
+   * but as it is the only thread ever writing the regular counter, no updates are lost.
+   *
+   * @param n the block id
+   */
+  @SuppressWarnings("deprecation") // Thread.threadId() is only available since Java 19
+  public static void incAdaptive(int n) {
+    long threadId = Thread.currentThread().getId();
+    if (blockOwners[n] == threadId) {
+      if ((++blockCounts[n] & Integer.MAX_VALUE) == 0) {
+        carry(n);
+      }
+    } else {
+      incAdaptiveSlow(n, threadId);
+    }
+  }
+
+  /**
+   * Handles the increment of a block that is not owned by the current thread.
+   * <p>
+   * The block is either claimed (if it has no owner yet), or it is promoted to atomic increments.
+   *
+   * @param n        the block id
+   * @param threadId the id of the current thread
+   */
+  private static void incAdaptiveSlow(int n, long threadId) {
+    long owner = (long) LONG_ARRAY.getVolatile(blockOwners, n);
+    if (owner == 0 && LONG_ARRAY.compareAndSet(blockOwners, n, 0L, threadId)) {
+      blockCounts[n]++;
+      return;
+    }
+    if (owner != SHARED_BLOCK) {
+      LONG_ARRAY.setVolatile(blockOwners, n, SHARED_BLOCK);
+    }
+    incSync(n);
+  }
+
+  /**
+   * Increments the counter for the given block in the counter-array of the current thread.
+   * <p>
+   * Without a thread name pattern, every thread has its own counter-array, so a plain increment is sufficient.
+   * With a pattern, all threads of a group share the counter-array of the group, which is incremented atomically.
+   * The counts are kept separately for every thread name (or group of threads, see {@link #getThreadGroup}),
+   * to show the distribution of the block entries over the threads in the report.
+   *
+   * @param n the block id
+   */
+  public static void incPerThread(int n) {
+    long[] counts = THREAD_COUNTS.get();
+    if (threadNamePattern == null) {
+      counts[n]++;
+    } else {
+      LONG_ARRAY.getAndAdd(counts, n, 1L);
+    }
+  }
+
+  /**
+   * Marks the given block as covered.
+   * <p>
+   * The flag is only written if it is not set yet. After the first entry of a block, its flag is only read,
+   * so the cache line holding it can stay shared between all cores.
+   * Concurrent first entries might write the flag multiple times, which is harmless.
+   *
+   * @param n the block id
+   */
+  public static void incCovered(int n) {
+    if (coveredBlocks[n] == 0) {
+      coveredBlocks[n] = 1;
+    }
+  }
+
+  /**
+   * Returns the counter-array of a new thread.
+   * <p>
+   * If a thread name pattern was specified, this is the shared counter-array of the thread group.
+   * Otherwise, a new counter-array is registered for the thread, which is flushed into the counts of its thread name
+   * by {@link #flushThreadCounts} once the thread is no longer reachable.
+   * The registered arrays do not reference their thread, so terminated threads can be garbage collected.
+   * This way, the number of counter-arrays is bounded by the number of live threads and thread groups.
+   *
+   * @return the counter-array of the current thread
+   */
+  private static synchronized long[] createThreadCounts() {
+    Thread thread = Thread.currentThread();
+    String group = getThreadGroup(thread);
+    if (threadNamePattern != null) {
+      return threadGroupCounts.computeIfAbsent(group, k -> new long[nBlocks]);
+    }
+    long[] counts = new long[nBlocks];
+    liveThreadCounts.put(counts, group);
+    threadCountsCleaner.register(thread, () -> flushThreadCounts(counts));
+    return counts;
+  }
+
+  /**
+   * Adds the counter-array of a collected thread to the counts of its thread group and releases it.
+   * <p>
+   * The thread terminated before it became unreachable, so all of its (plain) increments are visible.
+   *
+   * @param counts the counter-array of the thread
+   */
+  private static synchronized void flushThreadCounts(long[] counts) {
+    String group = liveThreadCounts.remove(counts);
+    if (group != null) {
+      addCounts(threadGroupCounts.computeIfAbsent(group, k -> new long[nBlocks]), counts);
+    }
+  }
+
+  /**
+   * Returns the name of the group that the counts of the given thread are attributed to.
+   * <p>
+   * If a thread name pattern was specified, threads are grouped by the first match of the pattern in their name.
+   * Otherwise (or if the pattern does not match), every thread name is its own group.
+   *
+   * @param thread the thread
+   * @return the name of the thread group
+   */
+  private static String getThreadGroup(Thread thread) {
+    String name = thread.getName();
+    if (threadNamePattern != null) {
+      Matcher matcher = threadNamePattern.matcher(name);
+      if (matcher.find()) {
+        return matcher.group();
+      }
+    }
+    return name.isEmpty() ? "(unnamed)" : name;
+  }
+
+  /**
+   * Adds the given counts to the counts of the target array.
+   *
+   * @param target the array to add the counts to
+   * @param counts the counts to add
+   */
+  private static void addCounts(long[] target, long[] counts) {
+    for (int i = 0; i < nBlocks; i++) {
+      target[i] += counts[i];
+    }
+  }
+
+  /**
+   * Counts only about one of every <code>samplingRate</code> executions of blocks, on average.
+   * <p>
+   * Every thread has its own countdown, which is decremented on every block entry (of any block).
+   * When it reaches zero, the current block is counted, and the countdown is restarted with a random distance.
+   * The distances are geometrically distributed, so every block entry is sampled with the same probability,
+   * and the counts can be scaled up by the sampling rate to get an unbiased estimate of the real counts.
+   * Only the (rare) sample itself is counted atomically.
+   *
+   * @param n the block id
+   */
+  public static void incSampled(int n) {
+    long[] state = SAMPLING_STATE.get();
+    if (--state[0] == 0) {
+      state[0] = nextSamplingDistance(state);
+      incSync(n);
+    }
+  }
+
+  /**
+   * Creates the sampling state of a new thread.
+   * <p>
+   * The first value is the countdown until the next sample, the second value the state of the random generator.
+   *
+   * @return the new sampling state of the current thread
+   */
+  @SuppressWarnings("deprecation") // Thread.threadId() is only available since Java 19
+  private static long[] newSamplingState() {
+    long seed = (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) ^ System.nanoTime();
+    long[] state = {0, seed != 0 ? seed : 1};
+    state[0] = nextSamplingDistance(state);
+    return state;
+  }
+
+  /**
+   * Returns a geometrically distributed random distance to the next sample,
+   * with a mean of <code>samplingRate</code>.
+   * <p>
+   * A per-thread xorshift generator is used, to avoid contention on a shared random generator.
+   *
+   * @param state the sampling state of the current thread
+   * @return the number of block entries until the next sample (at least 1)
+   */
+  private static long nextSamplingDistance(long[] state) {
+    long x = state[1];
+    x ^= x << 13;
+    x ^= x >>> 7;
+    x ^= x << 17;
+    state[1] = x;
+    double u = ((x >>> 11) + 1) * 0x1.0p-53; // uniform in (0, 1]
+    return 1 + (long) (Math.log(u) / Math.log(1 - 1.0 / samplingRate));
+  }
+
+  /**
+   * Starts the time measurement of a method (or constructor) invocation.
+   * <p>
+   * A new frame is pushed on the timing stack of the current thread.
+   * It accumulates the time spent in timed methods called by this invocation (to calculate the self time),
+   * and stores the CPU time of the thread at the start of the invocation, if CPU time is measured.
+   * The CPU time is read after the wall-clock start time, so that its cost is part of this invocation's time
+   * (and not of the self time of the caller).
+   *
+   * @return the wall-clock start time in nanoseconds, to be passed to {@link #stopTiming}
+   */
+  public static long startTiming() {
+    long[] stack = TIMING_STACK.get();
+    int top = (int) stack[0] + 2;
+    if (top >= stack.length) {
+      stack = Arrays.copyOf(stack, stack.length * 2);
+      TIMING_STACK.set(stack);
+    }
+    stack[0] = top;
+    stack[top - 1] = 0; // time spent in timed callees
+    long start = System.nanoTime();
+    if (threadMXBean != null) {
+      stack[top] = threadMXBean.getCurrentThreadCpuTime();
+    }
+    return start;
+  }
+
+  /**
+   * Stops the time measurement of a method (or constructor) invocation and records its times.
+   * <p>
+   * This is called in a <code>finally</code> block, so the invocation is also timed
+   * if it completes with an exception.
+   * The elapsed time is added to the total time of the method and to the callee time of the calling frame.
+   * The self time excludes the time spent in other timed methods.
+   * The CPU time is read before the wall-clock end time, inside the measured interval.
+   *
+   * @param n     the block id of the method block
+   * @param start the wall-clock start time returned by {@link #startTiming}
+   */
+  public static void stopTiming(int n, long start) {
+    long cpuEnd = (threadMXBean != null) ? threadMXBean.getCurrentThreadCpuTime() : 0;
+    long elapsed = System.nanoTime() - start;
+    long[] stack = TIMING_STACK.get();
+    int top = (int) stack[0];
+    if (threadMXBean != null) {
+      LONG_ARRAY.getAndAdd(cpuTimes, n, cpuEnd - stack[top]);
+    }
+    long selfTime = elapsed - stack[top - 1];
+    stack[0] = top - 2;
+    if (top > 2) {
+      stack[top - 3] += elapsed;
+    }
+    LONG_ARRAY.getAndAdd(totalTimes, n, elapsed);
+    LONG_ARRAY.getAndAdd(selfTimes, n, selfTime);
+    long max;
+    do {
+      max = (long) LONG_ARRAY.getVolatile(maxTimes, n);
+    } while (elapsed > max && !LONG_ARRAY.compareAndSet(maxTimes, n, max, elapsed));
+  }
+
+  /**
+   * Records the call of a method (or constructor) by the method currently executed by this thread.
+   * <p>
+   * Every thread has a "current method" slot, which is set to the given method until {@link #exitMethod} is called.
+   * The edge from the previous current method (the caller) to the given method (the callee) is counted.
+   * If no instrumented method is executed by this thread, the caller is <code>-1</code>.
+   *
+   * @param n the block id of the method block
+   * @return the block id of the calling method, to be passed to {@link #exitMethod}
+   */
+  public static int enterMethod(int n) {
+    int[] currentMethod = CURRENT_METHOD.get();
+    int caller = currentMethod[0];
+    currentMethod[0] = n;
+    countCallEdge(((long) (caller + 1) << 32) | (n + 1));
+    return caller;
+  }
+
+  /**
+   * Restores the "current method" slot of this thread to the calling method, when a method invocation completes.
+   * <p>
+   * This is called in a <code>finally</code> block, so it is also restored if the invocation completes with an exception.
+   *
+   * @param caller the block id of the calling method returned by {@link #enterMethod}
+   */
+  public static void exitMethod(int caller) {
+    CURRENT_METHOD.get()[0] = caller;
+  }
+
+  /**
+   * Records a loop execution with the given number of iterations in the histogram of the loop.
+   * <p>
+   * The iterations are counted in a local variable of the instrumented method, incremented by every iteration.
+   * The loop statement is wrapped in a <code>try</code> block, whose <code>finally</code> block calls this method,
+   * so the execution is recorded when the loop is left in any way (including <code>break</code>, <code>return</code> or an exception).
+   * <p>
+   * The histogram has power-of-two buckets: bucket 0 counts executions without iterations,
+   * bucket <i>k</i> those with 2<sup>k-1</sup> to 2<sup>k</sup>-1 iterations.
+   * The histogram of a loop is allocated on its first execution, the buckets are incremented atomically.
+   *
+   * @param n          the block id of the loop block
+   * @param iterations the number of iterations of the execution
+   */
+  public static void recordLoop(int n, long iterations) {
+    long[] histogram = loopHistograms[n];
+    if (histogram == null) {
+      histogram = createLoopHistogram(n);
+    }
+    LONG_ARRAY.getAndAdd(histogram, Long.SIZE - Long.numberOfLeadingZeros(iterations), 1L);
+  }
+
+  /**
+   * Enters the body of a method, constructor or block lambda whose exception exits are recorded.
+   * <p>
+   * This is called before the <code>try</code> block wrapping the body, and counts the instrumented frames of the thread.
+   *
+   * @return the depth of the new frame
+   */
+  public static int enterFrame() {
+    return ++FRAME_DEPTH.get()[0];
+  }
+
+  /**
+   * Leaves the body of a method, constructor or block lambda whose exception exits are recorded.
+   * <p>
+   * This is called in the <code>finally</code> block wrapping the body.
+   * The depth is reset to the one of the calling frame, even if a frame in between was left without this call.
+   *
+   * @param depth the depth of the frame returned by {@link #enterFrame}
+   */
+  public static void exitFrame(int depth) {
+    FRAME_DEPTH.get()[0] = depth - 1;
+  }
+
+  /**
+   * Records an exception leaving the body of the given method, constructor or block lambda.
+   * <p>
+   * This is called in a <code>catch</code> block wrapping the body, before the exception is rethrown.
+   *
+   * @param n     the block id of the method or lambda block
+   * @param depth the depth of the frame returned by {@link #enterFrame}
+   * @param e     the exception leaving the body
+   */
+  public static void exceptionExit(int n, int depth, Throwable e) {
+    recordExceptionExit(n, e, depth, -1);
+  }
+
+  /**
+   * Records an exception caught from the given <code>try</code> block.
+   * <p>
+   * This is called at the start of every catch block.
+   * If the exception is rethrown, it leaves the enclosing blocks at the end of the catch block.
+   *
+   * @param n            the block id of the <code>try</code> block
+   * @param catchEndLine the source line at the end of the catch block
+   * @param e            the caught exception
+   */
+  public static void exceptionCaught(int n, int catchEndLine, Throwable e) {
+    recordExceptionExit(n, e, FRAME_DEPTH.get()[0], catchEndLine);
+  }
+
+  /**
+   * Counts an execution of the given path through a method or loop body with path profiling.
+   * <p>
+   * This is called in a <code>finally</code> block wrapping the body, with the final value of its path register,
+   * which uniquely identifies the blocks entered during the execution.
+   * As only few of the possible paths are usually taken, the executed paths are counted in a small open-addressing
+   * hash table per path region, like the call edges (see {@link #countInTable}), keyed by the path id plus one.
+   * Once the table of a region is full, further paths are counted in an overflow map (see {@link #countOverflowPath}).
+   *
+   * @param n      the block id of the method or loop block
+   * @param pathId the id of the executed path
+   */
+  public static void recordPath(int n, long pathId) {
+    long[] table = pathTables[n];
+    if (table == null) {
+      table = createPathTable(n);
+    }
+    if (!countInTable(table, pathId + 1)) {
+      countOverflowPath(n, pathId);
+    }
+  }
+
+  /**
+   * Counts an execution of a path that did not fit into the hash table of its path region.
+   * <p>
+   * The overflow map of the region holds at most {@value #MAX_OVERFLOW_PATHS} paths.
+   * Executions of further paths are only counted as dropped.
+   *
+   * @param n      the block id of the method or loop block
+   * @param pathId the id of the executed path
+   */
+  private static void countOverflowPath(int n, long pathId) {
+    Map<Long, long[]> paths = overflowPaths.get(n);
+    if (paths == null) {
+      overflowPaths.compareAndSet(n, null, new HashMap<>());
+      paths = overflowPaths.get(n);
+    }
+    synchronized (paths) {
+      long[] count = paths.get(pathId);
+      if (count == null) {
+        if (paths.size() >= MAX_OVERFLOW_PATHS) {
+          droppedPaths.incrementAndGet();
+          return;
+        }
+        count = new long[1];
+        paths.put(pathId, count);
+      }
+      count[0]++;
+    }
+  }
+
+  /**
+   * Counts an exception leaving the given block, by the source line at which it left the block.
+   * <p>
+   * The line is taken from the stack trace of the exception, at the frame of the current invocation.
+   * This is the line of the <code>throw</code> statement (where the exception was created),
+   * or of the call of the method that threw it.
+   * <p>
+   * The stack trace is only copied when the exception is recorded for the first time (in the innermost instrumented frame),
+   * where the frame is the first stack trace element of the current method.
+   * Every following record of the exception must be in the same frame (after it was caught there)
+   * or in the directly calling instrumented frame, found by the depth of the frames (see {@link #enterFrame}).
+   * Its element is then the next one of the current method, so that the frames of recursive calls are told apart
+   * without walking the stack. If it was already caught in the same frame (see {@link #exceptionCaught}),
+   * it was rethrown from that catch block, so the end line of the catch block is used instead.
+   * Exceptions whose frame cannot be matched (like exceptions rethrown from another frame later, or without stack trace)
+   * are counted with line <code>-1</code>.
+   *
+   * @param n            the block id
+   * @param e            the exception
+   * @param depth        the depth of the current frame
+   * @param catchEndLine the end line of the catch block catching the exception, or <code>-1</code> if it is not caught
+   */
+  private static void recordExceptionExit(int n, Throwable e, int depth, int catchEndLine) {
+    StackWalker.StackFrame frame = STACK_WALKER.walk(s -> s.skip(2).findFirst()).orElse(null);
+    Object[] state = getTrackedException(e);
+    StackTraceElement[] trace = (StackTraceElement[]) state[1];
+    int lastIndex = (int) state[2];
+    int lastDepth = (int) state[3];
+    int lastCatchEndLine = (int) state[4];
+    int index;
+    if (lastDepth < 0) {
+      index = indexOfMethod(trace, frame, 0); // first record of the exception
+    } else if (depth == lastDepth && lastCatchEndLine >= 0) {
+      index = lastIndex;
+    } else if (depth == lastDepth - 1 && lastIndex >= 0) {
+      index = indexOfMethod(trace, frame, lastIndex + 1);
+    } else {
+      index = -1;
+    }
+    int line = -1;
+    if (index >= 0) {
+      line = (depth == lastDepth) ? lastCatchEndLine : trace[index].getLineNumber();
+    }
+    state[2] = index;
+    state[3] = depth;
+    state[4] = catchEndLine;
+    long key = ((long) n << 32) | (line & 0xFFFFFFFFL);
+    synchronized (exceptionExits) {
+      exceptionExits.computeIfAbsent(key, k -> new long[1])[0]++;
+    }
+  }
+
+  /**
+   * Returns the tracking state of the given exception in the current thread.
+   * <p>
+   * The state consists of the exception, its stack trace, the index of the stack trace element of the last recorded frame,
+   * the depth of that frame (<code>-1</code> if the exception was not recorded yet) and the end line of the catch block
+   * that caught it there (or <code>-1</code>).
+   * A few exceptions are tracked per thread, so that an exception thrown and caught while another one is unwinding
+   * (e.g., in a <code>finally</code> block) does not lose the state of the other one.
+   *
+   * @param e the exception
+   * @return the tracking state
+   */
+  private static Object[] getTrackedException(Throwable e) {
+    Object[][] tracked = TRACKED_EXCEPTIONS.get();
+    for (Object[] state : tracked) {
+      if (state != null && state[0] == e) {
+        return state;
+      }
+    }
+    Object[] state = new Object[]{e, e.getStackTrace(), -1, -1, -1};
+    System.arraycopy(tracked, 0, tracked, 1, tracked.length - 1);
+    tracked[0] = state;
+    return state;
+  }
+
+  /**
+   * Returns the index of the first stack trace element of the method of the given frame, starting at the given index.
+   *
+   * @param trace the stack trace
+   * @param frame the stack frame, or null if it is not known
+   * @param from  the index to start searching at
+   * @return the index, or <code>-1</code> if there is no such element
+   */
+  private static int indexOfMethod(StackTraceElement[] trace, StackWalker.StackFrame frame, int from) {
+    if (frame == null) {
+      return -1;
+    }
+    for (int index = from; index < trace.length; index++) {
+      if (isSameMethod(trace[index], frame)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns whether the given stack trace element and stack frame belong to the same method.
+   *
+   * @param element the stack trace element
+   * @param frame   the stack frame
+   * @return whether the class and method names are equal
+   */
+  private static boolean isSameMethod(StackTraceElement element, StackWalker.StackFrame frame) {
+    return element.getMethodName().equals(frame.getMethodName()) && element.getClassName().equals(frame.getClassName());
+  }
+
+  /**
+   * Allocates the histogram of the given loop, if no other thread did so in the meantime.
+   *
+   * @param n the block id of the loop block
+   * @return the histogram of the loop
+   */
+  private static synchronized long[] createLoopHistogram(int n) {
+    long[] histogram = loopHistograms[n];
+    if (histogram == null) {
+      histogram = new long[N_LOOP_BUCKETS];
+      loopHistograms[n] = histogram;
+    }
+    return histogram;
+  }
+
+  /**
+   * Allocates the path table of the given path region, if no other thread did so in the meantime.
+   *
+   * @param n the block id of the method or loop block
+   * @return the path table of the region
+   */
+  private static synchronized long[] createPathTable(int n) {
+    long[] table = pathTables[n];
+    if (table == null) {
+      table = new long[2 * PATH_TABLE_CAPACITY];
+      pathTables[n] = table;
+    }
+    return table;
+  }
+
+  /**
+   * Increments the count of the given call edge in the open-addressing hash table of all call edges.
+   * <p>
+   * A key combines the block ids of the caller and the callee (each plus one), so it is never <code>0</code>.
+   * The table is not resized: if it is full, the call is only counted as dropped.
+   *
+   * @param key the call edge key
+   */
+  private static void countCallEdge(long key) {
+    if (!countInTable(callEdges, key)) {
+      droppedCalls.incrementAndGet();
+    }
+  }
+
+  /**
+   * Increments the count of the given key in an open-addressing hash table.
+   * <p>
+   * The table is a single array of interleaved keys and counts, probed linearly.
+   * The key <code>0</code> marks an empty slot. Keys are inserted with a CAS and never removed,
+   * counts are incremented atomically.
+   *
+   * @param table the hash table, whose capacity is a power of two
+   * @param key   the key, not <code>0</code>
+   * @return false if the key is not in the table and the table is full
+   */
+  private static boolean countInTable(long[] table, long key) {
+    int mask = (table.length >> 1) - 1;
+    int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    for (int probes = 0; probes <= mask; ) {
+      int slot = index << 1;
+      long slotKey = (long) LONG_ARRAY.getVolatile(table, slot);
+      if (slotKey == key) {
+        LONG_ARRAY.getAndAdd(table, slot + 1, 1L);
+        return true;
+      }
+      if (slotKey == 0 && LONG_ARRAY.compareAndSet(table, slot, 0L, key)) {
+        continue; // claimed the empty slot, the count is incremented in the next iteration
+      }
+      if (slotKey != 0) {
+        index = (index + 1) & mask;
+        probes++;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the stripe index for the given thread.
+   * <p>
+   * The thread id is scrambled using a multiplicative hash,
+   * so that consecutively created threads are spread evenly over all stripes.
+   *
+   * @param thread the current thread
+   * @return the stripe index in the range <code>[0, N_STRIPES)</code>
+   */
+  @SuppressWarnings("deprecation") // Thread.threadId() is only available since Java 19
+  private static int probe(Thread thread) {
+    long h = thread.getId() * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32) & (N_STRIPES - 1);
+  }
+
+  /**
+   * Allocates the counter-array for the given stripe, if no other thread did so in the meantime.
+   *
+   * @param stripe the stripe index
+   * @return the counter-array of the stripe
+   */
+  private static synchronized long[] createStripe(int stripe) {
+    long[] cells = stripedBlockCounts[stripe];
+    if (cells == null) {
+      cells = new long[nBlocks];
+      stripedBlockCounts[stripe] = cells;
+    }
+    return cells;
+  }
+
+  /**
+   * Returns the number of stripes to use for the given number of processors.
+   * <p>
+   * This is the next power of two (to allow masking the probe), capped to 64 stripes.
+   *
+   * @param nProcessors the number of available processors
+   * @return the number of stripes
+   */
+  private static int stripeCount(int nProcessors) {
+    int n = Math.max(1, Math.min(nProcessors, 64));
+    return Integer.highestOneBit(n * 2 - 1);
+  }
+
+  /**
+   * Initializes the counter-arrays with the number of blocks read from the counter header file.
+   * <p>
+   * The header file is written by the instrumenter in a small fixed format, so it is read at once
+   * with a {@link DataInputStream} (instead of deserializing the metadata file).
+   * It starts with a format version, followed by the number of blocks.
+   * Only the counter-arrays of the counter mode are allocated.
+   * The arrays of the striped counters (see {@link #incStriped}) are only allocated on first use.
+   * <p>
+   * The next value of the header file is the counter mode.
+   * If it is <code>MAPPED</code>, the counts file is memory-mapped instead, using {@link #mapCountsFile}.
+   * The next values are the sampling rate (see {@link #incSampled}),
+   * the snapshot interval (<code>0</code> for on-demand only, <code>-1</code> if disabled),
+   * the timeline interval in milliseconds (<code>-1</code> if disabled, see {@link #takeTimelineSnapshot}),
+   * whether to register the MBean and whether method timing is enabled.
+   * Only in the last case the arrays for the method times are allocated (see {@link #stopTiming}),
+   * and the next boolean tells whether the CPU time of invocations is measured as well.
+   * If call edges are counted (the boolean after the CPU time), the call edge table is allocated as well.
+   * The last value is whether every run writes its own counts file (see {@link #getRunCountsFileName}).
+   * The thread name pattern (empty if not specified) follows the sampling rate,
+   * and is only used in the <code>PER_THREAD</code> counter mode (see {@link #incPerThread}).
+   *
+   * @param fileName          the location of the counter header file
+   * @param defaultCountsFile the location of the counts file, if not writing run-unique counts files
+   * @param runCountsDir      the directory of the run-unique counts files
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void init(String fileName, String defaultCountsFile, String runCountsDir) {
+    File file = new File(fileName);
+    if (!file.exists()) {
+      throw new RuntimeException("Counter header not found at expected path: " + file.getAbsolutePath());
+    }
+    try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+      if (dis.readInt() != HEADER_VERSION) {
+        throw new RuntimeException("Unsupported counter header version, re-instrument the program: " + file.getAbsolutePath());
+      }
+      nBlocks = dis.readInt();
+      String counterMode = dis.readUTF();
+      samplingRate = dis.readInt();
+      String threadPattern = dis.readUTF();
+      snapshotInterval = dis.readInt();
+      timelineInterval = dis.readInt();
+      registerMBean = dis.readBoolean();
+      boolean timing = dis.readBoolean();
+      boolean cpuTime = dis.readBoolean();
+      if (timing) {
+        initTimes(nBlocks, cpuTime);
+      }
+      if (dis.readBoolean()) {
+        initCallEdges(nBlocks);
+      }
+      if (dis.readBoolean()) {
+        loopHistograms = new long[nBlocks][];
+      }
+      if (dis.readBoolean()) {
+        exceptionExits = new HashMap<>();
+      }
+      if (dis.readBoolean()) {
+        initPathCounts(nBlocks);
+      }
+      boolean uniqueCounts = dis.readBoolean();
+      String runId = System.getProperty(RUN_ID_PROPERTY);
+      countsFileName = (uniqueCounts || runId != null) ? getRunCountsFileName(runCountsDir, runId) : defaultCountsFile;
+      switch (counterMode) {
+        case "DEFAULT" -> blockCounts = new int[nBlocks];
+        case "TOGGLEABLE" -> {
+          blockCounts = new int[nBlocks];
+          toggleable = true;
+          setCountingEnabled(!"off".equals(System.getProperty(COUNTING_PROPERTY)));
+        }
+        case "SYNCHRONIZED", "SAMPLED" -> atomicBlockCounts = new AtomicIntegerArray(nBlocks);
+        case "STRIPED" -> stripedBlockCounts = new long[N_STRIPES][];
+        case "COVERAGE" -> coveredBlocks = new byte[nBlocks];
+        case "HOLDER" -> holderCounts = new ConcurrentSkipListMap<>();
+        case "MAPPED" -> mapCountsFile(countsFileName, nBlocks);
+        case "ADAPTIVE" -> {
+          blockCounts = new int[nBlocks];
+          atomicBlockCounts = new AtomicIntegerArray(nBlocks);
+          blockOwners = new long[nBlocks];
+        }
+      }
+      if (counterMode.equals("PER_THREAD")) {
+        liveThreadCounts = new IdentityHashMap<>();
+        threadGroupCounts = new HashMap<>();
+        threadNamePattern = threadPattern.isEmpty() ? null : Pattern.compile(threadPattern);
+        if (threadNamePattern == null) {
+          threadCountsCleaner = Cleaner.create();
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the location of the counts file of this run, inside the given directory, and creates the directory.
+   * <p>
+   * The run id can be specified with the system property {@value #RUN_ID_PROPERTY} (like the number of a test shard),
+   * which also enables run-unique counts files for programs instrumented without them.
+   * Otherwise, it consists of the process id and the start time in milliseconds.
+   * Characters other than letters, digits, dots, underscores and hyphens are replaced with underscores.
+   * The counts file of a previous run with the same id is overwritten.
+   *
+   * @param runCountsDir the directory of the run-unique counts files
+   * @param runId        the specified run id, or null
+   * @return the location of the counts file of this run
+   */
+  private static String getRunCountsFileName(String runCountsDir, String runId) {
+    if (runId == null || runId.isEmpty()) {
+      runId = ProcessHandle.current().pid() + "-" + System.currentTimeMillis();
+    }
+    new File(runCountsDir).mkdirs();
+    return runCountsDir + "/counts-" + runId.replaceAll("[^A-Za-z0-9._-]", "_") + ".dat";
+  }
+
+  /**
+   * Allocates the method time arrays, indexed by the block id of the method blocks.
+   * <p>
+   * If enabled and supported by the JVM, the CPU time of threads is measured as well.
+   * Otherwise, the CPU times stay zero and the thread bean is never queried.
+   *
+   * @param nBlocks the number of blocks
+   * @param cpuTime whether to measure the CPU time of invocations
+   */
+  private static void initTimes(int nBlocks, boolean cpuTime) {
+    totalTimes = new long[nBlocks];
+    selfTimes = new long[nBlocks];
+    maxTimes = new long[nBlocks];
+    cpuTimes = new long[nBlocks];
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (cpuTime && bean.isCurrentThreadCpuTimeSupported()) {
+      bean.setThreadCpuTimeEnabled(true);
+      threadMXBean = bean;
+    }
+  }
+
+  /**
+   * Allocates the call edge table (see {@link #countCallEdge}).
+   * <p>
+   * Its capacity is a power of two with room for twice as many edges as there are blocks,
+   * as most methods are only called from a few other methods.
+   *
+   * @param nBlocks the number of blocks
+   */
+  private static void initCallEdges(int nBlocks) {
+    int capacity = Math.max(MIN_CALL_EDGE_CAPACITY, Integer.highestOneBit(Math.max(1, nBlocks) * 4 - 1));
+    callEdges = new long[2 * capacity];
+    droppedCalls = new AtomicLong();
+  }
+
+  /**
+   * Allocates the arrays of path tables and overflow maps (see {@link #recordPath}).
+   * <p>
+   * The path table of a region is only allocated when its first path is recorded,
+   * and the overflow map when its table is full.
+   *
+   * @param nBlocks the number of blocks
+   */
+  private static void initPathCounts(int nBlocks) {
+    pathTables = new long[nBlocks][];
+    overflowPaths = new AtomicReferenceArray<>(nBlocks);
+    droppedPaths = new AtomicLong();
+  }
+
+  /**
+   * Creates a new, zeroed counts file and maps it into memory.
+   * <p>
+   * The file has the same format as the one written by {@link #save}, except for the header,
+   * where the number of blocks is followed by 4 bytes of padding.
+   * This way all counters are 8-byte aligned and can be updated atomically.
+   * Because the mapping is shared with the file system, the counts can be read at any time,
+   * and are not lost if the program is terminated abruptly.
+   *
+   * @param fileName the location of the counts file
+   * @param nBlocks  the number of blocks
+   * @throws IOException if the file cannot be created or mapped
+   */
+  private static void mapCountsFile(String fileName, int nBlocks) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+      file.setLength(0); // discard the counts of previous runs
+      long size = MAPPED_HEADER_SIZE + (long) nBlocks * Long.BYTES;
+      mappedCounts = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      mappedCounts.putInt(0, nBlocks);
+    }
+  }
+
+  /**
+   * Starts a daemon thread that writes snapshots of the current counts into the given directory.
+   * <p>
+   * A snapshot is written every <code>interval</code> seconds (if the interval is positive)
+   * and whenever the trigger file is found (it is deleted before the snapshot is written).
+   * Snapshots of previous runs are deleted, and the sequence numbers start at 1.
+   *
+   * @param directory   the directory to write the snapshots to
+   * @param triggerFile the location of the control file requesting an on-demand snapshot
+   * @param interval    the snapshot interval in seconds, or <code>0</code> for on-demand snapshots only
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void startSnapshotThread(String directory, String triggerFile, int interval) {
+    Path snapshotsDir = Path.of(directory);
+    try {
+      Files.createDirectories(snapshotsDir);
+      try (var oldSnapshots = Files.newDirectoryStream(snapshotsDir, "counts-*.dat")) {
+        for (Path snapshot : oldSnapshots) {
+          Files.delete(snapshot);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    Thread thread = new Thread(() -> {
+      File trigger = new File(triggerFile);
+      long intervalMillis = interval * 1000L;
+      long nextSnapshot = System.currentTimeMillis() + intervalMillis;
+      int sequenceNumber = 0;
+      while (true) {
+        try {
+          Thread.sleep(SNAPSHOT_POLL_MILLIS);
+        } catch (InterruptedException e) {
+          return;
+        }
+        boolean requested = trigger.delete();
+        if (requested || (interval > 0 && System.currentTimeMillis() >= nextSnapshot)) {
+          sequenceNumber++;
+          writeSnapshot(snapshotsDir, sequenceNumber);
+          nextSnapshot = System.currentTimeMillis() + intervalMillis;
+        }
+      }
+    }, "__Counter-snapshots");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Starts a daemon thread that takes a timeline snapshot every <code>interval</code> milliseconds.
+   * <p>
+   * The entry buffer of the timeline initially holds the snapshots of about {@value #INITIAL_TIMELINE_SECONDS} second,
+   * if every counter changed in every snapshot (but at least one full snapshot).
+   * It grows while the program runs (see {@link #growTimeline}).
+   *
+   * @param interval the timeline interval in milliseconds
+   */
+  private static void startTimelineThread(int interval) {
+    long snapshots = Math.max(1, Math.min(MAX_TIMELINE_SNAPSHOTS, INITIAL_TIMELINE_SECONDS * 1000L / interval));
+    timelineStart = System.nanoTime();
+    timelineLastCounts = new long[nBlocks];
+    timelineTimes = new long[MAX_TIMELINE_SNAPSHOTS];
+    timelineOffsets = new long[MAX_TIMELINE_SNAPSHOTS];
+    timelineBlocks = new int[(int) Math.min(maxTimelineEntries(), snapshots * Math.max(1, nBlocks))];
+    timelineDeltas = new long[timelineBlocks.length];
+    Thread thread = new Thread(() -> {
+      long nextSnapshot = timelineStart;
+      while (true) {
+        nextSnapshot += interval * 1_000_000L;
+        long sleepMillis = (nextSnapshot - System.nanoTime()) / 1_000_000L;
+        try {
+          if (sleepMillis > 0) {
+            Thread.sleep(sleepMillis);
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+        takeTimelineSnapshot();
+      }
+    }, "__Counter-timeline");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Appends the changes of all counters since the previous snapshot to the timeline.
+   * <p>
+   * Snapshots are stored sparsely: only the blocks with a changed count are recorded, with their delta.
+   * The snapshot times and the entries are written into ring buffers.
+   * If either of them is full (and the entry buffer cannot grow anymore), the oldest snapshots are overwritten
+   * (and later dropped by {@link #saveTimeline}).
+   * A counter that decreased since the previous snapshot (after a {@link #reset}) counts from zero again.
+   * <p>
+   * The timeline has a lock of its own, so that the counters (and phases or call edges) can still be
+   * carried or created while the snapshot is taken.
+   */
+  private static void takeTimelineSnapshot() {
+    synchronized (TIMELINE_LOCK) {
+      int slot = nTimelineSnapshots % MAX_TIMELINE_SNAPSHOTS;
+      timelineTimes[slot] = (System.nanoTime() - timelineStart) / 1_000_000L;
+      timelineOffsets[slot] = nTimelineEntries;
+      for (int i = 0; i < nBlocks; i++) {
+        long count = getCount(i);
+        long last = timelineLastCounts[i];
+        if (count != last) {
+          if (nTimelineEntries == timelineBlocks.length && timelineBlocks.length < maxTimelineEntries()) {
+            growTimeline();
+          }
+          int entry = (int) (nTimelineEntries % timelineBlocks.length);
+          timelineBlocks[entry] = i;
+          timelineDeltas[entry] = (count > last) ? count - last : count;
+          timelineLastCounts[i] = count;
+          nTimelineEntries++;
+        }
+      }
+      nTimelineSnapshots++;
+    }
+  }
+
+  /**
+   * Doubles the capacity of the (full) entry buffer of the timeline, up to {@link #maxTimelineEntries}.
+   * <p>
+   * The buffer only grows before any entry was overwritten, so the entries keep their positions.
+   * Must only be called while holding the timeline lock.
+   */
+  private static void growTimeline() {
+    int capacity = (int) Math.min(maxTimelineEntries(), 2L * timelineBlocks.length);
+    timelineBlocks = Arrays.copyOf(timelineBlocks, capacity);
+    timelineDeltas = Arrays.copyOf(timelineDeltas, capacity);
+  }
+
+  /**
+   * Returns the maximum number of entries in the timeline, before the oldest snapshots are overwritten.
+   * This is at least one full snapshot of all counters.
+   *
+   * @return the maximum capacity of the entry buffer
+   */
+  private static int maxTimelineEntries() {
+    return Math.max(MAX_TIMELINE_ENTRIES, nBlocks);
+  }
+
+  /**
+   * Saves the snapshots of the timeline to the given file.
+   * <p>
+   * The file starts with the timeline interval, the number of dropped (overwritten) snapshots
+   * and the number of saved snapshots.
+   * Every snapshot consists of its time in milliseconds since the program start and its number of entries,
+   * followed by the block id and the count delta of every entry.
+   *
+   * @param fileName the location of the file to save the timeline to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void saveTimeline(String fileName) {
+    synchronized (TIMELINE_LOCK) {
+      int first = Math.max(0, nTimelineSnapshots - MAX_TIMELINE_SNAPSHOTS);
+      while (first < nTimelineSnapshots && timelineOffsets[first % MAX_TIMELINE_SNAPSHOTS] < nTimelineEntries - timelineBlocks.length) {
+        first++; // entries already overwritten
+      }
+      try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+        dos.writeInt(timelineInterval);
+        dos.writeInt(first);
+        dos.writeInt(nTimelineSnapshots - first);
+        for (int s = first; s < nTimelineSnapshots; s++) {
+          int slot = s % MAX_TIMELINE_SNAPSHOTS;
+          long end = (s + 1 < nTimelineSnapshots) ? timelineOffsets[(s + 1) % MAX_TIMELINE_SNAPSHOTS] : nTimelineEntries;
+          dos.writeLong(timelineTimes[slot]);
+          dos.writeInt((int) (end - timelineOffsets[slot]));
+          for (long e = timelineOffsets[slot]; e < end; e++) {
+            int entry = (int) (e % timelineBlocks.length);
+            dos.writeInt(timelineBlocks[entry]);
+            dos.writeLong(timelineDeltas[entry]);
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes a snapshot of the current counts with the given sequence number.
+   * <p>
+   * The snapshot is first saved to a temporary file, which is then atomically renamed,
+   * so that a reader never sees a partially written snapshot.
+   *
+   * @param snapshotsDir   the directory to write the snapshot to
+   * @param sequenceNumber the sequence number of the snapshot
+   */
+  private static void writeSnapshot(Path snapshotsDir, int sequenceNumber) {
+    String fileName = String.format("counts-%06d.dat", sequenceNumber);
+    Path tempFile = snapshotsDir.resolve(fileName + ".tmp");
+    save(tempFile.toString());
+    try {
+      Files.move(tempFile, snapshotsDir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the counter-array to the given file.
+   *
+   * @param fileName the location of the file to save the counter-array to
+   */
+  private static void save(String fileName) {
+    try (DataOutputStream dis = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dis.writeInt(nBlocks);
+      for (int i = 0; i < nBlocks; i++) {
+        dis.writeLong(getCount(i));
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the method time arrays to the given file.
+   * <p>
+   * The file starts with the number of blocks, followed by the total, self, maximum and CPU time
+   * (in nanoseconds) of every block. Only method blocks have non-zero times.
+   *
+   * @param fileName the location of the file to save the method times to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void saveTimes(String fileName) {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(nBlocks);
+      for (int i = 0; i < nBlocks; i++) {
+        dos.writeLong((long) LONG_ARRAY.getVolatile(totalTimes, i));
+        dos.writeLong((long) LONG_ARRAY.getVolatile(selfTimes, i));
+        dos.writeLong((long) LONG_ARRAY.getVolatile(maxTimes, i));
+        dos.writeLong((long) LONG_ARRAY.getVolatile(cpuTimes, i));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves all counted call edges to the given file.
+   * <p>
+   * The file starts with the number of edges and the number of calls that could not be counted (see {@link #countCallEdge}).
+   * For every edge, the block ids of the caller (<code>-1</code> if unknown) and the callee are followed by the number of calls.
+   *
+   * @param fileName the location of the file to save the call edges to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void saveCallEdges(String fileName) {
+    int nEdges = 0;
+    for (int slot = 0; slot < callEdges.length; slot += 2) {
+      if ((long) LONG_ARRAY.getVolatile(callEdges, slot) != 0) {
+        nEdges++;
+      }
+    }
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(nEdges);
+      dos.writeLong(droppedCalls.get());
+      for (int slot = 0; slot < callEdges.length && nEdges > 0; slot += 2) {
+        long key = (long) LONG_ARRAY.getVolatile(callEdges, slot);
+        if (key != 0) {
+          dos.writeInt((int) (key >>> 32) - 1);
+          dos.writeInt((int) key - 1);
+          dos.writeLong((long) LONG_ARRAY.getVolatile(callEdges, slot + 1));
+          nEdges--;
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the histograms of all executed loops to the given file.
+   * <p>
+   * The file starts with the number of executed loops and the number of buckets.
+   * For every loop, its block id is followed by the counts of all buckets (see {@link #recordLoop}).
+   *
+   * @param fileName the location of the file to save the loop histograms to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void saveLoopHistograms(String fileName) {
+    int nLoops = 0;
+    for (long[] histogram : loopHistograms) {
+      if (histogram != null) {
+        nLoops++;
+      }
+    }
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(nLoops);
+      dos.writeInt(N_LOOP_BUCKETS);
+      for (int i = 0; i < nBlocks; i++) {
+        long[] histogram = loopHistograms[i];
+        if (histogram != null) {
+          dos.writeInt(i);
+          for (int bucket = 0; bucket < N_LOOP_BUCKETS; bucket++) {
+            dos.writeLong((long) LONG_ARRAY.getVolatile(histogram, bucket));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the counted exception exits to the given file.
+   * <p>
+   * The file starts with the number of entries.
+   * Every entry consists of the block id, the source line at which the exceptions left the block and their number.
+   *
+   * @param fileName the location of the file to save the exception exits to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void saveExceptionExits(String fileName) {
+    Map<Long, long[]> entries;
+    synchronized (exceptionExits) {
+      entries = new TreeMap<>(exceptionExits);
+    }
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(entries.size());
+      for (Map.Entry<Long, long[]> entry : entries.entrySet()) {
+        dos.writeInt((int) (entry.getKey() >>> 32));
+        dos.writeInt((int) (long) entry.getKey());
+        dos.writeLong(entry.getValue()[0]);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the counted paths to the given file.
+   * <p>
+   * The file starts with the number of executed path regions and the number of path executions that could not be counted
+   * (see {@link #countOverflowPath}).
+   * For every region, its block id and the number of executed paths are followed by the id and count of every path.
+   *
+   * @param fileName the location of the file to save the path counts to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void savePaths(String fileName) {
+    Map<Integer, Map<Long, Long>> regions = new TreeMap<>();
+    for (int i = 0; i < nBlocks; i++) {
+      long[] table = pathTables[i];
+      if (table == null) {
+        continue;
+      }
+      Map<Long, Long> paths = new TreeMap<>();
+      for (int slot = 0; slot < table.length; slot += 2) {
+        long key = (long) LONG_ARRAY.getVolatile(table, slot);
+        if (key != 0) {
+          paths.merge(key - 1, (long) LONG_ARRAY.getVolatile(table, slot + 1), Long::sum);
+        }
+      }
+      Map<Long, long[]> overflow = overflowPaths.get(i);
+      if (overflow != null) {
+        synchronized (overflow) {
+          overflow.forEach((pathId, count) -> paths.merge(pathId, count[0], Long::sum));
+        }
+      }
+      regions.put(i, paths);
+    }
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(regions.size());
+      dos.writeLong(droppedPaths.get());
+      for (Map.Entry<Integer, Map<Long, Long>> region : regions.entrySet()) {
+        dos.writeInt(region.getKey());
+        dos.writeInt(region.getValue().size());
+        for (Map.Entry<Long, Long> path : region.getValue().entrySet()) {
+          dos.writeLong(path.getKey());
+          dos.writeLong(path.getValue());
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves the ids of all blocks that were promoted to atomic increments by {@link #incAdaptive}.
+   * <p>
+   * The file starts with the number of promoted blocks, followed by their ids.
+   *
+   * @param fileName the location of the file to save the block ids to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static void saveSharedBlocks(String fileName) {
+    int[] sharedBlocks = new int[nBlocks];
+    int nShared = 0;
+    for (int i = 0; i < nBlocks; i++) {
+      if ((long) LONG_ARRAY.getVolatile(blockOwners, i) == SHARED_BLOCK) {
+        sharedBlocks[nShared++] = i;
+      }
+    }
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(nShared);
+      for (int i = 0; i < nShared; i++) {
+        dos.writeInt(sharedBlocks[i]);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
   }
 
-  private static long[] blockCounts;
-  private static AtomicLongArray atomicBlockCounts;
+  /**
+   * Saves the block counts of all recorded phases to the given file, ending the active phase (if any).
+   * <p>
+   * This is only called by the shutdown hook registered by the first {@link #begin}.
+   *
+   * @param fileName the location of the file to save the phase counts to
+   */
+  @SuppressWarnings("SameParameterValue")
+  private static synchronized void savePhases(String fileName) {
+    if (activePhase != null) {
+      end();
+    }
+    saveNamedCounts(fileName, phaseCounts);
+  }
 
   /**
-   * Increments the counter for the given block.
+   * Saves named block counts (like the counts of every thread group or of every phase) to the given file.
+   * <p>
+   * The file starts with the number of blocks and the number of names.
+   * For every name, it is followed by the counts of all blocks.
+   *
+   * @param fileName    the location of the file to save the counts to
+   * @param namedCounts the block counts by name
+   */
+  private static void saveNamedCounts(String fileName, Map<String, long[]> namedCounts) {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+      dos.writeInt(nBlocks);
+      dos.writeInt(namedCounts.size());
+      for (Map.Entry<String, long[]> entry : namedCounts.entrySet()) {
+        dos.writeUTF(entry.getKey());
+        for (long count : entry.getValue()) {
+          dos.writeLong(count);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the current counts of every thread group, including the threads that are still running.
+   *
+   * @return the counts of all blocks by the name of the thread group
+   */
+  private static synchronized Map<String, long[]> getThreadCounts() {
+    Map<String, long[]> threadCounts = new TreeMap<>();
+    for (Map.Entry<String, long[]> entry : threadGroupCounts.entrySet()) {
+      threadCounts.put(entry.getKey(), entry.getValue().clone());
+    }
+    for (Map.Entry<long[], String> entry : liveThreadCounts.entrySet()) {
+      long[] groupCounts = threadCounts.computeIfAbsent(entry.getValue(), k -> new long[nBlocks]);
+      addCounts(groupCounts, entry.getKey());
+    }
+    return threadCounts;
+  }
+
+  /**
+   * Returns the current count of the given block.
+   * <p>
+   * If the counts file is not memory-mapped, the count is the sum of the regular, synchronized, striped and per-thread counters
+   * (only the ones of the counter mode are allocated), including the halves carried by the regular counters
+   * and the promoted count carried over from the synchronized counters.
+   * In the holder counter mode, the count is read from the registered array covering the block
+   * (it is <code>0</code> if the holder class of its source file was never initialized).
+   * In the coverage counter mode, the count is <code>1</code> if the block was covered and <code>0</code> otherwise.
    *
    * @param n the block id
+   * @return the current count of the block
    */
-  public static void inc(int n) {
-    blockCounts[n]++;
+  private static long getCount(int n) {
+    if (mappedCounts != null) {
+      return (long) MAPPED_LONG.getVolatile(mappedCounts, MAPPED_HEADER_SIZE + (n << 3));
+    }
+    long count = sumStripes(n) + sumThreadCounts(n);
+    if (blockCounts != null) {
+      long halves = carriedHalves.getOrDefault(n, 0L);
+      count += (halves << 31) + offsetInHalf(blockCounts[n], halves);
+    }
+    if (atomicBlockCounts != null) {
+      count += Integer.toUnsignedLong(atomicBlockCounts.get(n));
+    }
+    if (coveredBlocks != null) {
+      count += coveredBlocks[n];
+    }
+    if (holderCounts != null) {
+      Map.Entry<Integer, long[]> holder = holderCounts.floorEntry(n);
+      if (holder != null && n - holder.getKey() < holder.getValue().length) {
+        count += holder.getValue()[n - holder.getKey()];
+      }
+    }
+    Map<Integer, Long> promoted = promotedCounts;
+    if (!promoted.isEmpty()) {
+      count += promoted.getOrDefault(n, 0L);
+    }
+    return count;
   }
 
   /**
-   * Increments the counter for the given block, in a synchronized way.
+   * Sums up the striped counters of the given block over all stripes.
    *
    * @param n the block id
+   * @return the total count of the block in all stripes
    */
-  public static void incSync(int n) {
-    atomicBlockCounts.incrementAndGet(n);
+  private static long sumStripes(int n) {
+    if (stripedBlockCounts == null) {
+      return 0;
+    }
+    long sum = 0;
+    for (long[] cells : stripedBlockCounts) {
+      if (cells != null) {
+        sum += (long) LONG_ARRAY.getVolatile(cells, n);
+      }
+    }
+    return sum;
   }
 
   /**
-   * Initializes the counter-arrays with the given number of blocks.
-   * <p>
-   * The number of blocks is the first value of the metadata file.
-   * One array is used for regular counters and one synchronized ones,
-   * incremented by {@link #incSync}.
+   * Sums up the per-thread counters of the given block over all threads.
    *
-   * @param fileName the location of the metadata file
+   * @param n the block id
+   * @return the total count of the block in all threads, or <code>0</code> if not counting per thread
    */
-  private static void init(@SuppressWarnings("SameParameterValue") String fileName) {
-    File file = new File(fileName);
-    if (!file.exists()) {
-      throw new RuntimeException("Metadata not found at expected path: " + file.getAbsolutePath());
+  private static long sumThreadCounts(int n) {
+    if (liveThreadCounts == null) {
+      return 0;
     }
-    try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-      int nBlocks = ois.readInt(); // number of blocks is the first value of the metadata file
-      blockCounts = new long[nBlocks];
-      atomicBlockCounts = new AtomicLongArray(nBlocks);
-    } catch (IOException | NumberFormatException e) {
+    synchronized (__Counter.class) {
+      long sum = 0;
+      for (long[] counts : liveThreadCounts.keySet()) {
+        sum += counts[n];
+      }
+      for (long[] counts : threadGroupCounts.values()) {
+        sum += counts[n];
+      }
+      return sum;
+    }
+  }
+
+  /**
+   * Registers an instance of this class as a platform MBean with the name {@value #MBEAN_NAME}.
+   */
+  private static void registerMBean() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new __Counter(), new ObjectName(MBEAN_NAME));
+    } catch (JMException e) {
       throw new RuntimeException(e);
     }
   }
 
   /**
-   * Saves the counter-array to the given file.
+   * Returns the current counts of the blocks in the given range.
+   *
+   * @param from the first block id (inclusive)
+   * @param to   the last block id (exclusive)
+   * @return the current counts of the blocks <code>from</code> to <code>to - 1</code>
+   */
+  private static long[] getCounts(int from, int to) {
+    if (from < 0 || to > nBlocks || from > to) {
+      throw new IndexOutOfBoundsException("Invalid block range: " + from + " to " + to);
+    }
+    long[] counts = new long[to - from];
+    for (int i = from; i < to; i++) {
+      counts[i - from] = getCount(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Resets all counters (and method times) to zero.
+   * <p>
+   * Concurrent increments during the reset might get lost.
+   * The active phase (if any) continues from zero, while already recorded phases are kept.
+   */
+  private static synchronized void reset() {
+    resetTimes();
+    if (callEdges != null) {
+      for (int slot = 1; slot < callEdges.length; slot += 2) {
+        LONG_ARRAY.setVolatile(callEdges, slot, 0L);
+      }
+      droppedCalls.set(0);
+    }
+    if (exceptionExits != null) {
+      synchronized (exceptionExits) {
+        exceptionExits.clear();
+      }
+    }
+    if (pathTables != null) {
+      for (int i = 0; i < nBlocks; i++) {
+        long[] table = pathTables[i];
+        if (table != null) {
+          for (int slot = 1; slot < table.length; slot += 2) {
+            LONG_ARRAY.setVolatile(table, slot, 0L);
+          }
+        }
+        Map<Long, long[]> overflow = overflowPaths.get(i);
+        if (overflow != null) {
+          synchronized (overflow) {
+            overflow.clear();
+          }
+        }
+      }
+      droppedPaths.set(0);
+    }
+    if (loopHistograms != null) {
+      for (long[] histogram : loopHistograms) {
+        if (histogram != null) {
+          for (int bucket = 0; bucket < N_LOOP_BUCKETS; bucket++) {
+            LONG_ARRAY.setVolatile(histogram, bucket, 0L);
+          }
+        }
+      }
+    }
+    if (phaseStartCounts != null) {
+      Arrays.fill(phaseStartCounts, 0);
+    }
+    if (mappedCounts != null) {
+      for (int i = 0; i < nBlocks; i++) {
+        MAPPED_LONG.setVolatile(mappedCounts, MAPPED_HEADER_SIZE + (i << 3), 0L);
+      }
+      return;
+    }
+    if (blockCounts != null) {
+      Arrays.fill(blockCounts, 0);
+    }
+    if (coveredBlocks != null) {
+      Arrays.fill(coveredBlocks, (byte) 0);
+    }
+    if (holderCounts != null) {
+      holderCounts.values().forEach(counts -> Arrays.fill(counts, 0));
+    }
+    if (atomicBlockCounts != null) {
+      for (int i = 0; i < nBlocks; i++) {
+        atomicBlockCounts.set(i, 0);
+      }
+    }
+    if (stripedBlockCounts != null) {
+      for (long[] cells : stripedBlockCounts) {
+        if (cells != null) {
+          Arrays.fill(cells, 0);
+        }
+      }
+    }
+    promotedCounts = Map.of();
+    carriedHalves = Map.of();
+    if (liveThreadCounts != null) {
+      synchronized (__Counter.class) {
+        liveThreadCounts.keySet().forEach(counts -> Arrays.fill(counts, 0));
+        threadGroupCounts.values().forEach(counts -> Arrays.fill(counts, 0));
+      }
+    }
+  }
+
+  /**
+   * Resets all method times to zero, if method timing is enabled.
+   */
+  private static void resetTimes() {
+    if (totalTimes == null) {
+      return;
+    }
+    Arrays.fill(totalTimes, 0);
+    Arrays.fill(selfTimes, 0);
+    Arrays.fill(maxTimes, 0);
+    Arrays.fill(cpuTimes, 0);
+  }
+
+  /**
+   * Writes the current counts to the counts file.
    * <p>
-   * The final count for each block is the sum of the regular and synchronized counters.
-   * Every counter is either synchronized or not, so only ever one of the two array values is non-zero.
+   * A memory-mapped counts file is always up-to-date, it is only forced to be written to the storage device.
+   */
+  private static void forceSave() {
+    if (mappedCounts != null) {
+      mappedCounts.force();
+    } else {
+      save(countsFileName);
+    }
+  }
+
+  /**
+   * Invokes one of the MBean operations:
+   * <ul>
+   *   <li><code>getCounts()</code>: returns the current counts of all blocks as a <code>long[]</code></li>
+   *   <li><code>getCountsRange(int from, int to)</code>: returns the current counts of a range of blocks</li>
+   *   <li><code>reset()</code>: resets all counters to zero</li>
+   *   <li><code>save()</code>: writes the counts file</li>
+   *   <li><code>enable()</code>, <code>disable()</code>: switches toggleable counters on or off</li>
+   * </ul>
    *
-   * @param fileName the location of the file to save the counter-array to
+   * @param actionName the name of the operation
+   * @param params     the parameters of the operation
+   * @param signature  the parameter types of the operation
+   * @return the result of the operation, or <code>null</code> for <code>void</code> operations
+   * @throws ReflectionException if the operation does not exist
    */
-  private static void save(@SuppressWarnings("SameParameterValue") String fileName) {
-    try (DataOutputStream dis = new DataOutputStream(new FileOutputStream(fileName))) {
-      dis.writeInt(blockCounts.length);
-      for (int i = 0; i < blockCounts.length; i++) {
-        dis.writeLong(blockCounts[i] + atomicBlockCounts.get(i));
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+    return switch (actionName) {
+      case "getCounts" -> getCounts(0, nBlocks);
+      case "getCountsRange" -> getCounts((Integer) params[0], (Integer) params[1]);
+      case "reset" -> {
+        reset();
+        yield null;
       }
-    } catch (IOException | NumberFormatException e) {
-      throw new RuntimeException(e);
+      case "save" -> {
+        forceSave();
+        yield null;
+      }
+      case "enable" -> {
+        enable();
+        yield null;
+      }
+      case "disable" -> {
+        disable();
+        yield null;
+      }
+      default -> throw new ReflectionException(new NoSuchMethodException(actionName));
+    };
+  }
+
+  /**
+   * Returns the value of the single, read-only MBean attribute <code>BlockCount</code>.
+   *
+   * @param attribute the name of the attribute
+   * @return the number of blocks
+   * @throws AttributeNotFoundException if the attribute does not exist
+   */
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    if (attribute.equals("BlockCount")) {
+      return nBlocks;
     }
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException(attribute.getName());
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      if (attribute.equals("BlockCount")) {
+        list.add(new Attribute(attribute, nBlocks));
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    MBeanAttributeInfo[] attributes = {
+        new MBeanAttributeInfo("BlockCount", "int", "the number of instrumented blocks", true, false, false)
+    };
+    MBeanParameterInfo[] range = {
+        new MBeanParameterInfo("from", "int", "the first block id (inclusive)"),
+        new MBeanParameterInfo("to", "int", "the last block id (exclusive)")
+    };
+    MBeanParameterInfo[] none = new MBeanParameterInfo[0];
+    String countsType = long[].class.getName();
+    MBeanOperationInfo[] operations = {
+        new MBeanOperationInfo("getCounts", "the counts of all blocks", none, countsType, MBeanOperationInfo.INFO),
+        new MBeanOperationInfo("getCountsRange", "the counts of a range of blocks", range, countsType, MBeanOperationInfo.INFO),
+        new MBeanOperationInfo("reset", "resets all counters to zero", none, "void", MBeanOperationInfo.ACTION),
+        new MBeanOperationInfo("save", "writes the counts file", none, "void", MBeanOperationInfo.ACTION),
+        new MBeanOperationInfo("enable", "enables toggleable counters", none, "void", MBeanOperationInfo.ACTION),
+        new MBeanOperationInfo("disable", "disables toggleable counters", none, "void", MBeanOperationInfo.ACTION)
+    };
+    return new MBeanInfo(__Counter.class.getName(), "Block counters of the instrumented program", attributes, null, operations, null);
   }
 
   /**
@@ -100,6 +2094,30 @@ public class __Counter {
     return function.get();
   }
 
+  /**
+   * Toggleable version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaToggleable(int n, Runnable method) {
+    __Counter.incToggleable(n);
+    method.run();
+  }
+
+  /**
+   * Toggleable version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaToggleable(int n, Supplier<T> function) {
+    __Counter.incToggleable(n);
+    return function.get();
+  }
+
   /**
    * Synchronized version of {@link #incLambda(int, Runnable)}.
    *
@@ -123,4 +2141,174 @@ public class __Counter {
     __Counter.incSync(n);
     return function.get();
   }
+
+  /**
+   * Striped version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaStriped(int n, Runnable method) {
+    __Counter.incStriped(n);
+    method.run();
+  }
+
+  /**
+   * Striped version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaStriped(int n, Supplier<T> function) {
+    __Counter.incStriped(n);
+    return function.get();
+  }
+
+  /**
+   * Memory-mapped version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaMapped(int n, Runnable method) {
+    __Counter.incMapped(n);
+    method.run();
+  }
+
+  /**
+   * Memory-mapped version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaMapped(int n, Supplier<T> function) {
+    __Counter.incMapped(n);
+    return function.get();
+  }
+
+  /**
+   * Sampled version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaSampled(int n, Runnable method) {
+    __Counter.incSampled(n);
+    method.run();
+  }
+
+  /**
+   * Sampled version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaSampled(int n, Supplier<T> function) {
+    __Counter.incSampled(n);
+    return function.get();
+  }
+
+  /**
+   * Adaptive version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaAdaptive(int n, Runnable method) {
+    __Counter.incAdaptive(n);
+    method.run();
+  }
+
+  /**
+   * Adaptive version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaAdaptive(int n, Supplier<T> function) {
+    __Counter.incAdaptive(n);
+    return function.get();
+  }
+
+  /**
+   * Per-thread version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaPerThread(int n, Runnable method) {
+    __Counter.incPerThread(n);
+    method.run();
+  }
+
+  /**
+   * Per-thread version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaPerThread(int n, Supplier<T> function) {
+    __Counter.incPerThread(n);
+    return function.get();
+  }
+
+  /**
+   * Coverage version of {@link #incLambda(int, Runnable)}.
+   *
+   * @param n      the block id
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaCovered(int n, Runnable method) {
+    __Counter.incCovered(n);
+    method.run();
+  }
+
+  /**
+   * Coverage version of {@link #incLambda(int, Supplier)}.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param n        the block id
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaCovered(int n, Supplier<T> function) {
+    __Counter.incCovered(n);
+    return function.get();
+  }
+
+  /**
+   * Holder version of {@link #incLambda(int, Runnable)}, incrementing an element of the counter-array of a holder class.
+   *
+   * @param counts the counter-array of the holder class (see {@link #register})
+   * @param i      the index of the block in the array
+   * @param method the original lambda that is wrapped in a <code>Runnable</code>
+   */
+  public static void incLambdaHolder(long[] counts, int i, Runnable method) {
+    counts[i]++;
+    method.run();
+  }
+
+  /**
+   * Holder version of {@link #incLambda(int, Supplier)}, incrementing an element of the counter-array of a holder class.
+   *
+   * @param <T>      the return type of the wrapped lambda <code>Supplier</code>
+   * @param counts   the counter-array of the holder class (see {@link #register})
+   * @param i        the index of the block in the array
+   * @param function the original lambda that is wrapped in a <code>Supplier</code>
+   * @return the result of the wrapped lambda
+   */
+  public static <T> T incLambdaHolder(long[] counts, int i, Supplier<T> function) {
+    counts[i]++;
+    return function.get();
+  }
 }
@@ -2,4 +2,6 @@ module org.matwoess.jsourceprofiler.tool {
   exports org.matwoess.jsourceprofiler.tool.model;
   exports org.matwoess.jsourceprofiler.tool.cli;
   requires org.matwoess.jsourceprofiler.common;
+  requires java.management;
+  requires jdk.attach;
 }
\ No newline at end of file
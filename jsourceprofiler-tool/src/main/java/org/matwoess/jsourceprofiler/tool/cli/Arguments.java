@@ -5,7 +5,10 @@ import org.matwoess.jsourceprofiler.common.Util;
 
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Represents the command line arguments for the profiler tool.
@@ -13,17 +16,54 @@ import java.util.Objects;
  * @param runMode       one of {@link RunMode}
  * @param targetPath    the path to the main Java file (or directory for instrument-only mode)
  * @param sourcesDir    the directory with additional Java files to instrument
- * @param syncCounters  whether to instrument using synchronized counter-increments
- * @param verboseOutput whether to output verbose info about instrumentation of files
- * @param programArgs   the program arguments to pass to the main method
+ * @param options          the options for instrumenting and profiling the program (see {@link ProfilingOptions})
+ * @param reportSnapshot   the snapshot (or range of two snapshots) to generate the report from, or null
+ * @param reportPhase      the recorded phase to generate the report from, or null
+ * @param attachPid        the process id of a running instrumented program to generate the report from, or -1
+ * @param mergeCountsFiles the counts files to merge in the merge-counts run mode (empty for all run-unique counts files)
+ * @param verboseOutput    whether to output verbose info about instrumentation of files
+ * @param programArgs      the program arguments to pass to the main method
  */
 public record Arguments(
     RunMode runMode,
     Path targetPath,
     Path sourcesDir,
-    boolean syncCounters,
+    ProfilingOptions options,
+    String reportSnapshot,
+    String reportPhase,
+    long attachPid,
+    List<Path> mergeCountsFiles,
     boolean verboseOutput,
     String[] programArgs) {
+  private static final Pattern SNAPSHOT_SELECTION = Pattern.compile("(\\d+|latest)(\\.\\.(\\d+|latest))?");
+
+  /**
+   * Creates a new arguments record with the given profiling options, without snapshots.
+   *
+   * @param runMode       one of {@link RunMode}
+   * @param targetPath    the path to the main Java file (or directory for instrument-only mode)
+   * @param sourcesDir    the directory with additional Java files to instrument
+   * @param options       the options for instrumenting and profiling the program
+   * @param verboseOutput whether to output verbose info about instrumentation of files
+   * @param programArgs   the program arguments to pass to the main method
+   */
+  public Arguments(RunMode runMode, Path targetPath, Path sourcesDir, ProfilingOptions options, boolean verboseOutput, String[] programArgs) {
+    this(runMode, targetPath, sourcesDir, options, null, null, -1, List.of(), verboseOutput, programArgs);
+  }
+
+  /**
+   * Creates a new arguments record with the given counter mode and otherwise default options, without snapshots.
+   *
+   * @param runMode       one of {@link RunMode}
+   * @param targetPath    the path to the main Java file (or directory for instrument-only mode)
+   * @param sourcesDir    the directory with additional Java files to instrument
+   * @param counterMode   the kind of counter-increments to instrument with (one of {@link CounterMode})
+   * @param verboseOutput whether to output verbose info about instrumentation of files
+   * @param programArgs   the program arguments to pass to the main method
+   */
+  public Arguments(RunMode runMode, Path targetPath, Path sourcesDir, CounterMode counterMode, boolean verboseOutput, String[] programArgs) {
+    this(runMode, targetPath, sourcesDir, new ProfilingOptions.Builder().setCounterMode(counterMode).build(), verboseOutput, programArgs);
+  }
 
   /**
    * Parses the command line arguments and returns an {@link Arguments} object.
@@ -37,7 +77,11 @@ public record Arguments(
       throw new IllegalArgumentException("No arguments specified.");
     }
     RunMode runMode = RunMode.DEFAULT;
-    boolean syncCounters = false;
+    CounterMode counterMode = CounterMode.DEFAULT;
+    ProfilingOptions.Builder optionsBuilder = new ProfilingOptions.Builder();
+    String reportSnapshot = null;
+    String reportPhase = null;
+    long attachPid = -1;
     boolean verboseOutput = false;
     Path sourcesDir = null;
     int i = 0;
@@ -50,7 +94,83 @@ public record Arguments(
           printUsage();
           return null;
         }
-        case "-s", "--synchronized" -> syncCounters = true;
+        case "-s", "--synchronized" -> counterMode = setCounterMode(counterMode, CounterMode.SYNCHRONIZED);
+        case "--striped" -> counterMode = setCounterMode(counterMode, CounterMode.STRIPED);
+        case "--mapped" -> counterMode = setCounterMode(counterMode, CounterMode.MAPPED);
+        case "--adaptive" -> counterMode = setCounterMode(counterMode, CounterMode.ADAPTIVE);
+        case "--sample" -> {
+          counterMode = setCounterMode(counterMode, CounterMode.SAMPLED);
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No sampling rate specified.");
+          }
+          int samplingRate;
+          try {
+            samplingRate = Integer.parseInt(args[i]);
+          } catch (NumberFormatException e) {
+            samplingRate = 0;
+          }
+          if (samplingRate < 2) {
+            throw new IllegalArgumentException("Invalid sampling rate: " + args[i]);
+          }
+          optionsBuilder.setSamplingRate(samplingRate);
+        }
+        case "--per-thread" -> counterMode = setCounterMode(counterMode, CounterMode.PER_THREAD);
+        case "--coverage" -> counterMode = setCounterMode(counterMode, CounterMode.COVERAGE);
+        case "--toggleable" -> counterMode = setCounterMode(counterMode, CounterMode.TOGGLEABLE);
+        case "--holders" -> counterMode = setCounterMode(counterMode, CounterMode.HOLDER);
+        case "--thread-pattern" -> {
+          counterMode = setCounterMode(counterMode, CounterMode.PER_THREAD);
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No thread pattern specified.");
+          }
+          String threadPattern = args[i];
+          try {
+            Pattern.compile(threadPattern);
+          } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid thread pattern: " + threadPattern);
+          }
+          optionsBuilder.setThreadPattern(threadPattern);
+        }
+        case "--timing" -> optionsBuilder.setTimingEnabled(true);
+        case "--cpu-time" -> optionsBuilder.setTimingEnabled(true).setCpuTimeEnabled(true);
+        case "--call-graph" -> optionsBuilder.setCallGraphEnabled(true);
+        case "--loop-histograms" -> optionsBuilder.setLoopHistograms(true);
+        case "--exception-exits" -> optionsBuilder.setExceptionExits(true);
+        case "--unique-counts" -> optionsBuilder.setUniqueCounts(true);
+        case "--minimal-counters" -> optionsBuilder.setMinimalCounters(true);
+        case "--loop-local-counters" -> optionsBuilder.setLoopLocalCounters(true);
+        case "--preserve-inlining" -> optionsBuilder.setPreserveInlining(true);
+        case "--profile-guided" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No hit threshold specified.");
+          }
+          long guidedThreshold;
+          try {
+            guidedThreshold = Long.parseLong(args[i]);
+          } catch (NumberFormatException e) {
+            guidedThreshold = -1;
+          }
+          if (guidedThreshold < 1) {
+            throw new IllegalArgumentException("Invalid hit threshold: " + args[i]);
+          }
+          optionsBuilder.setGuidedThreshold(guidedThreshold);
+        }
+        case "--paths" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No path pattern specified.");
+          }
+          String pathPattern = args[i];
+          try {
+            Pattern.compile(pathPattern);
+          } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid path pattern: " + pathPattern);
+          }
+          optionsBuilder.setPathPattern(pathPattern);
+        }
         case "-v", "--verbose" -> verboseOutput = true;
         case "-i", "--instrument-only" -> {
           if (runMode != RunMode.DEFAULT) {
@@ -64,6 +184,76 @@ public record Arguments(
           }
           runMode = RunMode.REPORT_ONLY;
         }
+        case "--merge-counts" -> {
+          if (runMode != RunMode.DEFAULT) {
+            throw new IllegalArgumentException("Multiple run modes specified.");
+          }
+          runMode = RunMode.MERGE_COUNTS;
+        }
+        case "--snapshot-interval" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No snapshot interval specified.");
+          }
+          int snapshotInterval;
+          try {
+            snapshotInterval = Integer.parseInt(args[i]);
+          } catch (NumberFormatException e) {
+            snapshotInterval = -1;
+          }
+          if (snapshotInterval < 0) {
+            throw new IllegalArgumentException("Invalid snapshot interval: " + args[i]);
+          }
+          optionsBuilder.setSnapshotInterval(snapshotInterval);
+        }
+        case "--timeline" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No timeline interval specified.");
+          }
+          int timelineInterval;
+          try {
+            timelineInterval = Integer.parseInt(args[i]);
+          } catch (NumberFormatException e) {
+            timelineInterval = -1;
+          }
+          if (timelineInterval <= 0) {
+            throw new IllegalArgumentException("Invalid timeline interval: " + args[i]);
+          }
+          optionsBuilder.setTimelineInterval(timelineInterval);
+        }
+        case "--snapshot" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No snapshot specified.");
+          }
+          reportSnapshot = args[i];
+          if (!SNAPSHOT_SELECTION.matcher(reportSnapshot).matches()) {
+            throw new IllegalArgumentException("Invalid snapshot: " + reportSnapshot);
+          }
+        }
+        case "--phase" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No phase specified.");
+          }
+          reportPhase = args[i];
+        }
+        case "--jmx" -> optionsBuilder.setJmxEnabled(true);
+        case "--attach" -> {
+          i++;
+          if (i == args.length) { // no additional argument
+            throw new IllegalArgumentException("No process id specified.");
+          }
+          try {
+            attachPid = Long.parseLong(args[i]);
+          } catch (NumberFormatException e) {
+            attachPid = -1;
+          }
+          if (attachPid <= 0) {
+            throw new IllegalArgumentException("Invalid process id: " + args[i]);
+          }
+        }
         case "-d", "--sources-directory" -> {
           i++;
           if (i == args.length) { // no additional argument
@@ -77,19 +267,66 @@ public record Arguments(
         default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
       }
     }
+    ProfilingOptions options = optionsBuilder.setCounterMode(counterMode).build();
     String[] remainingArgs = Arrays.copyOfRange(args, i, args.length);
     Path targetPath = null;
     String[] programArgs = null;
+    List<Path> mergeCountsFiles = List.of();
     if (remainingArgs.length > 0) {
       targetPath = Path.of(remainingArgs[0]);
     }
     // additional validations
+    if (reportSnapshot != null && runMode != RunMode.REPORT_ONLY) {
+      throw new IllegalArgumentException("A snapshot can only be selected in the report-only run mode.");
+    }
+    if (reportPhase != null && runMode == RunMode.MERGE_COUNTS) {
+      throw new IllegalArgumentException("A phase cannot be selected in the merge-counts run mode.");
+    }
+    if (attachPid != -1 && runMode != RunMode.REPORT_ONLY) {
+      throw new IllegalArgumentException("A process can only be attached to in the report-only run mode.");
+    }
+    if (attachPid != -1 && reportSnapshot != null) {
+      throw new IllegalArgumentException("A snapshot cannot be selected when attaching to a process.");
+    }
+    if (reportPhase != null && runMode == RunMode.INSTRUMENT_ONLY) {
+      throw new IllegalArgumentException("A phase cannot be selected in the instrument-only run mode.");
+    }
+    if (reportPhase != null && (reportSnapshot != null || attachPid != -1)) {
+      throw new IllegalArgumentException("A phase cannot be selected together with a snapshot or an attached process.");
+    }
+    if (options.minimalCounters() && counterMode == CounterMode.PER_THREAD) {
+      throw new IllegalArgumentException("Minimal counters cannot be used with the per-thread counter mode.");
+    }
+    if (options.minimalCounters() && counterMode == CounterMode.COVERAGE) {
+      throw new IllegalArgumentException("Minimal counters cannot be used with the coverage counter mode.");
+    }
+    if (options.loopLocalCounters() && counterMode != CounterMode.DEFAULT) {
+      throw new IllegalArgumentException("Loop-local counters can only be used with the default counter mode.");
+    }
+    if (options.guidedThreshold() != -1 && counterMode == CounterMode.COVERAGE) {
+      throw new IllegalArgumentException("Profile-guided instrumentation cannot be used with the coverage counter mode.");
+    }
+    if (options.guidedThreshold() != -1 && (runMode == RunMode.REPORT_ONLY || runMode == RunMode.MERGE_COUNTS)) {
+      throw new IllegalArgumentException("Profile-guided instrumentation requires instrumenting the program.");
+    }
+    if (options.pathPattern() != null && (runMode == RunMode.REPORT_ONLY || runMode == RunMode.MERGE_COUNTS)) {
+      throw new IllegalArgumentException("Path profiling requires instrumenting the program.");
+    }
     switch (runMode) {
       case REPORT_ONLY -> {
         if (remainingArgs.length > 0) {
           throw new IllegalArgumentException("No arguments allowed for the report-only run mode.");
         }
       }
+      case MERGE_COUNTS -> {
+        mergeCountsFiles = Arrays.stream(remainingArgs).map(Path::of).toList();
+        for (Path countsFile : mergeCountsFiles) {
+          if (!countsFile.toFile().isFile()) {
+            throw new IllegalArgumentException("Not a counts file: " + countsFile.toAbsolutePath().normalize());
+          }
+        }
+        targetPath = null;
+      }
       case INSTRUMENT_ONLY -> {
         if (remainingArgs.length != 1) {
           throw new IllegalArgumentException("Exactly one argument required for the instrument-only run mode.");
@@ -110,7 +347,22 @@ public record Arguments(
         }
       }
     }
-    return new Arguments(runMode, targetPath, sourcesDir, syncCounters, verboseOutput, programArgs);
+    return new Arguments(runMode, targetPath, sourcesDir, options, reportSnapshot, reportPhase, attachPid, mergeCountsFiles, verboseOutput, programArgs);
+  }
+
+  /**
+   * Returns the new counter mode, if no other (non-default) counter mode was specified before.
+   *
+   * @param current the currently set counter mode
+   * @param mode    the newly specified counter mode
+   * @return the new counter mode
+   * @throws IllegalArgumentException if a different counter mode was already specified
+   */
+  private static CounterMode setCounterMode(CounterMode current, CounterMode mode) throws IllegalArgumentException {
+    if (current != CounterMode.DEFAULT && current != mode) {
+      throw new IllegalArgumentException("Multiple counter modes specified.");
+    }
+    return mode;
   }
 
   /**
@@ -132,14 +384,41 @@ public record Arguments(
         Options:
           -h, --help                        display this message and quit
           -s, --synchronized                instrument using synchronized counter increments
+              --striped                     instrument using exact, striped (per-thread) counter increments
+              --mapped                      increment counters directly in the memory-mapped counts file
+              --adaptive                    use atomic increments only for blocks shared between threads
+              --sample <N>                  only count a random sample of about 1 in N block entries
+              --per-thread                  count the block entries of every thread separately
+              --thread-pattern <regex>      like --per-thread, grouping threads by the matching part of their name
+              --coverage                    only record whether blocks were executed, without hit counts
+              --toggleable                  instrument counters that can be switched on and off at run time
+              --holders                     increment constant counter-arrays generated for every source file
+              --timing                      measure the wall-clock time of method invocations
+              --cpu-time                    like --timing, also measuring the CPU time of method invocations
+              --call-graph                  count the calls between methods for a call graph
+              --loop-histograms             record a histogram of the iteration counts of every loop
+              --exception-exits             record where exceptions leave blocks to correct region counts
+              --unique-counts               write a separate counts file for every program run
+              --minimal-counters            derive block counts from other counters where possible (not exact with exceptions)
+              --loop-local-counters         accumulate loop body hits in local variables, added after the loop
+              --preserve-inlining           only count the method block of methods that would grow too large to inline
+              --profile-guided <hits>       infer the counts of blocks hit more than <hits> times in the previous run
+              --paths <regex>               profile the paths through the methods whose Class::method name matches
+              --snapshot-interval <seconds> write counter snapshots periodically (0: only on demand)
+              --timeline <millis>           record the counter changes every <millis> ms for a timeline
+              --snapshot <n|latest>         use a counter snapshot for the report (<n>..<m> for a delta)
+              --phase <name>                only use the counts of a phase recorded by the program for the report
+              --jmx                         register an MBean giving access to the live counters
+              --attach <pid>                use the live counters of a running process for the report
           -v, --verbose                     output verbose info about instrumentation of files
           -d, --sources-directory <dir>     directory with additional Java files to instrument
         Run mode (exclusive):
           -i, --instrument-only <file|dir>  only instrument a single file or directory and exit
           -r, --generate-report             only generate the report from metadata and counts
+              --merge-counts [files]        sum up the counts of multiple runs and generate the report
         Main file:
           The path to the main Java file. It will be compiled and and executed after instrumentation.
-          (Must not be specified for the generate-report run mode)
+          (Must not be specified for the generate-report and merge-counts run modes)
         Program args:
           Will be passed to the main method if given
         """;
@@ -152,7 +431,11 @@ public record Arguments(
 
     Arguments arguments = (Arguments) o;
 
-    if (syncCounters != arguments.syncCounters) return false;
+    if (!options.equals(arguments.options)) return false;
+    if (!Objects.equals(reportSnapshot, arguments.reportSnapshot)) return false;
+    if (!Objects.equals(reportPhase, arguments.reportPhase)) return false;
+    if (attachPid != arguments.attachPid) return false;
+    if (!mergeCountsFiles.equals(arguments.mergeCountsFiles)) return false;
     if (verboseOutput != arguments.verboseOutput) return false;
     if (runMode != arguments.runMode) return false;
     if (!Objects.equals(targetPath, arguments.targetPath)) return false;
@@ -165,7 +448,11 @@ public record Arguments(
     int result = runMode.hashCode();
     result = 31 * result + (targetPath != null ? targetPath.hashCode() : 0);
     result = 31 * result + (sourcesDir != null ? sourcesDir.hashCode() : 0);
-    result = 31 * result + (syncCounters ? 1 : 0);
+    result = 31 * result + options.hashCode();
+    result = 31 * result + (reportSnapshot != null ? reportSnapshot.hashCode() : 0);
+    result = 31 * result + (reportPhase != null ? reportPhase.hashCode() : 0);
+    result = 31 * result + Long.hashCode(attachPid);
+    result = 31 * result + mergeCountsFiles.hashCode();
     result = 31 * result + (verboseOutput ? 1 : 0);
     result = 31 * result + Arrays.hashCode(programArgs);
     return result;
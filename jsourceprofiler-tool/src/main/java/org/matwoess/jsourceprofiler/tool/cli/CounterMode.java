@@ -0,0 +1,75 @@
+package org.matwoess.jsourceprofiler.tool.cli;
+
+/**
+ * The different kinds of counter-increments that can be inserted by the {@link org.matwoess.jsourceprofiler.tool.instrument.Instrumenter}.
+ * <p>
+ * Each mode corresponds to a family of <code>inc</code> methods in the <code>auxiliary.__Counter</code> class.
+ */
+public enum CounterMode {
+  /**
+   * Plain, non-synchronized increments of an <code>int[]</code> array (<code>__Counter.inc</code>).
+   * The 32-bit counters wrap around, the halves they pass are carried separately, so the counts are not limited.
+   */
+  DEFAULT(""),
+  /**
+   * Atomic increments of a single shared <code>AtomicIntegerArray</code> (<code>__Counter.incSync</code>).
+   * Once a counter reaches 2<sup>31</sup>, this part is promoted to a separate <code>long</code> count.
+   */
+  SYNCHRONIZED("Sync"),
+  /**
+   * Exact atomic increments of per-thread striped cells, summed up at the end (<code>__Counter.incStriped</code>).
+   */
+  STRIPED("Striped"),
+  /**
+   * Atomic increments directly inside the memory-mapped counts file (<code>__Counter.incMapped</code>).
+   */
+  MAPPED("Mapped"),
+  /**
+   * Counting only a random sample of about one in every N block entries (<code>__Counter.incSampled</code>).
+   * The counts are scaled up by the sampling rate in the report.
+   */
+  SAMPLED("Sampled"),
+  /**
+   * Plain increments for blocks executed by a single thread, promoted to atomic increments
+   * once a block is executed by a second thread (<code>__Counter.incAdaptive</code>).
+   */
+  ADAPTIVE("Adaptive"),
+  /**
+   * Plain increments of per-thread counter-arrays, which are kept separately for every thread
+   * (or group of threads with a matching name) and summed up at the end (<code>__Counter.incPerThread</code>).
+   */
+  PER_THREAD("PerThread"),
+  /**
+   * Only recording whether a block was entered at all, in a <code>byte[]</code> array (<code>__Counter.incCovered</code>).
+   * The flag of a block is only written on its first entry, so later entries only read it.
+   * The report shows covered and not covered code without hit counts.
+   */
+  COVERAGE("Covered"),
+  /**
+   * Plain increments like the default mode, called through a <code>MutableCallSite</code>
+   * that can be switched to a no-op at run time (<code>__Counter.incToggleable</code>).
+   * While disabled, the JIT compiler removes the counter calls from the compiled code.
+   */
+  TOGGLEABLE("Toggleable"),
+  /**
+   * Plain increments of a <code>static final long[]</code> array in a holder class generated for every source file,
+   * indexed by the file-local block ids. The holders are registered with <code>auxiliary.__Counter</code> when initialized.
+   * Only single-expression lambdas use a method of the <code>__Counter</code> class (<code>__Counter.incLambdaHolder</code>).
+   */
+  HOLDER("Holder");
+
+  private final String incSuffix;
+
+  CounterMode(String incSuffix) {
+    this.incSuffix = incSuffix;
+  }
+
+  /**
+   * Returns the suffix that is appended to the <code>__Counter.inc</code> and <code>__Counter.incLambda</code> calls.
+   *
+   * @return the method name suffix of this counter mode
+   */
+  public String incSuffix() {
+    return incSuffix;
+  }
+}
@@ -1,9 +1,14 @@
 package org.matwoess.jsourceprofiler.tool.cli;
 
+import org.matwoess.jsourceprofiler.common.IO;
 import org.matwoess.jsourceprofiler.common.Util;
 import org.matwoess.jsourceprofiler.tool.instrument.Instrumenter;
 import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+import org.matwoess.jsourceprofiler.tool.model.Metadata;
+import org.matwoess.jsourceprofiler.tool.profile.CounterClient;
+import org.matwoess.jsourceprofiler.tool.profile.CountsMerger;
 import org.matwoess.jsourceprofiler.tool.profile.Profiler;
+import org.matwoess.jsourceprofiler.tool.profile.Snapshots;
 
 import java.nio.file.Path;
 
@@ -29,15 +34,37 @@ public class Main {
     }
     if (arguments == null) return;
     switch (arguments.runMode()) {
-      case REPORT_ONLY -> generateReportOnly();
+      case REPORT_ONLY -> generateReportOnly(arguments);
       case INSTRUMENT_ONLY -> instrumentOnly(arguments);
+      case MERGE_COUNTS -> mergeCountsAndGenerateReport(arguments);
       case DEFAULT -> instrumentCompileAndRun(arguments);
     }
   }
 
-  private static void generateReportOnly() {
+  private static void generateReportOnly(Arguments arguments) {
     Profiler profiler = new Profiler(null);
-    profiler.generateReport();
+    if (arguments.reportSnapshot() != null) {
+      profiler.generateReport(Snapshots.readCounts(arguments.reportSnapshot()));
+    } else if (arguments.reportPhase() != null) {
+      profiler.generateReport(Profiler.readPhaseCounts(arguments.reportPhase()));
+    } else if (arguments.attachPid() != -1) {
+      profiler.generateReport(new CounterClient(arguments.attachPid()).fetchCounts());
+    } else {
+      profiler.generateReport();
+    }
+    profiler.createLinkForReport();
+  }
+
+  private static void mergeCountsAndGenerateReport(Arguments arguments) {
+    int nBlocks = Metadata.importMetadata(IO.getMetadataPath()).blocksCount();
+    long[] counts;
+    if (arguments.mergeCountsFiles().isEmpty()) {
+      counts = CountsMerger.mergeRunCounts(nBlocks);
+    } else {
+      counts = CountsMerger.merge(arguments.mergeCountsFiles(), nBlocks);
+    }
+    Profiler profiler = new Profiler(null);
+    profiler.generateReport(counts);
     profiler.createLinkForReport();
   }
 
@@ -71,7 +98,11 @@ public class Main {
     Profiler profiler = new Profiler(mainJavaFile, additionalJavaFiles);
     profiler.compileInstrumented();
     profiler.profile(arguments.programArgs());
-    profiler.generateReport();
+    if (arguments.reportPhase() != null) {
+      profiler.generateReport(Profiler.readPhaseCounts(arguments.reportPhase()));
+    } else {
+      profiler.generateReport();
+    }
     profiler.createLinkForReport();
   }
 
@@ -0,0 +1,270 @@
+package org.matwoess.jsourceprofiler.tool.cli;
+
+import java.io.Serializable;
+
+/**
+ * Represents the options that control how a program is instrumented and what is recorded while it runs.
+ * <p>
+ * They are part of the command line {@link Arguments}, are used by the instrumenter,
+ * and are stored in the metadata, from which the report is generated.
+ * New instances are created with a {@link Builder}, so that only the non-default options have to be specified.
+ *
+ * @param counterMode       the kind of counter-increments to instrument with (one of {@link CounterMode})
+ * @param samplingRate      the sampling rate N for the sampled counter mode (1 if every block entry is counted)
+ * @param threadPattern     the pattern grouping threads by name in the per-thread counter mode, or null
+ * @param timingEnabled     whether to measure the wall-clock time of method and constructor invocations
+ * @param cpuTimeEnabled    whether to also measure the CPU time of the timed invocations
+ * @param callGraphEnabled  whether to count the calls between methods (and constructors) by their caller
+ * @param loopHistograms    whether to record the iteration counts of every loop execution in a histogram
+ * @param exceptionExits    whether to record where exceptions leave blocks, to correct the hit counts of code regions
+ * @param uniqueCounts      whether every program run writes its own counts file, instead of overwriting the counts file
+ * @param minimalCounters   whether to derive the hits of blocks from other counters where possible, instead of counting them
+ * @param loopLocalCounters whether to accumulate the hits of loop bodies in local variables, added to the counters after the loop
+ * @param preserveInlining  whether to only count the method block of methods that would exceed an inlining size limit
+ * @param guidedThreshold   the hits in the previous run above which a block's count is inferred from its parent (-1 if disabled)
+ * @param pathPattern       the pattern selecting the methods (by <code>Class::method</code>) whose paths are profiled, or null
+ * @param snapshotInterval  the interval of counter snapshots in seconds (0 for on-demand only, -1 if disabled)
+ * @param timelineInterval  the interval of timeline snapshots in milliseconds (-1 if disabled)
+ * @param jmxEnabled        whether to register a platform MBean giving access to the live counters
+ */
+public record ProfilingOptions(
+    CounterMode counterMode,
+    int samplingRate,
+    String threadPattern,
+    boolean timingEnabled,
+    boolean cpuTimeEnabled,
+    boolean callGraphEnabled,
+    boolean loopHistograms,
+    boolean exceptionExits,
+    boolean uniqueCounts,
+    boolean minimalCounters,
+    boolean loopLocalCounters,
+    boolean preserveInlining,
+    long guidedThreshold,
+    String pathPattern,
+    int snapshotInterval,
+    int timelineInterval,
+    boolean jmxEnabled) implements Serializable {
+
+  /**
+   * Returns the default options: plain counters for every block, without any additional recordings.
+   *
+   * @return the default options
+   */
+  public static ProfilingOptions defaults() {
+    return new Builder().build();
+  }
+
+  /**
+   * Returns whether the paths through any methods are profiled.
+   *
+   * @return true if a path pattern was specified
+   */
+  public boolean pathProfiling() {
+    return pathPattern != null;
+  }
+
+  /**
+   * Builder class for {@link ProfilingOptions}.
+   * Every option that is not set keeps its default value.
+   */
+  public static class Builder {
+    private CounterMode counterMode = CounterMode.DEFAULT;
+    private int samplingRate = 1;
+    private String threadPattern = null;
+    private boolean timingEnabled = false;
+    private boolean cpuTimeEnabled = false;
+    private boolean callGraphEnabled = false;
+    private boolean loopHistograms = false;
+    private boolean exceptionExits = false;
+    private boolean uniqueCounts = false;
+    private boolean minimalCounters = false;
+    private boolean loopLocalCounters = false;
+    private boolean preserveInlining = false;
+    private long guidedThreshold = -1;
+    private String pathPattern = null;
+    private int snapshotInterval = -1;
+    private int timelineInterval = -1;
+    private boolean jmxEnabled = false;
+
+    /**
+     * Sets the kind of counter-increments to instrument with.
+     * @param counterMode the counter mode
+     * @return the builder object itself for method chaining
+     */
+    public Builder setCounterMode(CounterMode counterMode) {
+      this.counterMode = counterMode;
+      return this;
+    }
+
+    /**
+     * Sets the sampling rate N of the sampled counter mode.
+     * @param samplingRate the sampling rate
+     * @return the builder object itself for method chaining
+     */
+    public Builder setSamplingRate(int samplingRate) {
+      this.samplingRate = samplingRate;
+      return this;
+    }
+
+    /**
+     * Sets the pattern grouping threads by name in the per-thread counter mode.
+     * @param threadPattern the thread name pattern
+     * @return the builder object itself for method chaining
+     */
+    public Builder setThreadPattern(String threadPattern) {
+      this.threadPattern = threadPattern;
+      return this;
+    }
+
+    /**
+     * Enables the measurement of the wall-clock time of method invocations.
+     * @param timingEnabled whether to time method invocations
+     * @return the builder object itself for method chaining
+     */
+    public Builder setTimingEnabled(boolean timingEnabled) {
+      this.timingEnabled = timingEnabled;
+      return this;
+    }
+
+    /**
+     * Enables the measurement of the CPU time of timed method invocations.
+     * @param cpuTimeEnabled whether to measure the CPU time
+     * @return the builder object itself for method chaining
+     */
+    public Builder setCpuTimeEnabled(boolean cpuTimeEnabled) {
+      this.cpuTimeEnabled = cpuTimeEnabled;
+      return this;
+    }
+
+    /**
+     * Enables counting the calls between methods.
+     * @param callGraphEnabled whether to count calls by their caller
+     * @return the builder object itself for method chaining
+     */
+    public Builder setCallGraphEnabled(boolean callGraphEnabled) {
+      this.callGraphEnabled = callGraphEnabled;
+      return this;
+    }
+
+    /**
+     * Enables recording the iteration counts of loop executions.
+     * @param loopHistograms whether to record loop histograms
+     * @return the builder object itself for method chaining
+     */
+    public Builder setLoopHistograms(boolean loopHistograms) {
+      this.loopHistograms = loopHistograms;
+      return this;
+    }
+
+    /**
+     * Enables recording where exceptions leave blocks.
+     * @param exceptionExits whether to record exception exits
+     * @return the builder object itself for method chaining
+     */
+    public Builder setExceptionExits(boolean exceptionExits) {
+      this.exceptionExits = exceptionExits;
+      return this;
+    }
+
+    /**
+     * Enables writing a separate counts file for every program run.
+     * @param uniqueCounts whether to write run-unique counts files
+     * @return the builder object itself for method chaining
+     */
+    public Builder setUniqueCounts(boolean uniqueCounts) {
+      this.uniqueCounts = uniqueCounts;
+      return this;
+    }
+
+    /**
+     * Enables deriving the hits of blocks from other counters.
+     * @param minimalCounters whether to place minimal counters
+     * @return the builder object itself for method chaining
+     */
+    public Builder setMinimalCounters(boolean minimalCounters) {
+      this.minimalCounters = minimalCounters;
+      return this;
+    }
+
+    /**
+     * Enables accumulating the hits of loop bodies in local variables.
+     * @param loopLocalCounters whether to use loop-local counters
+     * @return the builder object itself for method chaining
+     */
+    public Builder setLoopLocalCounters(boolean loopLocalCounters) {
+      this.loopLocalCounters = loopLocalCounters;
+      return this;
+    }
+
+    /**
+     * Enables keeping small methods below the inlining size limit.
+     * @param preserveInlining whether to preserve inlining
+     * @return the builder object itself for method chaining
+     */
+    public Builder setPreserveInlining(boolean preserveInlining) {
+      this.preserveInlining = preserveInlining;
+      return this;
+    }
+
+    /**
+     * Sets the hit threshold of profile-guided instrumentation.
+     * @param guidedThreshold the hits in the previous run above which a block's count is inferred
+     * @return the builder object itself for method chaining
+     */
+    public Builder setGuidedThreshold(long guidedThreshold) {
+      this.guidedThreshold = guidedThreshold;
+      return this;
+    }
+
+    /**
+     * Sets the pattern selecting the methods whose paths are profiled.
+     * @param pathPattern the method name pattern
+     * @return the builder object itself for method chaining
+     */
+    public Builder setPathPattern(String pathPattern) {
+      this.pathPattern = pathPattern;
+      return this;
+    }
+
+    /**
+     * Sets the interval of counter snapshots.
+     * @param snapshotInterval the interval in seconds (0 for on-demand only)
+     * @return the builder object itself for method chaining
+     */
+    public Builder setSnapshotInterval(int snapshotInterval) {
+      this.snapshotInterval = snapshotInterval;
+      return this;
+    }
+
+    /**
+     * Sets the interval of timeline snapshots.
+     * @param timelineInterval the interval in milliseconds
+     * @return the builder object itself for method chaining
+     */
+    public Builder setTimelineInterval(int timelineInterval) {
+      this.timelineInterval = timelineInterval;
+      return this;
+    }
+
+    /**
+     * Enables the platform MBean giving access to the live counters.
+     * @param jmxEnabled whether to register the MBean
+     * @return the builder object itself for method chaining
+     */
+    public Builder setJmxEnabled(boolean jmxEnabled) {
+      this.jmxEnabled = jmxEnabled;
+      return this;
+    }
+
+    /**
+     * Returns the options with the values set so far.
+     * @return the new options record
+     */
+    public ProfilingOptions build() {
+      return new ProfilingOptions(counterMode, samplingRate, threadPattern, timingEnabled, cpuTimeEnabled,
+          callGraphEnabled, loopHistograms, exceptionExits, uniqueCounts, minimalCounters, loopLocalCounters, preserveInlining,
+          guidedThreshold, pathPattern, snapshotInterval, timelineInterval, jmxEnabled);
+    }
+  }
+}
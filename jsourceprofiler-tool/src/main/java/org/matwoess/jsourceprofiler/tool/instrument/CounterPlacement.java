@@ -0,0 +1,119 @@
+package org.matwoess.jsourceprofiler.tool.instrument;
+
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.BlockType;
+import org.matwoess.jsourceprofiler.tool.model.CodeRegion;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper class to determine the blocks whose hits can be derived from other counters.
+ * <p>
+ * Every code region is executed as often as the blocks entered from it (and not left by a control break) in total.
+ * Using this flow conservation, no counter-statement is required for:
+ * <ul>
+ *   <li><code>try</code> blocks (without resources), entered every time their entry region is executed</li>
+ *   <li><code>finally</code> blocks, entered as often as the <code>try</code> block of their statement</li>
+ *   <li>the final <code>else</code> block of an if-else chain, entered whenever no other branch is entered</li>
+ *   <li>the last case of a switch expression with only arrow cases, as exactly one case is entered</li>
+ * </ul>
+ * The derived blocks keep their block id, but their counter is never incremented.
+ * Their hits are computed in block order before report generation, using {@link Block#getDerivedHitCount}.
+ * <p>
+ * Derivation is conservative: if the entry region is not directly followed by the block,
+ * or depends on a control break inside a lambda, the block is counted as usual.
+ * Still, the derived hits are too high if a statement in the entry region (or a condition) throws an exception,
+ * as the hits of the region then include executions that never reached the block.
+ * This is why the placement is only used with the <code>--minimal-counters</code> option.
+ */
+class CounterPlacement {
+
+  /**
+   * Sets the entry region and exclusive blocks of all blocks, whose hits can be derived from other counters.
+   *
+   * @param state the parser state after parsing a Java file
+   */
+  static void deriveCounters(ParserState state) {
+    for (Block tryBlock : state.plainTryBlocks) {
+      derive(tryBlock, tryBlock, List.of());
+    }
+    for (Map.Entry<Block, Block> entry : state.finallyBlocks.entrySet()) {
+      derive(entry.getKey(), entry.getValue(), List.of());
+    }
+    for (Map.Entry<Block, List<Block>> entry : state.elseChains.entrySet()) {
+      List<Block> branches = entry.getValue();
+      derive(entry.getKey(), branches.get(0), branches);
+    }
+    for (Block block : state.allBlocks) {
+      if (block.blockType == BlockType.SWITCH_EXPR && hasOnlyArrowCases(block)) {
+        List<Block> cases = block.innerBlocks;
+        Block lastCase = cases.get(cases.size() - 1);
+        derive(lastCase, block, cases.subList(0, cases.size() - 1));
+      }
+    }
+  }
+
+  /**
+   * Marks the given block as derived, if an entry region can be found for the anchor block.
+   *
+   * @param block           the block to derive the hits for
+   * @param anchor          the block that is entered from the entry region (the first block of the statement)
+   * @param exclusiveBlocks the blocks entered instead of the derived block
+   */
+  private static void derive(Block block, Block anchor, List<Block> exclusiveBlocks) {
+    CodeRegion entryRegion = findEntryRegion(anchor);
+    if (entryRegion == null) {
+      return;
+    }
+    block.entryRegion = entryRegion;
+    block.exclusiveBlocks.addAll(exclusiveBlocks);
+  }
+
+  /**
+   * Returns the code region of the parent block, that directly precedes the given block.
+   *
+   * @param anchor the block entered from the region
+   * @return the entry region, or null if there is no region directly preceding the block
+   */
+  private static CodeRegion findEntryRegion(Block anchor) {
+    Block parent = anchor.parentBlock;
+    if (parent == null) {
+      return null;
+    }
+    CodeRegion entryRegion = null;
+    for (CodeRegion region : parent.codeRegions) {
+      if (region.end.pos() <= anchor.beg.pos()) {
+        entryRegion = region;
+      }
+    }
+    if (entryRegion == null) {
+      return null;
+    }
+    for (Block sibling : parent.innerBlocks) {
+      int pos = sibling.beg.pos();
+      if (sibling != anchor && pos >= entryRegion.beg.pos() && pos < anchor.beg.pos()) {
+        return null; // another block is entered between the region and the anchor
+      }
+    }
+    for (Block dependentBlock : entryRegion.dependentBlocks) {
+      for (Block b = dependentBlock; b != null && b != parent; b = b.parentBlock) {
+        if (b.blockType == BlockType.LAMBDA) {
+          return null; // the control break does not leave the region when the lambda is defined
+        }
+      }
+    }
+    return entryRegion;
+  }
+
+  /**
+   * Returns whether the given switch block has at least two cases and only contains arrow cases.
+   *
+   * @param switchBlock the switch expression block
+   * @return whether all inner blocks are arrow cases
+   */
+  private static boolean hasOnlyArrowCases(Block switchBlock) {
+    return switchBlock.innerBlocks.size() > 1
+        && switchBlock.innerBlocks.stream().allMatch(b -> b.blockType == BlockType.ARROW_CASE);
+  }
+}
@@ -0,0 +1,349 @@
+package org.matwoess.jsourceprofiler.tool.instrument;
+
+import org.matwoess.jsourceprofiler.tool.cli.CounterMode;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.BlockType;
+import org.matwoess.jsourceprofiler.tool.model.ControlBreak;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helper class to decide which methods only keep the counter of their method block.
+ * <p>
+ * HotSpot only inlines methods whose bytecode is not larger than <code>MaxInlineSize</code> (35 bytes),
+ * or <code>FreqInlineSize</code> (325 bytes) at frequently executed call sites.
+ * If the counter-statements push a method past one of these limits, the instrumented program is inlined differently
+ * than the original one, and the profile is no longer representative.
+ * To prevent this, the bytecode size of every method is estimated from the tokens of its body
+ * (see {@link #estimateBytecodeSize}), and the size of the counter-statements is added,
+ * together with the <code>try</code>-<code>finally</code> statements of the other enabled instrumentation
+ * (see {@link #estimateWrapperSize}).
+ * If a limit is only exceeded because of the counters of the inner blocks, these blocks are left uncounted.
+ * <p>
+ * Independent of the inlining, a method is also reduced if its instrumented size would exceed the 64 KB limit
+ * of the class file format (like a huge switch statement), as the instrumented program could not be compiled otherwise.
+ * As this happens without any option, the reduced methods are always printed.
+ * <p>
+ * Derived blocks (see {@link CounterPlacement}) of a reduced method stay derived,
+ * if their entry region and exclusive blocks are still counted. All other inner blocks are marked as uncounted.
+ * Their hits are unknown, and so are the hits of all regions depending on them.
+ * The blocks of lambdas and local or anonymous classes belong to other methods and are not affected.
+ * Neither are methods whose paths are profiled (see {@link PathNumbering}), as their paths require all block entries.
+ */
+class InliningPolicy {
+  static final int MAX_INLINE_SIZE = 35;
+  static final int FREQ_INLINE_SIZE = 325;
+  static final int MAX_METHOD_SIZE = 65535;
+  static final int TRY_FINALLY_SIZE = 8; // jump over the handler, which stores, loads and rethrows the exception
+  private static final Set<String> KEYWORDS = Set.of(
+      "assert", "break", "case", "catch", "default", "do", "else", "false", "finally", "for", "if", "instanceof",
+      "new", "null", "return", "super", "switch", "synchronized", "this", "throw", "true", "try", "while", "yield"
+  );
+
+  /**
+   * Marks the inner blocks of all methods, whose instrumentation would cross a size limit, as uncounted.
+   *
+   * @param state       the parser state after parsing a Java file
+   * @param fileContent the content of the parsed file
+   * @param options     the profiling options, determining the size of the instrumentation
+   *                    and whether to respect the inlining limits (and not only the method size limit)
+   * @return the method blocks that were reduced to their method counter
+   */
+  static List<Block> reduceCounters(ParserState state, String fileContent, ProfilingOptions options) {
+    int incSize = getIncSize(options.counterMode());
+    List<Block> reducedMethods = new ArrayList<>();
+    for (Block methodBlock : state.allBlocks) {
+      if (!methodBlock.blockType.isMethod() || methodBlock.pathRegion != null) {
+        continue;
+      }
+      List<Block> innerBlocks = new ArrayList<>();
+      List<Block> otherMethodBlocks = new ArrayList<>();
+      collectInnerBlocks(methodBlock, methodBlock, innerBlocks, otherMethodBlocks);
+      long innerCounters = innerBlocks.stream().filter(b -> b.blockType.hasCounter() && !b.isDerived()).count();
+      if (innerCounters == 0) {
+        continue;
+      }
+      int originalSize = estimateBytecodeSize(fileContent, methodBlock, otherMethodBlocks);
+      long instrumentedSize = originalSize + (1 + innerCounters) * incSize + estimateWrapperSize(options, methodBlock, innerBlocks);
+      boolean reduce = instrumentedSize > MAX_METHOD_SIZE;
+      if (reduce) {
+        String name = methodBlock.clazz.getName() + "::" + methodBlock.method.name;
+        System.out.println("Method too large to count all blocks, only counting its invocations: " + name);
+      }
+      if (options.preserveInlining()) {
+        reduce |= crossesLimit(originalSize, instrumentedSize, MAX_INLINE_SIZE);
+        reduce |= crossesLimit(originalSize, instrumentedSize, FREQ_INLINE_SIZE);
+      }
+      if (reduce) {
+        markUncounted(innerBlocks);
+        reducedMethods.add(methodBlock);
+      }
+    }
+    return reducedMethods;
+  }
+
+  /**
+   * Returns the estimated bytecode size of a counter-statement in the given counter mode.
+   * <p>
+   * A <code>__Counter.inc</code> call pushes the block id (usually with <code>sipush</code>) and calls a static method.
+   * A holder increment loads the array, pushes the index and increments a <code>long</code> element.
+   *
+   * @param counterMode the counter mode
+   * @return the size in bytes
+   */
+  static int getIncSize(CounterMode counterMode) {
+    return counterMode == CounterMode.HOLDER ? 10 : 6;
+  }
+
+  /**
+   * Returns the estimated bytecode size of the <code>try</code>-<code>finally</code> statements
+   * inserted into the given method by the other enabled instrumentation.
+   * <p>
+   * Timing, call counting and exception exits wrap the method body, loop-local counters and loop histograms every loop.
+   * The compiler copies a <code>finally</code> block to every exit of its <code>try</code> block,
+   * so the body wrappers are counted once per <code>return</code> (see {@link #countMethodExits})
+   * and the loop wrappers twice (for leaving the loop regularly and by an exception).
+   *
+   * @param options     the profiling options
+   * @param methodBlock the method block
+   * @param innerBlocks the inner blocks of the method
+   * @return the size in bytes
+   */
+  static int estimateWrapperSize(ProfilingOptions options, Block methodBlock, List<Block> innerBlocks) {
+    int methodExits = countMethodExits(methodBlock, innerBlocks);
+    int size = 0;
+    if (options.timingEnabled()) {
+      size += tryFinallySize(5, 8, methodExits); // startTiming, stopTiming(id, start)
+    }
+    if (options.callGraphEnabled()) {
+      size += tryFinallySize(8, 5, methodExits); // enterMethod(id), exitMethod(caller)
+    }
+    if (options.exceptionExits()) {
+      size += tryFinallySize(5, 5, methodExits) + 15; // enterFrame, exitFrame(depth), catch with exceptionExit(id, depth, e)
+    }
+    long loops = innerBlocks.stream().filter(b -> b.blockType == BlockType.LOOP).count();
+    if (options.loopLocalCounters()) {
+      size += (int) loops * tryFinallySize(3, 8, 2); // local count, addHits(id, hits)
+    }
+    if (options.loopHistograms()) {
+      size += (int) loops * (tryFinallySize(3, 8, 2) + 6); // local iteration count and its increment, recordLoop(id, iterations)
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of copies of a <code>finally</code> block wrapping the whole method body.
+   * <p>
+   * There is one copy for every <code>return</code> statement, one for the end of the method (if reachable)
+   * and one for the exception handler.
+   *
+   * @param methodBlock the method block
+   * @param innerBlocks the inner blocks of the method
+   * @return the number of method exits
+   */
+  private static int countMethodExits(Block methodBlock, List<Block> innerBlocks) {
+    long returns = innerBlocks.stream().filter(InliningPolicy::endsWithReturn).count();
+    return (int) returns + (endsWithReturn(methodBlock) ? 1 : 2);
+  }
+
+  /**
+   * Returns whether the given block ends with a <code>return</code> statement.
+   *
+   * @param block the block
+   * @return whether the control break of the block is a return
+   */
+  private static boolean endsWithReturn(Block block) {
+    return block.controlBreak != null && block.controlBreak.kind() == ControlBreak.Kind.RETURN;
+  }
+
+  /**
+   * Returns the estimated bytecode size of a <code>try</code>-<code>finally</code> statement around existing code.
+   *
+   * @param setupSize     the size of the code before the <code>try</code> block
+   * @param finallySize   the size of the <code>finally</code> block
+   * @param finallyCopies the number of copies of the <code>finally</code> block
+   * @return the size in bytes
+   */
+  private static int tryFinallySize(int setupSize, int finallySize, int finallyCopies) {
+    return setupSize + finallyCopies * finallySize + TRY_FINALLY_SIZE;
+  }
+
+  /**
+   * Returns whether the given limit is exceeded by the instrumented size, but not by the original size.
+   *
+   * @param originalSize     the estimated size of the original method
+   * @param instrumentedSize the estimated size with all counter-statements
+   * @param limit            the size limit
+   * @return whether the counters push the method past the limit
+   */
+  private static boolean crossesLimit(int originalSize, long instrumentedSize, int limit) {
+    return originalSize <= limit && instrumentedSize > limit;
+  }
+
+  /**
+   * Collects the inner blocks of the given block that belong to the same method, in pre-order.
+   * <p>
+   * The top-most blocks of lambdas and other methods (of local or anonymous classes) are collected separately,
+   * as they are compiled to their own methods.
+   *
+   * @param methodBlock       the method block
+   * @param block             the current block
+   * @param innerBlocks       the list to add the inner blocks of the method to
+   * @param otherMethodBlocks the list to add the blocks of other methods to
+   */
+  private static void collectInnerBlocks(Block methodBlock, Block block, List<Block> innerBlocks, List<Block> otherMethodBlocks) {
+    for (Block inner : block.innerBlocks) {
+      if (inner.blockType == BlockType.LAMBDA || inner.method != methodBlock.method) {
+        otherMethodBlocks.add(inner);
+        continue;
+      }
+      innerBlocks.add(inner);
+      collectInnerBlocks(methodBlock, inner, innerBlocks, otherMethodBlocks);
+    }
+  }
+
+  /**
+   * Marks the given inner blocks of a reduced method as uncounted.
+   * <p>
+   * Derived blocks are processed in a second pass (in block order, so that enclosing blocks are decided first).
+   * They are only kept, if their entry region does not depend on uncounted blocks and their exclusive blocks are counted.
+   *
+   * @param innerBlocks the inner blocks of the method in pre-order
+   */
+  private static void markUncounted(List<Block> innerBlocks) {
+    for (Block block : innerBlocks) {
+      if (!block.isDerived()) {
+        block.uncounted = true;
+      }
+    }
+    for (Block block : innerBlocks) {
+      if (block.isDerived()) {
+        block.uncounted = !block.entryRegion.isCounted() || block.exclusiveBlocks.stream().anyMatch(b -> b.uncounted);
+      }
+    }
+  }
+
+  /**
+   * Estimates the bytecode size of the given method from the tokens of its body.
+   * <p>
+   * The estimate is based on the bytecode typically generated for each kind of token:
+   * calls take 3 bytes, other identifiers and literals 2 bytes (a local variable access or a constant),
+   * keywords and operators 1 byte. Separators generate no bytecode on their own.
+   * Switch cases take 6 bytes, for their entry in the jump table and the jump to the end of the switch.
+   * Comments and the bodies of lambdas and other methods are skipped.
+   *
+   * @param fileContent       the content of the source file
+   * @param methodBlock       the method block
+   * @param otherMethodBlocks the blocks of lambdas and other methods inside the method
+   * @return the estimated size in bytes
+   */
+  static int estimateBytecodeSize(String fileContent, Block methodBlock, List<Block> otherMethodBlocks) {
+    int size = 0;
+    int pos = methodBlock.beg.pos();
+    int end = methodBlock.end.pos();
+    int nextExcluded = 0;
+    while (pos < end) {
+      if (nextExcluded < otherMethodBlocks.size() && pos >= otherMethodBlocks.get(nextExcluded).beg.pos()) {
+        pos = Math.max(pos, otherMethodBlocks.get(nextExcluded++).end.pos());
+        continue;
+      }
+      char ch = fileContent.charAt(pos);
+      if (Character.isWhitespace(ch)) {
+        pos++;
+      } else if (fileContent.startsWith("//", pos)) {
+        pos = skipTo(fileContent, "\n", pos + 2, end);
+      } else if (fileContent.startsWith("/*", pos)) {
+        pos = skipTo(fileContent, "*/", pos + 2, end);
+      } else if (fileContent.startsWith("\"\"\"", pos)) {
+        pos = skipTo(fileContent, "\"\"\"", pos + 3, end);
+        size += 2;
+      } else if (ch == '"' || ch == '\'') {
+        pos = skipLiteral(fileContent, ch, pos + 1, end);
+        size += 2;
+      } else if (Character.isJavaIdentifierStart(ch)) {
+        int start = pos;
+        while (pos < end && Character.isJavaIdentifierPart(fileContent.charAt(pos))) {
+          pos++;
+        }
+        String word = fileContent.substring(start, pos);
+        if (word.equals("case")) {
+          size += 6;
+        } else if (KEYWORDS.contains(word)) {
+          size += 1;
+        } else {
+          size += isCall(fileContent, pos, end) ? 3 : 2;
+        }
+      } else if (Character.isDigit(ch)) {
+        while (pos < end && (Character.isLetterOrDigit(fileContent.charAt(pos)) || fileContent.charAt(pos) == '_' || fileContent.charAt(pos) == '.')) {
+          pos++;
+        }
+        size += 2;
+      } else if ("(){}[];,.@".indexOf(ch) >= 0) {
+        pos++;
+      } else {
+        int start = pos;
+        while (pos < end && "=+-*/%<>!&|^~?:".indexOf(fileContent.charAt(pos)) >= 0) {
+          pos++;
+        }
+        if (pos == start) {
+          pos++; // any other character
+        }
+        size += 1;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns whether the identifier ending at the given position is followed by an opening parenthesis.
+   *
+   * @param fileContent the content of the source file
+   * @param pos         the position after the identifier
+   * @param end         the end position of the method
+   * @return whether the identifier is the name of a called method
+   */
+  private static boolean isCall(String fileContent, int pos, int end) {
+    while (pos < end && Character.isWhitespace(fileContent.charAt(pos))) {
+      pos++;
+    }
+    return pos < end && fileContent.charAt(pos) == '(';
+  }
+
+  /**
+   * Returns the position after the next occurrence of the given delimiter.
+   *
+   * @param fileContent the content of the source file
+   * @param delimiter   the delimiter to search for
+   * @param pos         the position to start searching at
+   * @param end         the end position of the method
+   * @return the position after the delimiter, or the end position if not found
+   */
+  private static int skipTo(String fileContent, String delimiter, int pos, int end) {
+    int index = fileContent.indexOf(delimiter, pos);
+    return (index < 0 || index >= end) ? end : index + delimiter.length();
+  }
+
+  /**
+   * Returns the position after the closing quote of a string or character literal, skipping escaped characters.
+   *
+   * @param fileContent the content of the source file
+   * @param quote       the quote character
+   * @param pos         the position after the opening quote
+   * @param end         the end position of the method
+   * @return the position after the closing quote
+   */
+  private static int skipLiteral(String fileContent, char quote, int pos, int end) {
+    while (pos < end) {
+      char ch = fileContent.charAt(pos++);
+      if (ch == '\\') {
+        pos++;
+      } else if (ch == quote || ch == '\n') {
+        break;
+      }
+    }
+    return Math.min(pos, end);
+  }
+}
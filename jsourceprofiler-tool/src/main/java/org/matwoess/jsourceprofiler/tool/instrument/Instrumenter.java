@@ -2,6 +2,8 @@ package org.matwoess.jsourceprofiler.tool.instrument;
 
 import org.matwoess.jsourceprofiler.common.IO;
 import org.matwoess.jsourceprofiler.tool.cli.Arguments;
+import org.matwoess.jsourceprofiler.tool.cli.CounterMode;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
 import org.matwoess.jsourceprofiler.tool.model.*;
 
 import java.io.IOException;
@@ -10,8 +12,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 import static org.matwoess.jsourceprofiler.tool.model.ControlBreak.Kind.THROW;
 
@@ -27,7 +33,15 @@ import static org.matwoess.jsourceprofiler.tool.model.ControlBreak.Kind.THROW;
 public class Instrumenter {
   JavaFile[] javaFiles;
   int blockCounter;
+  private final ProfilingOptions options;
+  private int reducedMethods;
+  private final ProfileGuidance profileGuidance;
+  private int inferredBlocks;
+  private final Pattern pathPattern;
+  private int pathMethods;
   private final String incRefAdd;
+  private String holderClass;
+  private int holderBase;
   boolean verboseOutput;
 
   /**
@@ -39,7 +53,10 @@ public class Instrumenter {
   public Instrumenter(JavaFile[] javaFiles, Arguments toolArgs) {
     assert javaFiles.length > 0;
     this.verboseOutput = toolArgs.verboseOutput();
-    incRefAdd = (toolArgs.syncCounters()) ? "Sync" : "";
+    options = toolArgs.options();
+    pathPattern = options.pathPattern() != null ? Pattern.compile(options.pathPattern()) : null;
+    profileGuidance = options.guidedThreshold() != -1 ? new ProfileGuidance(options.guidedThreshold(), options.loopHistograms()) : null;
+    incRefAdd = options.counterMode().incSuffix();
     this.javaFiles = javaFiles;
   }
 
@@ -54,6 +71,13 @@ public class Instrumenter {
    * Parses the given source file and finds all code blocks.
    * <p>
    * The found code blocks and additional metadata are stored in the given JavaFile object.
+   * <p>
+   * With minimal counters, the blocks whose hits can be derived are determined by the {@link CounterPlacement}.
+   * With path profiling, the paths through the selected methods are numbered by the {@link PathNumbering},
+   * and their blocks are counted as usual.
+   * Afterwards, the {@link InliningPolicy} removes the inner counters of methods that would become too large.
+   * With profile guidance, the counters of blocks hit very often in the previous run are omitted last
+   * (see {@link ProfileGuidance}).
    *
    * @param javaFile the source file to parse
    */
@@ -66,6 +90,37 @@ public class Instrumenter {
     if (errors > 0) {
       throw new RuntimeException("Abort due to parse errors.");
     }
+    if (options.minimalCounters()) {
+      CounterPlacement.deriveCounters(parser.state);
+    }
+    if (pathPattern != null) {
+      for (Block methodBlock : PathNumbering.numberPaths(parser.state, pathPattern)) {
+        pathMethods++;
+        if (verboseOutput) {
+          System.out.println("Profiling paths: " + methodBlock.clazz.getName() + "::" + methodBlock.method.name + " (" + methodBlock.pathCount + " paths)");
+        }
+      }
+    }
+    String fileContent;
+    try {
+      fileContent = Files.readString(javaFile.sourceFile, StandardCharsets.ISO_8859_1);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    for (Block methodBlock : InliningPolicy.reduceCounters(parser.state, fileContent, options)) {
+      reducedMethods++;
+      if (verboseOutput) {
+        System.out.println("Only counting method: " + methodBlock.clazz.getName() + "::" + methodBlock.method.name);
+      }
+    }
+    if (profileGuidance != null) {
+      for (Block block : profileGuidance.inferCounters(javaFile, parser.state.allBlocks)) {
+        inferredBlocks++;
+        if (verboseOutput) {
+          System.out.printf("Inferring block in line %d from line %d (ratio %.3f)%n", block.beg.line(), block.inferredFrom.beg.line(), block.inferredRatio);
+        }
+      }
+    }
     javaFile.packageName = parser.state.packageName;
     javaFile.beginOfImports = parser.state.beginOfImports;
     javaFile.foundBlocks = parser.state.allBlocks;
@@ -94,6 +149,15 @@ public class Instrumenter {
     List<Method> allMethods = allClasses.stream().flatMap(cls -> cls.methods.stream()).toList();
     System.out.println("Total methods found: " + allMethods.size());
     System.out.println("Total code block found: " + blockCounter);
+    if (reducedMethods > 0) {
+      System.out.println("Methods only counted as a whole (to keep their size): " + reducedMethods);
+    }
+    if (profileGuidance != null) {
+      System.out.println("Blocks inferred from the previous run: " + inferredBlocks);
+    }
+    if (pathPattern != null) {
+      System.out.println("Methods with profiled paths: " + pathMethods);
+    }
   }
 
   /**
@@ -103,8 +167,8 @@ public class Instrumenter {
    * @throws IOException if the source file or instrumented file cannot be read or written
    */
   void instrument(JavaFile javaFile) throws IOException {
-    List<CodeInsert> codeInserts = getCodeInserts(javaFile);
     String fileContent = Files.readString(javaFile.sourceFile, StandardCharsets.ISO_8859_1);
+    List<CodeInsert> codeInserts = getCodeInserts(javaFile, fileContent);
     StringBuilder builder = new StringBuilder();
     int prevIdx = 0;
     for (CodeInsert codeInsert : codeInserts) {
@@ -121,44 +185,328 @@ public class Instrumenter {
   /**
    * Returns a list of <code>CodeInsert</code> objects
    * that represent the code to be inserted into the given source file.
+   * <p>
+   * Derived blocks (see {@link CounterPlacement}), uncounted blocks (see {@link InliningPolicy})
+   * and inferred blocks (see {@link ProfileGuidance}) keep their block id, but the source code is left unchanged.
+   * <p>
+   * Single-expression lambdas are rewritten to block lambdas with a counter-statement and a <code>return</code>,
+   * if their body can only be value-compatible (see {@link LambdaBodyAnalyzer}).
+   * Otherwise, the expression is wrapped in an <code>incLambda</code> call.
+   * <p>
+   * With loop histograms, the iterations of the current loop execution are counted in a local variable declared before the loop.
+   * The loop statement is wrapped in a <code>try</code> block, whose <code>finally</code> block records the iteration count
+   * in the histogram of the loop, whenever the loop is left.
+   * <p>
+   * With loop-local counters, the hits of a loop body are accumulated in a local variable declared before the loop.
+   * The loop statement is wrapped in a <code>try</code> block, whose <code>finally</code> block adds the local count
+   * to the counter of the loop body, whenever the loop is left (regularly, by a control break or an exception).
+   * <p>
+   * With exception exits, the bodies of methods and block lambdas record the exceptions leaving them
+   * (see {@link #addExceptionExitInserts}), and catch blocks record the exceptions caught from their <code>try</code> block.
+   * <p>
+   * With path profiling, the body of every path region (see {@link PathNumbering}) declares a local path register
+   * and is wrapped in a <code>try</code> block, whose <code>finally</code> block records the executed path.
+   * Every other block of the region adds its path increment to the register of its region when it is entered.
+   * <p>
+   * In the <code>HOLDER</code> counter mode, the counters are incremented in the array of a holder class
+   * appended to the source file (see {@link #getHolderDeclaration}), using the block ids relative to the first block of the file.
    *
-   * @param javaFile the source file to instrument
+   * @param javaFile    the source file to instrument
+   * @param fileContent the content of the source file
    * @return a list of CodeInsert objects that represent the code to be inserted into the given source file
    */
-  List<CodeInsert> getCodeInserts(JavaFile javaFile) {
+  List<CodeInsert> getCodeInserts(JavaFile javaFile, String fileContent) {
     List<CodeInsert> inserts = new ArrayList<>();
+    List<CodeInsert> lambdaEndInserts = new ArrayList<>();
+    List<CodeInsert> callEndInserts = new ArrayList<>();
+    List<CodeInsert> timingEndInserts = new ArrayList<>();
+    List<CodeInsert> exceptionEndInserts = new ArrayList<>();
+    List<CodeInsert> pathEndInserts = new ArrayList<>();
+    Map<Block, Integer> blockIds = new IdentityHashMap<>();
+    holderClass = (options.counterMode() == CounterMode.HOLDER) ? getHolderClassName(javaFile) : null;
+    holderBase = blockCounter;
     inserts.add(new CodeInsert(javaFile.beginOfImports, "import auxiliary.__Counter;"));
     for (Block block : javaFile.foundBlocks) {
       if (block.blockType.isSwitchBody()) {
         continue;
       }
+      blockIds.put(block, blockCounter);
+      if (block.isDerived() || block.uncounted || block.isInferred()) {
+        blockCounter++;
+        continue;
+      }
       // insert order is important, in case of same CodeInsert char positions
+      boolean countIterations = options.loopHistograms() && block.blockType == BlockType.LOOP;
+      boolean countLocally = options.loopLocalCounters() && block.blockType == BlockType.LOOP;
+      if (countLocally) {
+        inserts.add(new CodeInsert(block.loopBeg.pos(), String.format("long __hits%d = 0;try {", blockCounter)));
+      }
+      if (countIterations) {
+        inserts.add(new CodeInsert(block.loopBeg.pos(), String.format("long __loop%d = 0;try {", blockCounter)));
+      }
       if (block.isSingleStatement && block.blockType != BlockType.LAMBDA) {
         assert block.blockType != BlockType.METHOD;
         inserts.add(new CodeInsert(block.beg.pos(), "{"));
       }
       if (block.isSingleStatement && block.blockType == BlockType.LAMBDA) {
-        inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("__Counter.incLambda%s(%d, () -> ", incRefAdd, blockCounter++)));
-        inserts.add(new CodeInsert(block.end.pos(), ")"));
+        String body = fileContent.substring(block.getIncInsertPos(), block.end.pos());
+        if (LambdaBodyAnalyzer.isValueOnly(body)) {
+          inserts.add(new CodeInsert(block.getIncInsertPos(), "{" + getIncCode(blockCounter++) + "return "));
+          lambdaEndInserts.add(new CodeInsert(block.end.pos(), ";}"));
+        } else {
+          inserts.add(new CodeInsert(block.getIncInsertPos(), getIncLambdaCode(blockCounter++)));
+          lambdaEndInserts.add(new CodeInsert(block.end.pos(), ")"));
+        }
+      } else if (countLocally) {
+        inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("__hits%d++;", blockCounter++)));
       } else {
-        inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("__Counter.inc%s(%d);", incRefAdd, blockCounter++)));
+        inserts.add(new CodeInsert(block.getIncInsertPos(), getIncCode(blockCounter++)));
+      }
+      if (countIterations) {
+        inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("__loop%d++;", blockCounter - 1)));
+      }
+      if (options.timingEnabled() && block.blockType.isMethod()) {
+        addTimingInserts(block, blockCounter - 1, inserts, timingEndInserts);
+      }
+      if (options.callGraphEnabled() && block.blockType.isMethod()) {
+        addCallInserts(block, blockCounter - 1, inserts, callEndInserts);
+      }
+      if (options.exceptionExits() && (block.blockType.isMethod() || block.blockType == BlockType.LAMBDA && !block.isSingleStatement)) {
+        addExceptionExitInserts(block, blockCounter - 1, inserts, exceptionEndInserts);
+      }
+      if (block.isPathRegion()) {
+        addPathInserts(block, blockCounter - 1, inserts, pathEndInserts);
+      }
+      if (options.exceptionExits() && block.tryBlock != null) {
+        String code = String.format("__Counter.exceptionCaught(%d, %d, %s);", blockIds.get(block.tryBlock), block.end.line(), block.catchParameter);
+        inserts.add(new CodeInsert(block.getIncInsertPos(), code));
+      }
+      if (block.pathRegion != null && !block.isPathRegion()) {
+        String code = String.format("__path%d += %dL;", blockIds.get(block.pathRegion), block.pathIncrement);
+        inserts.add(new CodeInsert(block.getIncInsertPos(), code));
       }
       if (block.isSingleStatement && block.isSwitchExpressionCase() && (block.controlBreak == null || block.controlBreak.kind() != THROW)) {
         inserts.add(new CodeInsert(block.getIncInsertPos(), "yield "));
       }
+      // closing inserts are added from the outermost to the innermost (see addClosingInsert)
+      if (countLocally) {
+        addClosingInsert(inserts, new CodeInsert(block.loopEnd.pos(), String.format("} finally {__Counter.addHits(%d, __hits%d);}", blockCounter - 1, blockCounter - 1)));
+      }
+      if (countIterations) {
+        addClosingInsert(inserts, new CodeInsert(block.loopEnd.pos(), String.format("} finally {__Counter.recordLoop(%d, __loop%d);}", blockCounter - 1, blockCounter - 1)));
+      }
       if (block.isSingleStatement && block.blockType != BlockType.LAMBDA) {
-        inserts.add(new CodeInsert(block.end.pos(), "}"));
+        addClosingInsert(inserts, new CodeInsert(block.end.pos(), "}"));
+      }
+      if (block.isPathRegion() && block.blockType == BlockType.LOOP) {
+        // the loop body is closed inside the braces added for a single statement
+        int closingPos = block.isSingleStatement ? block.end.pos() : block.end.pos() - 1;
+        addClosingInsert(inserts, new CodeInsert(closingPos, getPathRecordCode(blockCounter - 1)));
       }
     }
+    // nested lambdas can end at the same position, the inner ones must be closed first
+    Collections.reverse(lambdaEndInserts);
+    inserts.addAll(lambdaEndInserts);
+    // the method body is the outermost block, so it must be closed after all inner blocks at the same position
+    // (the path recording is nested inside the exception recording, which is nested inside the call recording,
+    // which is nested inside the timing block)
+    inserts.addAll(pathEndInserts);
+    inserts.addAll(exceptionEndInserts);
+    inserts.addAll(callEndInserts);
+    inserts.addAll(timingEndInserts);
     inserts.sort(Comparator.comparing(CodeInsert::chPos));
+    if (holderClass != null && blockCounter > holderBase) {
+      inserts.add(new CodeInsert(fileContent.length(), getHolderDeclaration()));
+    }
     return inserts;
   }
 
   /**
-   * Exports the metadata file.
+   * Returns the statement incrementing the counter of the given block.
+   *
+   * @param blockId the id of the block
+   * @return the <code>__Counter.inc</code> call of the counter mode, or the increment of the holder array element
+   */
+  private String getIncCode(int blockId) {
+    if (holderClass != null) {
+      return String.format("%s.HITS[%d]++;", holderClass, blockId - holderBase);
+    }
+    return String.format("__Counter.inc%s(%d);", incRefAdd, blockId);
+  }
+
+  /**
+   * Returns the start of the <code>incLambda</code> call wrapping the expression of a single-expression lambda.
+   *
+   * @param blockId the id of the lambda block
+   * @return the code up to the start of the wrapped expression
+   */
+  private String getIncLambdaCode(int blockId) {
+    if (holderClass != null) {
+      return String.format("__Counter.incLambdaHolder(%s.HITS, %d, () -> ", holderClass, blockId - holderBase);
+    }
+    return String.format("__Counter.incLambda%s(%d, () -> ", incRefAdd, blockId);
+  }
+
+  /**
+   * Returns the name of the counter holder class of the given source file.
+   * <p>
+   * It is derived from the file name, as a source file can contain multiple (or no public) top-level classes.
+   * Characters that are not valid in Java identifiers are replaced with underscores.
+   *
+   * @param javaFile the source file
+   * @return the name of the holder class
+   */
+  static String getHolderClassName(JavaFile javaFile) {
+    String fileName = javaFile.sourceFile.getFileName().toString();
+    String baseName = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - 5) : fileName;
+    StringBuilder name = new StringBuilder("__Counts_");
+    baseName.codePoints().forEach(c -> name.appendCodePoint(Character.isJavaIdentifierPart(c) ? c : '_'));
+    return name.toString();
+  }
+
+  /**
+   * Returns the declaration of the counter holder class of the current source file.
+   * <p>
+   * The package-private top-level class is appended to the file, so it is accessible by all classes of the file.
+   * Its <code>static final</code> array is sized to the blocks of the file and registered with <code>__Counter</code>
+   * (by their first global block id), so that its counts are included in the counts file and all other outputs.
+   * As the array is a constant for the JIT compiler, it does not have to be loaded from a field at every increment,
+   * and the bounds checks of the constant indices can be eliminated.
+   * Each source file has its own array, so there is no single array shared by all hot code of the program.
+   *
+   * @return the class declaration, starting on a new line
+   */
+  private String getHolderDeclaration() {
+    return String.format("\nfinal class %s {static final long[] HITS = __Counter.register(%d, %d);}\n",
+        holderClass, holderBase, blockCounter - holderBase);
+  }
+
+  /**
+   * Adds an insert closing a statement opened by the current block, before all inserts at the same position.
+   * <p>
+   * Blocks are processed in pre-order, so all inserts at the end position of the current block
+   * (added before) close enclosing blocks, and must come after the closing inserts of the current block.
+   * Inserts of the same block are therefore added from the outermost to the innermost one.
+   *
+   * @param inserts the list of inserts
+   * @param insert  the closing insert to add
+   */
+  private static void addClosingInsert(List<CodeInsert> inserts, CodeInsert insert) {
+    for (int i = 0; i < inserts.size(); i++) {
+      if (inserts.get(i).chPos() == insert.chPos()) {
+        inserts.add(i, insert);
+        return;
+      }
+    }
+    inserts.add(insert);
+  }
+
+  /**
+   * Adds the code inserts to time the invocations of a method or constructor.
+   * <p>
+   * The method body (after the counter-statement) is wrapped in a <code>try</code> block.
+   * The start time is taken before it, and the times are recorded in the <code>finally</code> block,
+   * so that invocations completing with an exception are timed as well.
+   * For constructors, the explicit <code>this(...)</code> or <code>super(...)</code> call is not included,
+   * as it must stay the first statement.
+   *
+   * @param block            the method or constructor block
+   * @param blockId          the id of the method block
+   * @param inserts          the list to add the inserts at the start of the body to
+   * @param timingEndInserts the list to add the inserts at the end of the body to
+   */
+  private void addTimingInserts(Block block, int blockId, List<CodeInsert> inserts, List<CodeInsert> timingEndInserts) {
+    inserts.add(new CodeInsert(block.getIncInsertPos(), "long __start = __Counter.startTiming();try {"));
+    int closingBracePos = block.end.pos() - 1;
+    timingEndInserts.add(new CodeInsert(closingBracePos, String.format("} finally {__Counter.stopTiming(%d, __start);}", blockId)));
+  }
+
+  /**
+   * Adds the code inserts to record the caller of a method or constructor.
+   * <p>
+   * Like for {@link #addTimingInserts}, the method body is wrapped in a <code>try</code> block.
+   * The method is set as the current method of the thread before it,
+   * and the calling method is restored in the <code>finally</code> block.
+   *
+   * @param block          the method or constructor block
+   * @param blockId        the id of the method block
+   * @param inserts        the list to add the inserts at the start of the body to
+   * @param callEndInserts the list to add the inserts at the end of the body to
+   */
+  private void addCallInserts(Block block, int blockId, List<CodeInsert> inserts, List<CodeInsert> callEndInserts) {
+    inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("int __caller = __Counter.enterMethod(%d);try {", blockId)));
+    int closingBracePos = block.end.pos() - 1;
+    callEndInserts.add(new CodeInsert(closingBracePos, "} finally {__Counter.exitMethod(__caller);}"));
+  }
+
+  /**
+   * Adds the code inserts to record the exceptions leaving a method, constructor or block lambda.
+   * <p>
+   * Like for {@link #addTimingInserts}, the body is wrapped in a <code>try</code> block.
+   * Every exception is recorded with the source line at which it left the body, and is then rethrown.
+   * As the rethrown exception parameter is effectively final, it can only be one of the exceptions of the body.
+   * The depth of the instrumented frames is counted before the <code>try</code> block and restored in its
+   * <code>finally</code> block, so that the frame of the invocation can be found in the stack trace of the exception.
+   *
+   * @param block               the method, constructor or lambda block
+   * @param blockId             the id of the block
+   * @param inserts             the list to add the inserts at the start of the body to
+   * @param exceptionEndInserts the list to add the inserts at the end of the body to
+   */
+  private void addExceptionExitInserts(Block block, int blockId, List<CodeInsert> inserts, List<CodeInsert> exceptionEndInserts) {
+    inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("int __depth%d = __Counter.enterFrame();try {", blockId)));
+    int closingBracePos = block.end.pos() - 1;
+    exceptionEndInserts.add(new CodeInsert(closingBracePos, String.format(
+        "} catch (Throwable __e) {__Counter.exceptionExit(%d, __depth%d, __e);throw __e;} finally {__Counter.exitFrame(__depth%d);}", blockId, blockId, blockId)));
+  }
+
+  /**
+   * Adds the code inserts to record the paths through a path region.
+   * <p>
+   * Like for {@link #addTimingInserts}, the body is wrapped in a <code>try</code> block.
+   * The path register is declared before it, and the executed path is recorded in the <code>finally</code> block,
+   * so that executions left by a control break or an exception are recorded as well.
+   * The <code>finally</code> block of a method body is added to the end inserts,
+   * while the one of a loop body is added as closing insert (see {@link #getCodeInserts}).
+   *
+   * @param block          the method or loop block
+   * @param blockId        the id of the block
+   * @param inserts        the list to add the inserts at the start of the body to
+   * @param pathEndInserts the list to add the inserts at the end of a method body to
+   */
+  private void addPathInserts(Block block, int blockId, List<CodeInsert> inserts, List<CodeInsert> pathEndInserts) {
+    inserts.add(new CodeInsert(block.getIncInsertPos(), String.format("long __path%d = 0;try {", blockId)));
+    if (block.blockType.isMethod()) {
+      pathEndInserts.add(new CodeInsert(block.end.pos() - 1, getPathRecordCode(blockId)));
+    }
+  }
+
+  /**
+   * Returns the end of the <code>try</code> block wrapping a path region, which records the executed path.
+   *
+   * @param blockId the id of the method or loop block
+   * @return the <code>finally</code> block calling <code>__Counter.recordPath</code>
+   */
+  private static String getPathRecordCode(int blockId) {
+    return String.format("} finally {__Counter.recordPath(%d, __path%d);}", blockId, blockId);
+  }
+
+  /**
+   * Exports the metadata file and the counter header file.
+   * <p>
+   * The counts files and the phases file of previous runs are deleted, as their block ids do not match the new metadata.
+   * (The program only writes the phases file if it records phases, so it would not be replaced by the next run.)
    */
   public void exportMetadata() {
-    new Metadata(blockCounter, javaFiles).exportMetadata(IO.getMetadataPath());
+    Metadata metadata = new Metadata(blockCounter, options, javaFiles);
+    metadata.exportMetadata(IO.getMetadataPath());
+    metadata.exportCounterHeader(IO.getCounterHeaderPath());
+    IO.clearDirectoryContents(IO.getRunCountsDir());
+    try {
+      Files.deleteIfExists(IO.getPhasesPath());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   /**
@@ -0,0 +1,196 @@
+package org.matwoess.jsourceprofiler.tool.instrument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helper class to analyze the source code of single-expression lambda bodies.
+ * <p>
+ * Without type information, it is not known whether an expression lambda must return a value.
+ * But if its body is not a <i>statement expression</i>
+ * (an assignment, an increment or decrement, a method invocation or an instance creation),
+ * the lambda can only be value-compatible.
+ * Such a lambda can be rewritten to a block lambda with a counter-statement and a <code>return</code> statement.
+ * <p>
+ * The analysis is purely lexical and conservative: if in doubt, the body is not considered value-only.
+ */
+class LambdaBodyAnalyzer {
+  private static final String[] OPERATORS = {
+      ">>>=", "<<=", ">>=", ">>>", "...", "->", "::", "++", "--", "&&", "||", "==", "!=", "<=", ">=",
+      "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "<<", ">>"
+  };
+  private static final Set<String> ASSIGNMENT_OPERATORS = Set.of(
+      "=", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "<<=", ">>=", ">>>="
+  );
+  // top-level operators of non-statement expressions (except < and >, which might belong to type arguments)
+  private static final Set<String> VALUE_OPERATORS = Set.of(
+      "+", "-", "*", "/", "%", "&", "|", "^", "!", "~", "&&", "||", "==", "!=", "<=", ">=", "<<", "->", "instanceof"
+  );
+
+  /**
+   * Returns whether the given lambda body expression can only be used in a value-compatible lambda.
+   *
+   * @param expression the source code of the lambda body expression
+   * @return true if the expression is certainly not a statement expression
+   */
+  static boolean isValueOnly(String expression) {
+    List<String> tokens = tokenize(expression);
+    if (tokens.isEmpty()) {
+      return false;
+    }
+    String first = tokens.get(0);
+    String last = tokens.get(tokens.size() - 1);
+    if (first.equals("++") || first.equals("--") || first.equals("throw")) {
+      return false;
+    }
+    boolean hasTernaryCondition = false;
+    boolean hasTernaryColon = false;
+    boolean hasValueOperator = false;
+    int depth = 0;
+    for (String token : tokens) {
+      switch (token) {
+        case "(", "[", "{" -> depth++;
+        case ")", "]", "}" -> depth--;
+        default -> {
+          if (depth != 0) {
+            continue;
+          }
+          if (ASSIGNMENT_OPERATORS.contains(token) || token.equals(",")) {
+            return false;
+          }
+          if (VALUE_OPERATORS.contains(token)) {
+            hasValueOperator = true;
+          }
+          hasTernaryCondition |= token.equals("?");
+          hasTernaryColon |= token.equals(":");
+        }
+      }
+    }
+    if (depth != 0) {
+      return false;
+    }
+    if (hasValueOperator || (hasTernaryCondition && hasTernaryColon) || first.equals("switch")) {
+      return true;
+    }
+    if (first.equals("new")) {
+      return isArrayCreation(tokens);
+    }
+    if (first.equals("(")) {
+      int closingParen = findClosingParen(tokens);
+      if (closingParen == tokens.size() - 1) {
+        return true; // parenthesized expression
+      }
+      String next = tokens.get(closingParen + 1);
+      if (!next.equals(".") && !next.equals("[") && !next.equals("::")) {
+        return true; // cast expression
+      }
+    }
+    // method invocations and instance creations end with a closing parenthesis or brace
+    return !last.equals(")") && !last.equals("}") && !last.equals("++") && !last.equals("--");
+  }
+
+  /**
+   * Returns whether the given <code>new</code> expression creates an array.
+   * <p>
+   * An array creation has a dimension bracket before any argument list (outside of type arguments).
+   *
+   * @param tokens the tokens, starting with <code>new</code>
+   * @return true if an array is created, false for a class instance creation
+   */
+  private static boolean isArrayCreation(List<String> tokens) {
+    int typeArgDepth = 0;
+    for (String token : tokens) {
+      switch (token) {
+        case "<" -> typeArgDepth++;
+        case ">" -> typeArgDepth--;
+        case ">>" -> typeArgDepth -= 2;
+        case ">>>" -> typeArgDepth -= 3;
+        case "[" -> {
+          if (typeArgDepth == 0) {
+            return true;
+          }
+        }
+        case "(", "{" -> {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the index of the parenthesis closing the one at the start of the given tokens.
+   *
+   * @param tokens the tokens, starting with an opening parenthesis
+   * @return the index of the matching closing parenthesis
+   */
+  private static int findClosingParen(List<String> tokens) {
+    int depth = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      if (token.equals("(")) {
+        depth++;
+      } else if (token.equals(")") && --depth == 0) {
+        return i;
+      }
+    }
+    return tokens.size() - 1;
+  }
+
+  /**
+   * Splits the given Java code into a list of tokens.
+   * <p>
+   * Whitespace and comments are skipped.
+   * String, text block and character literals are returned as a single (unparsed) token.
+   *
+   * @param code the Java code
+   * @return the list of tokens
+   */
+  static List<String> tokenize(String code) {
+    List<String> tokens = new ArrayList<>();
+    int i = 0;
+    while (i < code.length()) {
+      char ch = code.charAt(i);
+      int start = i;
+      if (Character.isWhitespace(ch)) {
+        i++;
+        continue;
+      } else if (code.startsWith("//", i)) {
+        i = code.indexOf('\n', i);
+        i = (i < 0) ? code.length() : i;
+        continue;
+      } else if (code.startsWith("/*", i)) {
+        i = code.indexOf("*/", i + 2);
+        i = (i < 0) ? code.length() : i + 2;
+        continue;
+      } else if (code.startsWith("\"\"\"", i)) {
+        i = code.indexOf("\"\"\"", i + 3);
+        while (i > 0 && code.charAt(i - 1) == '\\') {
+          i = code.indexOf("\"\"\"", i + 1);
+        }
+        i = (i < 0) ? code.length() : i + 3;
+      } else if (ch == '"' || ch == '\'') {
+        i++;
+        while (i < code.length() && code.charAt(i) != ch) {
+          i += (code.charAt(i) == '\\') ? 2 : 1;
+        }
+        i = Math.min(i + 1, code.length());
+      } else if (Character.isJavaIdentifierPart(ch)) {
+        while (i < code.length() && Character.isJavaIdentifierPart(code.charAt(i))) {
+          i++;
+        }
+      } else {
+        i++;
+        for (String operator : OPERATORS) {
+          if (code.startsWith(operator, start)) {
+            i = start + operator.length();
+            break;
+          }
+        }
+      }
+      tokens.add(code.substring(start, i));
+    }
+    return tokens;
+  }
+}
@@ -3,7 +3,9 @@ package org.matwoess.jsourceprofiler.tool.instrument;
 import org.matwoess.jsourceprofiler.tool.model.*;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 import static org.matwoess.jsourceprofiler.tool.instrument.Util.*;
@@ -46,6 +48,28 @@ public class ParserState {
    * The list containing all blocks in order of appearance.
    */
   final List<Block> allBlocks = new ArrayList<>();
+  /**
+   * The final <code>else</code> blocks of if-else chains, mapped to all preceding branches of their chain.
+   * <p>
+   * Used by the {@link CounterPlacement} to derive the hits of these blocks.
+   */
+  final Map<Block, List<Block>> elseChains = new IdentityHashMap<>();
+  /**
+   * The branches of all if-else chains (with or without a final <code>else</code> branch).
+   * <p>
+   * Used by the {@link PathNumbering}, as at most one branch of a chain is entered.
+   */
+  final List<List<Block>> ifChains = new ArrayList<>();
+  /**
+   * The <code>finally</code> blocks, mapped to the <code>try</code> block of their statement.
+   * <p>
+   * Only recorded for <code>try</code> statements without resources.
+   */
+  final Map<Block, Block> finallyBlocks = new IdentityHashMap<>();
+  /**
+   * The <code>try</code> blocks of <code>try</code> statements without resources.
+   */
+  final List<Block> plainTryBlocks = new ArrayList<>();
 
   // private globals for the parsing process
   private final Stack<Block> blockBackupStack = new Stack<>();
@@ -56,6 +80,22 @@ public class ParserState {
   private CodeRegion curCodeRegion;
 
   private final List<String> curLabels = new ArrayList<>();
+  private CodePosition curLabelsBeg = null;
+  private final Stack<CodePosition> loopStartStack = new Stack<>();
+  private String pendingCatchParameter = null;
+  private final Map<Block, IfChain> pendingIfChains = new IdentityHashMap<>();
+
+  /**
+   * The branches of an if-else chain, parsed so far.
+   * <p>
+   * A chain is only valid as long as no other block is entered between its branches (e.g., a lambda in a condition).
+   */
+  private static class IfChain {
+    final List<Block> branches = new ArrayList<>();
+    Block curBranch;
+    boolean awaitingBranch = true;
+    boolean valid = true;
+  }
 
   /**
    * Creates a new ParserState, linked to the given parser.
@@ -97,9 +137,61 @@ public class ParserState {
    * Registers the lookahead token value as a label for the next code block definition.
    */
   void registerLabel() {
+    if (curLabels.isEmpty()) {
+      curLabelsBeg = tokenStartPosition(parser.la);
+    }
     curLabels.add(parser.la.val);
   }
 
+  /**
+   * Registers the start of a loop statement, after its <code>while</code>, <code>do</code> or <code>for</code> keyword.
+   * <p>
+   * If the loop is labeled, the statement starts at its first label.
+   * The position is assigned to the loop block when it is entered (after the loop header).
+   */
+  void registerLoopStart() {
+    loopStartStack.push(curLabels.isEmpty() ? tokenStartPosition(parser.t) : curLabelsBeg);
+  }
+
+  /**
+   * Registers the end of a <code>do-while</code> statement, after the semicolon following its condition.
+   * <p>
+   * The loop block is the last loop block entered from the current block.
+   */
+  void registerLoopEnd() {
+    assert curBlock != null;
+    for (int i = curBlock.innerBlocks.size() - 1; i >= 0; i--) {
+      Block doLoop = curBlock.innerBlocks.get(i);
+      if (doLoop.blockType == BlockType.LOOP) {
+        doLoop.loopEnd = tokenEndPosition(parser.t);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Registers a <code>catch</code> clause, after its keyword.
+   * <p>
+   * The name of the exception parameter is the last token before the closing parenthesis of the clause.
+   * It is assigned to the catch block when it is entered, together with the caught <code>try</code> block.
+   */
+  void registerCatch() {
+    parser.scanner.ResetPeek();
+    Token token = parser.la;
+    Token prevToken = null;
+    int depth = 0;
+    while (token.kind != Parser._EOF) {
+      if (token.kind == Parser._LPAR) {
+        depth++;
+      } else if (token.kind == Parser._RPAR && --depth == 0) {
+        break;
+      }
+      prevToken = token;
+      token = parser.scanner.Peek();
+    }
+    pendingCatchParameter = (prevToken != null) ? prevToken.val : null;
+  }
+
   /**
    * Registers the imminent control break in the current block and propagates it to the outer blocks
    * of the current scope as an inner control break using {@link #registerControlBreakInOuterBlocks}.
@@ -177,7 +269,7 @@ public class ParserState {
       if (!blockBackupStack.isEmpty()) {
         curBlock = blockBackupStack.pop();
         curMeth = curBlock.method;
-        reenterBlock(curBlock.blockType, true); // always true, because leaveClass is called after '}'
+        reenterBlock(curBlock.blockType, true, parser.la); // always true, because leaveClass is called after '}'
       }
     }
     curClass = curClass.parentClass;
@@ -280,15 +372,106 @@ public class ParserState {
     newBlock.beg = Util.getBlockBegPos(parser, blockType, missingBraces);
     newBlock.incInsertOffset = Util.getIncInsertOffset(parser, blockType, missingBraces);
     allBlocks.add(newBlock);
+    if (blockType == BlockType.LOOP) {
+      newBlock.loopBeg = loopStartStack.pop();
+    }
+    if (pendingCatchParameter != null && curBlock != null) {
+      newBlock.catchParameter = pendingCatchParameter;
+      newBlock.tryBlock = curBlock.innerBlocks.stream().filter(b -> b.blockType == BlockType.TRY).reduce((a, b) -> b).orElse(null);
+      pendingCatchParameter = null;
+    }
     if (!curLabels.isEmpty()) {
       newBlock.labels.addAll(curLabels);
       curLabels.clear();
     }
+    registerBranchStructure(newBlock);
     logger.enter(newBlock);
     curBlock = newBlock;
     startCodeRegion(blockType, missingBraces);
   }
 
+  /**
+   * Records the structure of <code>try</code> statements and if-else chains for the entered block.
+   * <p>
+   * Blocks of a pending if-else chain in the parent block are either the next <code>else if</code> branch
+   * (entered after a closing parenthesis) or the final <code>else</code> branch.
+   * Any other block type entered in between (e.g., a lambda or a switch expression in a condition) invalidates the chain.
+   *
+   * @param newBlock the entered block, with its parent block already set
+   */
+  private void registerBranchStructure(Block newBlock) {
+    Block parent = newBlock.parentBlock;
+    String prevToken = parser.t.val;
+    if (newBlock.blockType == BlockType.TRY && prevToken.equals("try")) {
+      plainTryBlocks.add(newBlock);
+    }
+    if (parent == null) {
+      return;
+    }
+    if (prevToken.equals("finally")) {
+      Block tryBlock = parent.innerBlocks.stream().filter(b -> b.blockType == BlockType.TRY).reduce((a, b) -> b).orElse(null);
+      if (plainTryBlocks.contains(tryBlock)) {
+        finallyBlocks.put(newBlock, tryBlock);
+      }
+    }
+    IfChain chain = pendingIfChains.get(parent);
+    if (chain == null || !chain.awaitingBranch) {
+      return;
+    }
+    if (newBlock.blockType != BlockType.BLOCK) {
+      chain.valid = false;
+    } else if (prevToken.equals("else")) {
+      if (chain.valid) {
+        elseChains.put(newBlock, chain.branches);
+      }
+      addIfChain(chain.branches, newBlock);
+      pendingIfChains.remove(parent);
+    } else {
+      chain.curBranch = newBlock;
+      chain.awaitingBranch = false;
+    }
+  }
+
+  /**
+   * Records the left block as a branch of an if-else chain, if it is followed by <code>else</code>.
+   * <p>
+   * A chain is ended, if its current branch is not followed by <code>else</code>.
+   *
+   * @param block     the left block
+   * @param nextToken the token following the left block
+   */
+  private void registerIfBranch(Block block, Token nextToken) {
+    Block parent = block.parentBlock;
+    if (parent == null) {
+      return;
+    }
+    IfChain chain = pendingIfChains.get(parent);
+    if (nextToken.val.equals("else")) {
+      if (chain == null) {
+        chain = new IfChain();
+        pendingIfChains.put(parent, chain);
+      }
+      chain.branches.add(block);
+      chain.curBranch = null;
+      chain.awaitingBranch = true;
+    } else if (chain != null && chain.curBranch == block) {
+      addIfChain(chain.branches, block);
+      pendingIfChains.remove(parent);
+    }
+  }
+
+  /**
+   * Records a completed if-else chain.
+   *
+   * @param branches   the branches of the chain before the last one
+   * @param lastBranch the last branch of the chain
+   */
+  private void addIfChain(List<Block> branches, Block lastBranch) {
+    List<Block> chain = new ArrayList<>(branches);
+    chain.add(lastBranch);
+    ifChains.add(chain);
+  }
+
   /**
    * Leaves the current block of a given type.
    *
@@ -309,10 +492,15 @@ public class ParserState {
    */
   private void leaveBlock(BlockType blockType, boolean missingBraces) {
     curBlock.end = tokenEndPosition(missingBraces ? parser.t : parser.la);
+    if (curBlock.blockType == BlockType.LOOP) {
+      curBlock.loopEnd = curBlock.end; // overwritten for do-while loops by registerLoopEnd
+    }
     logger.leave(curBlock);
     endCodeRegion();
+    Token nextToken = missingBraces ? parser.la : parser.scanner.Peek();
+    registerIfBranch(curBlock, nextToken);
     curBlock = curBlock.parentBlock;
-    reenterBlock(blockType, missingBraces);
+    reenterBlock(blockType, missingBraces, nextToken);
   }
 
   /**
@@ -368,10 +556,10 @@ public class ParserState {
    *
    * @param blockType     the type of the block (one of {@link BlockType})
    * @param missingBraces whether the block has missing braces. Used to determine the start token of the code region.
+   * @param nextToken     the token following the left block or class
    */
-  private void reenterBlock(BlockType blockType, boolean missingBraces) {
+  private void reenterBlock(BlockType blockType, boolean missingBraces, Token nextToken) {
     if (curBlock == null) return;
-    Token nextToken = missingBraces ? parser.la : parser.scanner.Peek();
     if (validCodeRegionStartToken(nextToken)) {
       startCodeRegion(blockType, missingBraces);
       curCodeRegion.dependentBlocks.addAll(curBlock.innerControlBreaks);
@@ -0,0 +1,200 @@
+package org.matwoess.jsourceprofiler.tool.instrument;
+
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.BlockType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Helper class to number the acyclic paths through the blocks of the methods selected for path profiling.
+ * <p>
+ * Every selected method block, and every loop block inside it, is the root of a path region.
+ * A path of a region is the set of its blocks entered during one execution of the method body or loop body.
+ * Loops are opaque to the enclosing region: every iteration of the loop body is a path of its own region,
+ * which cuts the paths at the back edges of the loops.
+ * <p>
+ * Like in the Ball-Larus algorithm, every block of a region gets an increment,
+ * which is added to a local path register whenever the block is entered.
+ * The increments are chosen so that the final value of the register is a unique id of the executed path,
+ * between 0 and the number of possible paths of the region.
+ * The numbering follows the block structure: the inner blocks of a block are divided into groups,
+ * of which at most one block is entered (the branches of an if-else chain, the arrow cases of a switch,
+ * or the catch blocks of a <code>try</code> statement). Every other block forms a group of its own.
+ * Each group is a digit of the path id, with one value for "no block entered",
+ * and one value for every path through each block of the group.
+ * <p>
+ * The blocks of lambdas and local or anonymous classes belong to other methods and are not part of the paths.
+ */
+class PathNumbering {
+
+  /**
+   * Numbers the paths of all methods whose qualified name (<code>Class::method</code>) matches the given pattern.
+   * <p>
+   * The blocks of the path regions keep their own counters, so their hits are not derived from other counters.
+   * Methods with too many paths to be numbered with a <code>long</code> register are skipped.
+   *
+   * @param state   the parser state after parsing a Java file
+   * @param pattern the pattern to find in the qualified method names
+   * @return the method blocks whose paths are profiled
+   */
+  static List<Block> numberPaths(ParserState state, Pattern pattern) {
+    Map<Block, List<Block>> exclusiveGroups = new IdentityHashMap<>();
+    for (List<Block> chain : state.ifChains) {
+      for (Block branch : chain) {
+        exclusiveGroups.put(branch, chain);
+      }
+    }
+    Map<Block, List<Block>> catchBlocks = new IdentityHashMap<>();
+    for (Block block : state.allBlocks) {
+      if (block.tryBlock != null) {
+        List<Block> catches = catchBlocks.computeIfAbsent(block.tryBlock, t -> new ArrayList<>());
+        catches.add(block);
+        exclusiveGroups.put(block, catches);
+      }
+    }
+    List<Block> profiledMethods = new ArrayList<>();
+    for (Block methodBlock : state.allBlocks) {
+      if (!methodBlock.blockType.isMethod()) {
+        continue;
+      }
+      String name = methodBlock.clazz.getName() + "::" + methodBlock.method.name;
+      if (!pattern.matcher(name).find()) {
+        continue;
+      }
+      List<Block> regionBlocks = new ArrayList<>();
+      assignRegion(methodBlock, methodBlock, methodBlock, regionBlocks);
+      try {
+        for (Block block : regionBlocks) {
+          if (block.isPathRegion()) {
+            countPaths(block, exclusiveGroups);
+            assignIncrements(block, exclusiveGroups);
+          }
+        }
+      } catch (ArithmeticException e) {
+        System.out.println("Too many paths to profile, skipping method: " + name);
+        regionBlocks.forEach(b -> b.pathRegion = null);
+        continue;
+      }
+      for (Block block : regionBlocks) {
+        block.entryRegion = null;
+        block.exclusiveBlocks.clear();
+      }
+      profiledMethods.add(methodBlock);
+    }
+    return profiledMethods;
+  }
+
+  /**
+   * Assigns the given block and its inner blocks of the same method to their path region.
+   * <p>
+   * Loop blocks start a new path region. Switch bodies have no counter and belong to no region,
+   * but their cases belong to the region of the switch statement.
+   *
+   * @param methodBlock  the selected method block
+   * @param block        the block to assign
+   * @param region       the root block of the enclosing path region
+   * @param regionBlocks the list to add all assigned blocks to (in pre-order)
+   */
+  private static void assignRegion(Block methodBlock, Block block, Block region, List<Block> regionBlocks) {
+    if (!block.blockType.isSwitchBody()) {
+      block.pathRegion = (block.blockType == BlockType.LOOP) ? block : region;
+      regionBlocks.add(block);
+    }
+    Block innerRegion = (block.blockType == BlockType.LOOP) ? block : region;
+    for (Block inner : block.innerBlocks) {
+      if (inner.blockType == BlockType.LAMBDA || inner.method != methodBlock.method) {
+        continue;
+      }
+      assignRegion(methodBlock, inner, innerRegion, regionBlocks);
+    }
+  }
+
+  /**
+   * Computes the number of paths through the given block and all its inner blocks of the same region (bottom-up).
+   * <p>
+   * The number of paths is the product of the spans of all groups of inner blocks,
+   * where the span of a group is 1 (no block entered) plus the number of paths through its blocks.
+   *
+   * @param block           the block
+   * @param exclusiveGroups the if-else chain or catch blocks of each branch or catch block
+   * @throws ArithmeticException if the number of paths overflows a <code>long</code>
+   */
+  private static void countPaths(Block block, Map<Block, List<Block>> exclusiveGroups) {
+    long paths = 1;
+    for (List<Block> group : getGroups(block, exclusiveGroups)) {
+      long span = 1;
+      for (Block member : group) {
+        countPaths(member, exclusiveGroups);
+        span = Math.addExact(span, member.pathCount);
+      }
+      paths = Math.multiplyExact(paths, span);
+    }
+    block.pathCount = paths;
+  }
+
+  /**
+   * Assigns the scale and increment of all inner blocks of the given block (top-down).
+   * <p>
+   * Every group is a digit of the path id within the block, whose radix is the product of the spans of the previous groups.
+   * Within a group, the digit value 0 means that no block was entered,
+   * and each block gets the range of values following the ones of the previous blocks of the group.
+   *
+   * @param block           the block, whose scale is already set (1 for a region root)
+   * @param exclusiveGroups the if-else chain or catch blocks of each branch or catch block
+   * @throws ArithmeticException if an increment overflows a <code>long</code>
+   */
+  private static void assignIncrements(Block block, Map<Block, List<Block>> exclusiveGroups) {
+    if (block.isPathRegion()) {
+      block.pathScale = 1;
+      block.pathIncrement = 0;
+    }
+    long radix = 1;
+    for (List<Block> group : getGroups(block, exclusiveGroups)) {
+      long groupScale = Math.multiplyExact(block.pathScale, radix);
+      long offset = 1;
+      for (Block member : group) {
+        member.pathScale = groupScale;
+        member.pathIncrement = Math.multiplyExact(groupScale, offset);
+        offset += member.pathCount;
+        assignIncrements(member, exclusiveGroups);
+      }
+      radix = Math.multiplyExact(radix, offset);
+    }
+  }
+
+  /**
+   * Divides the inner blocks of the given block, that belong to the same path region, into groups.
+   * <p>
+   * At most one block of a group is entered per path:
+   * the branches of an if-else chain, the arrow cases of a switch and the catch blocks of the same <code>try</code> block
+   * form a group each. All other blocks (including colon cases, which can fall through) are groups of their own.
+   *
+   * @param block           the block
+   * @param exclusiveGroups the if-else chain or catch blocks of each branch or catch block
+   * @return the groups, in the order of their first block
+   */
+  private static List<List<Block>> getGroups(Block block, Map<Block, List<Block>> exclusiveGroups) {
+    List<List<Block>> groups = new ArrayList<>();
+    Map<Object, List<Block>> groupsByKey = new IdentityHashMap<>();
+    for (Block child : block.getPathChildren()) {
+      Object key = child;
+      if (exclusiveGroups.containsKey(child)) {
+        key = exclusiveGroups.get(child);
+      } else if (child.blockType == BlockType.ARROW_CASE) {
+        key = child.parentBlock;
+      }
+      List<Block> group = groupsByKey.get(key);
+      if (group == null) {
+        group = new ArrayList<>();
+        groupsByKey.put(key, group);
+        groups.add(group);
+      }
+      group.add(child);
+    }
+    return groups;
+  }
+}
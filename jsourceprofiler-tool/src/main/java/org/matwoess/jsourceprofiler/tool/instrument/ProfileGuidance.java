@@ -0,0 +1,168 @@
+package org.matwoess.jsourceprofiler.tool.instrument;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.cli.CounterMode;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.BlockType;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+import org.matwoess.jsourceprofiler.tool.model.Metadata;
+import org.matwoess.jsourceprofiler.tool.profile.CountsMerger;
+import org.matwoess.jsourceprofiler.tool.profile.Profiler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper class to omit the counters of hot blocks, using the metadata and counts of a previous run.
+ * <p>
+ * Every block that was hit more often than the given threshold in the previous run is a candidate
+ * (except method and lambda blocks, which anchor the counts of their inner blocks,
+ * and loop blocks whose iterations are recorded in a loop histogram).
+ * Its hits are inferred from the nearest outer block that keeps its own counter,
+ * scaled with the ratio between the hits of both blocks in the previous run.
+ * The inferred counts are exact, as long as the program behaves like in the previous run.
+ * <p>
+ * Blocks are only inferred if the source file is unchanged since the previous run,
+ * which is checked by comparing the positions and types of all blocks of the file.
+ * Derived blocks (see {@link CounterPlacement}) and uncounted blocks (see {@link InliningPolicy})
+ * are not affected, and neither are blocks whose hits were unknown in the previous run
+ * or whose paths are profiled (see {@link PathNumbering}).
+ */
+class ProfileGuidance {
+  private final long threshold;
+  private final boolean loopHistograms;
+  private final Map<Path, JavaFile> previousFiles = new HashMap<>();
+
+  /**
+   * Creates a new profile guidance from the metadata and counts of the previous run in the output directory.
+   *
+   * @param threshold      the number of hits in the previous run, above which a block's hits are inferred
+   * @param loopHistograms whether loop histograms are recorded, which requires loop blocks to be instrumented
+   * @throws RuntimeException if no previous run is available, or it only recorded the coverage of blocks
+   */
+  ProfileGuidance(long threshold, boolean loopHistograms) {
+    this.threshold = threshold;
+    this.loopHistograms = loopHistograms;
+    if (!IO.getMetadataPath().toFile().isFile()) {
+      throw new RuntimeException("Profile-guided instrumentation requires the metadata and counts of a previous run.");
+    }
+    Metadata metadata = Metadata.importMetadata(IO.getMetadataPath());
+    if (metadata.options().counterMode() == CounterMode.COVERAGE) {
+      throw new RuntimeException("The previous run only recorded the coverage of blocks.");
+    }
+    long[] counts;
+    if (metadata.options().uniqueCounts()) {
+      counts = CountsMerger.mergeRunCounts(metadata.blocksCount());
+    } else if (IO.getCountsPath().toFile().isFile()) {
+      counts = Profiler.readCounts(IO.getCountsPath());
+    } else {
+      throw new RuntimeException("Profile-guided instrumentation requires the metadata and counts of a previous run.");
+    }
+    Profiler.addHitCountToJavaFileBlocks(metadata.javaFiles(), counts, metadata.options().samplingRate());
+    for (JavaFile jFile : metadata.javaFiles()) {
+      previousFiles.put(jFile.relativePath, jFile);
+    }
+  }
+
+  /**
+   * Marks the blocks of the given file as inferred, whose hits exceeded the threshold in the previous run.
+   * <p>
+   * Blocks are processed in block order, so that outer blocks are decided before their inner blocks.
+   *
+   * @param javaFile the source file
+   * @param blocks   all blocks found in the source file, in block order
+   * @return the inferred blocks
+   */
+  List<Block> inferCounters(JavaFile javaFile, List<Block> blocks) {
+    List<Block> inferredBlocks = new ArrayList<>();
+    JavaFile previousFile = previousFiles.get(javaFile.relativePath);
+    if (previousFile == null) {
+      return inferredBlocks;
+    }
+    if (!hasSameBlocks(blocks, previousFile.foundBlocks)) {
+      System.out.println("Source file changed since the previous run, counting all blocks: \"" + javaFile.sourceFile + "\"");
+      return inferredBlocks;
+    }
+    Map<Block, Block> previousBlocks = new IdentityHashMap<>();
+    for (int i = 0; i < blocks.size(); i++) {
+      previousBlocks.put(blocks.get(i), previousFile.foundBlocks.get(i));
+    }
+    for (Block block : blocks) {
+      if (!isCandidate(block)) {
+        continue;
+      }
+      Block previous = previousBlocks.get(block);
+      Block anchor = getCountedOuterBlock(block);
+      if (anchor == null || previous.hits <= threshold || previous.uncounted) {
+        continue;
+      }
+      Block previousAnchor = previousBlocks.get(anchor);
+      if (previousAnchor.hits == 0 || previousAnchor.uncounted) {
+        continue;
+      }
+      block.inferredFrom = anchor;
+      block.inferredRatio = (double) previous.hits / previousAnchor.hits;
+      inferredBlocks.add(block);
+    }
+    return inferredBlocks;
+  }
+
+  /**
+   * Returns whether the counter of the given block may be omitted.
+   *
+   * @param block the block to check
+   * @return whether the block has its own counter and is neither a method nor a lambda block
+   * (nor a loop block, if loop histograms are recorded), and its paths are not profiled
+   */
+  private boolean isCandidate(Block block) {
+    return block.blockType.hasCounter()
+        && !block.blockType.isMethod()
+        && block.blockType != BlockType.LAMBDA
+        && !(loopHistograms && block.blockType == BlockType.LOOP)
+        && !block.isDerived()
+        && !block.uncounted
+        && block.pathRegion == null;
+  }
+
+  /**
+   * Returns the nearest outer block that keeps its own counter.
+   *
+   * @param block the inferred block
+   * @return the outer block, or null if there is none
+   */
+  private static Block getCountedOuterBlock(Block block) {
+    Block outer = block.parentBlock;
+    while (outer != null) {
+      if (outer.blockType.hasCounter() && !outer.isDerived() && !outer.uncounted && !outer.isInferred()) {
+        return outer;
+      }
+      outer = outer.parentBlock;
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the blocks of a file are the same as in the previous run.
+   *
+   * @param blocks         the blocks found in the source file
+   * @param previousBlocks the blocks of the file in the previous run
+   * @return whether all blocks have the same type, begin and end position
+   */
+  private static boolean hasSameBlocks(List<Block> blocks, List<Block> previousBlocks) {
+    if (blocks.size() != previousBlocks.size()) {
+      return false;
+    }
+    for (int i = 0; i < blocks.size(); i++) {
+      Block block = blocks.get(i);
+      Block previous = previousBlocks.get(i);
+      if (block.blockType != previous.blockType || block.beg.pos() != previous.beg.pos() || block.end.pos() != previous.end.pos()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
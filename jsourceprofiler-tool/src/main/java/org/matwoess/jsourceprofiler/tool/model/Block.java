@@ -2,7 +2,9 @@ package org.matwoess.jsourceprofiler.tool.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -61,10 +63,75 @@ public class Block implements Serializable, Component {
    */
   public final List<CodeRegion> codeRegions = new ArrayList<>();
 
+  /**
+   * The start position of the loop statement, including its labels. Only set for loop blocks.
+   */
+  public CodePosition loopBeg = null;
+  /**
+   * The end position of the loop statement (after the condition of a <code>do-while</code> loop).
+   * Only set for loop blocks.
+   */
+  public CodePosition loopEnd = null;
+  /**
+   * The name of the exception parameter of a catch block. Only set for catch blocks.
+   */
+  public String catchParameter = null;
+  /**
+   * The <code>try</code> block, whose exceptions are caught by this catch block. Only set for catch blocks.
+   */
+  public Block tryBlock = null;
+
   /**
    * The offset for inserting the block's counter-statement. Important for constructor blocks.
    */
   public int incInsertOffset;
+  /**
+   * The code region of the parent block, in which this block is entered.
+   * <p>
+   * Only set if the hits of this block are derived from other counters, instead of being counted.
+   */
+  public CodeRegion entryRegion = null;
+  /**
+   * The mutually exclusive blocks, entered instead of this one from the {@link #entryRegion}. Empty by default.
+   */
+  public final List<Block> exclusiveBlocks = new ArrayList<>();
+  /**
+   * Whether the counter of this block was omitted, so that its method keeps its size for inlining decisions.
+   * <p>
+   * The hits of uncounted blocks (and of all regions depending on them) are unknown.
+   */
+  public boolean uncounted = false;
+  /**
+   * The nearest counted outer block, whose hits this block's hits are inferred from.
+   * <p>
+   * Only set if the counter of this block was omitted, because it was hit very often in a previous run.
+   */
+  public Block inferredFrom = null;
+  /**
+   * The ratio of this block's hits to the hits of the {@link #inferredFrom} block in the previous run.
+   */
+  public double inferredRatio;
+  /**
+   * The root block of the path region this block belongs to: a path-profiled method block, or a loop block of it.
+   * <p>
+   * Set to the block itself for the root block. Only set for the blocks of path-profiled methods.
+   */
+  public Block pathRegion = null;
+  /**
+   * The number of distinct paths through this block (and its inner blocks of the same path region).
+   */
+  public long pathCount;
+  /**
+   * The value of one path through this block, in the numbering of the whole path region.
+   * <p>
+   * Blocks entered instead of each other (like the branches of an if-else chain) share the same scale,
+   * and so do their inner blocks' paths. The scale of the root block is 1.
+   */
+  public long pathScale;
+  /**
+   * The value added to the path register of the path region when this block is entered. 0 for the root block.
+   */
+  public long pathIncrement;
 
   /**
    * The number of times this block was hit during execution.
@@ -72,6 +139,32 @@ public class Block implements Serializable, Component {
    * This information is added from the counts.dat file before report generation.
    */
   transient public long hits;
+  /**
+   * Whether this block was executed by multiple threads, and its counter was promoted to atomic increments.
+   * <p>
+   * Only used in the adaptive counter mode, this information is added before report generation.
+   */
+  transient public boolean shared;
+  /**
+   * The number of times this block was hit by each thread (or group of threads).
+   * <p>
+   * Only used in the per-thread counter mode, this information is added before report generation.
+   * The values are ordered like the thread names of the report writers, or null if not available.
+   */
+  transient public long[] threadHits;
+  /**
+   * The number of loop executions by their iteration count, in power-of-two buckets.
+   * <p>
+   * Bucket 0 counts executions without iterations, bucket <i>k</i> those with 2<sup>k-1</sup> to 2<sup>k</sup>-1 iterations.
+   * Only set for loop blocks if loop histograms were enabled, this information is added before report generation.
+   */
+  transient public long[] loopHistogram;
+  /**
+   * The number of times each path of the path region was executed, by path id.
+   * <p>
+   * Only set for the root blocks of path regions if paths were recorded, this information is added before report generation.
+   */
+  transient public Map<Long, Long> pathCounts;
   /**
    * The list of inner blocks that contain a control break.
    * <p>
@@ -149,6 +242,27 @@ public class Block implements Serializable, Component {
     codeRegions.add(region);
   }
 
+  /**
+   * Splits the given region at the given position into two regions, sharing the same dependent blocks.
+   * <p>
+   * The new region is inserted after the given one and the region ids are renumbered.
+   * @param region the region to split
+   * @param pos the start position of the new region
+   */
+  public void splitCodeRegion(CodeRegion region, CodePosition pos) {
+    CodeRegion newRegion = new CodeRegion();
+    newRegion.beg = pos;
+    newRegion.end = region.end;
+    newRegion.block = this;
+    newRegion.dependentBlocks.addAll(region.dependentBlocks);
+    newRegion.exceptionalExits = region.exceptionalExits;
+    region.end = pos;
+    codeRegions.add(codeRegions.indexOf(region) + 1, newRegion);
+    for (int i = 0; i < codeRegions.size(); i++) {
+      codeRegions.get(i).id = i;
+    }
+  }
+
   /**
    * Returns the list of all inner blocks, below and excluding this one, recursively.
    * @return the list of all inner blocks
@@ -194,6 +308,122 @@ public class Block implements Serializable, Component {
         && parentBlock.blockType == BlockType.SWITCH_EXPR;
   }
 
+  /**
+   * Returns whether the hits of this block are derived from other counters, instead of being counted.
+   * @return whether an entry region is set
+   */
+  public boolean isDerived() {
+    return entryRegion != null;
+  }
+
+  /**
+   * Returns the derived hits of this block.
+   * <p>
+   * Every time the entry region is executed, either this block or one of its exclusive blocks is entered.
+   * @return the hit-count of the entry region minus the sum of hits of all exclusive blocks (at least 0)
+   */
+  public long getDerivedHitCount() {
+    assert isDerived();
+    long hitCount = entryRegion.getHitCount() - exclusiveBlocks.stream().mapToLong(b -> b.hits).sum();
+    return Math.max(hitCount, 0);
+  }
+
+  /**
+   * Returns whether the hits of this block are inferred from a previous run, instead of being counted.
+   * @return whether an outer block to infer the hits from is set
+   */
+  public boolean isInferred() {
+    return inferredFrom != null;
+  }
+
+  /**
+   * Returns the inferred hits of this block.
+   * <p>
+   * The hits of the outer block are scaled with the ratio observed in the previous run.
+   * @return the hits of the outer block multiplied with the inferred ratio, rounded to the nearest integer
+   */
+  public long getInferredHitCount() {
+    assert isInferred();
+    return Math.round(inferredFrom.hits * inferredRatio);
+  }
+
+  /**
+   * Returns whether this block is the root block of a path region.
+   * @return whether the path region is set to the block itself
+   */
+  public boolean isPathRegion() {
+    return pathRegion == this;
+  }
+
+  /**
+   * Returns the blocks of the path region, which are directly nested in this block.
+   * <p>
+   * Switch bodies have no counter, so the cases of a switch statement or expression are taken instead.
+   * Loop blocks start path regions of their own, and the blocks of lambdas and local classes belong to no path region.
+   * @return the inner blocks of the same path region
+   */
+  public List<Block> getPathChildren() {
+    List<Block> children = new ArrayList<>();
+    addPathChildren(pathRegion, children);
+    return children;
+  }
+
+  /**
+   * Adds the inner blocks of the given path region, which are directly nested in this block, to the given list.
+   * @param region   the root block of the path region
+   * @param children the list to add the inner blocks to
+   */
+  private void addPathChildren(Block region, List<Block> children) {
+    for (Block inner : innerBlocks) {
+      if (inner.blockType.isSwitchBody()) {
+        inner.addPathChildren(region, children);
+      } else if (inner.pathRegion != null && inner.pathRegion == region && !inner.isPathRegion()) {
+        children.add(inner);
+      }
+    }
+  }
+
+  /**
+   * Returns the blocks of the path region entered on the path with the given id.
+   * <p>
+   * The path id is decoded like a number with mixed radixes:
+   * the inner blocks sharing the same {@link #pathScale} form a digit, whose value is 0 if none of them was entered,
+   * or determines the entered block and the path through it otherwise.
+   * @param pathId the id of a path of this path region
+   * @return the root block and all entered blocks, in block order
+   */
+  public List<Block> getPathBlocks(long pathId) {
+    assert isPathRegion();
+    List<Block> blocks = new ArrayList<>();
+    blocks.add(this);
+    addPathBlocks(pathId, blocks);
+    return blocks;
+  }
+
+  /**
+   * Adds the inner blocks entered on the given path through this block to the given list.
+   * @param pathId the id of the path through this block
+   * @param blocks the list to add the entered blocks to
+   */
+  private void addPathBlocks(long pathId, List<Block> blocks) {
+    Map<Long, List<Block>> childGroups = new LinkedHashMap<>();
+    for (Block child : getPathChildren()) {
+      childGroups.computeIfAbsent(child.pathScale, s -> new ArrayList<>()).add(child);
+    }
+    for (Map.Entry<Long, List<Block>> group : childGroups.entrySet()) {
+      long radix = group.getKey() / pathScale;
+      long span = 1 + group.getValue().stream().mapToLong(b -> b.pathCount).sum();
+      long digit = (pathId / radix) % span;
+      for (Block child : group.getValue()) {
+        long offset = child.pathIncrement / child.pathScale;
+        if (digit >= offset && digit < offset + child.pathCount) {
+          blocks.add(child);
+          child.addPathBlocks(digit - offset, blocks);
+        }
+      }
+    }
+  }
+
   /**
    * Returns the position where the increment statement should be inserted.
    * @return the block begin position plus the increment insert offset
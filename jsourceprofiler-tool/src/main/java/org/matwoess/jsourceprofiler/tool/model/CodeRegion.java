@@ -16,6 +16,8 @@ import java.util.List;
  * to calculate the real count of the new region.
  * This is because we do not have an actual counter after <code>break</code>s,
  * <code>continue</code>s and <code>return</code>s, etc.
+ * <p>
+ * If exception exits were recorded, the exceptions leaving the block before this region are subtracted as well.
  */
 public class CodeRegion implements Serializable, Component {
   /**
@@ -38,14 +40,30 @@ public class CodeRegion implements Serializable, Component {
    * The list of dependent control break blocks, used to calculate the effective hit-count of the current region.
    */
   public final List<Block> dependentBlocks = new ArrayList<>();
+  /**
+   * The number of times the block was left by an exception before reaching this region.
+   * <p>
+   * Only used if exception exits were recorded, this information is added before report generation.
+   */
+  transient public long exceptionalExits;
 
   /**
    * Gets the effective hit-count of this region.
    *
    * @return the parent block's hits minus the sum of hits form all dependent control break blocks
+   * and the exceptional exits before this region
    */
   public long getHitCount() {
-    return block.hits - dependentBlocks.stream().mapToLong(b -> b.hits).sum();
+    return block.hits - dependentBlocks.stream().mapToLong(b -> b.hits).sum() - exceptionalExits;
+  }
+
+  /**
+   * Returns whether the hit-count of this region is known.
+   *
+   * @return whether neither the parent block nor one of the dependent control break blocks is uncounted
+   */
+  public boolean isCounted() {
+    return !block.uncounted && dependentBlocks.stream().noneMatch(b -> b.uncounted);
   }
 
   @Override
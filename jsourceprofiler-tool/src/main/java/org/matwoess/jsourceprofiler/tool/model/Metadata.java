@@ -1,6 +1,7 @@
 package org.matwoess.jsourceprofiler.tool.model;
 
 import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
 
 import java.io.*;
 import java.nio.file.Path;
@@ -8,14 +9,24 @@ import java.nio.file.Path;
 /**
  * Helper class to represent the metadata of a java project.
  * <p>
- * Contains the total number of blocks and the list of java files and their respective {@link JavaFile} objects.
+ * Contains the total number of blocks, the profiling options used for instrumentation
+ * and the list of java files and their respective {@link JavaFile} objects.
  * <p>
  * Includes methods to export and import the metadata to/from a file.
+ * The number of blocks and the options read by the instrumented program are additionally exported to a small counter header file
+ * (see {@link #exportCounterHeader}), which is read by the <code>__Counter</code> class
+ * at the start of the instrumented program, without the overhead of Java serialization.
  *
  * @param blocksCount the total number of blocks found in the project
+ * @param options     the profiling options the project was instrumented with
  * @param javaFiles   the list of java files in the project
  */
-public record Metadata(int blocksCount, JavaFile[] javaFiles) {
+public record Metadata(int blocksCount, ProfilingOptions options, JavaFile[] javaFiles) {
+  /**
+   * The version of the counter header format, checked by the <code>__Counter</code> class.
+   */
+  public static final int COUNTER_HEADER_VERSION = 7;
+
   /**
    * Exports the metadata to the filesystem.
    * <p>
@@ -26,12 +37,44 @@ public record Metadata(int blocksCount, JavaFile[] javaFiles) {
   public void exportMetadata(Path metadataPath) {
     try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(metadataPath.toFile()))) {
       oos.writeInt(blocksCount);
+      oos.writeObject(options);
       oos.writeObject(javaFiles);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Exports the number of blocks and the counter settings to the counter header file.
+   * <p>
+   * The file has a fixed format, written with a {@link DataOutputStream}:
+   * the header version and the number of blocks, followed by the options read by the instrumented program.
+   * The counter header file is located at {@link IO#getCounterHeaderPath()}.
+   *
+   * @param headerPath the path to the counter header file
+   */
+  public void exportCounterHeader(Path headerPath) {
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(headerPath.toFile())))) {
+      dos.writeInt(COUNTER_HEADER_VERSION);
+      dos.writeInt(blocksCount);
+      dos.writeUTF(options.counterMode().name());
+      dos.writeInt(options.samplingRate());
+      dos.writeUTF(options.threadPattern() != null ? options.threadPattern() : "");
+      dos.writeInt(options.snapshotInterval());
+      dos.writeInt(options.timelineInterval());
+      dos.writeBoolean(options.jmxEnabled());
+      dos.writeBoolean(options.timingEnabled());
+      dos.writeBoolean(options.cpuTimeEnabled());
+      dos.writeBoolean(options.callGraphEnabled());
+      dos.writeBoolean(options.loopHistograms());
+      dos.writeBoolean(options.exceptionExits());
+      dos.writeBoolean(options.pathProfiling());
+      dos.writeBoolean(options.uniqueCounts());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   /**
    * Imports the metadata from the filesystem.
    * <p>
@@ -44,8 +87,9 @@ public record Metadata(int blocksCount, JavaFile[] javaFiles) {
     Metadata metadata;
     try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(metadataPath.toFile()))) {
       int blocksCount = ois.readInt();
+      ProfilingOptions options = (ProfilingOptions) ois.readObject();
       JavaFile[] javaFiles = (JavaFile[]) ois.readObject();
-      metadata = new Metadata(blocksCount, javaFiles);
+      metadata = new Metadata(blocksCount, options, javaFiles);
     } catch (IOException | ClassNotFoundException e) {
       throw new RuntimeException(e);
     }
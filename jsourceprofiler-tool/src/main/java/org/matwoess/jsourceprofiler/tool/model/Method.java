@@ -22,6 +22,24 @@ public class Method implements Serializable, Component {
    * The block representing the method body (if not abstract).
    */
   public Block methodBlock = null;
+  /**
+   * The total wall-clock time of all invocations in nanoseconds, including the time spent in called methods.
+   * <p>
+   * This and the following times are only added from the timings file, if method timing was enabled.
+   */
+  transient public long totalTime;
+  /**
+   * The wall-clock time of all invocations in nanoseconds, excluding the time spent in other timed methods.
+   */
+  transient public long selfTime;
+  /**
+   * The wall-clock time of the longest invocation in nanoseconds.
+   */
+  transient public long maxTime;
+  /**
+   * The total CPU time of all invocations in nanoseconds, including the time spent in called methods.
+   */
+  transient public long cpuTime;
 
   /**
    * Creates a new Method with the given name.
@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 
 /**
  * The abstract superclass for all HTML writers.
@@ -39,6 +40,41 @@ public abstract class AbstractHtmlWriter {
    * The CSS files to include in the header of the HTML document.
    */
   public String[] cssFiles;
+  /**
+   * The sampling rate of the sampled counter mode.
+   * If greater than 1, all hit counts are estimates and marked as such.
+   */
+  public int samplingRate = 1;
+  /**
+   * Whether only the coverage of blocks was recorded (the coverage counter mode).
+   * If true, the report shows covered and not covered code without hit counts.
+   */
+  public boolean coverageOnly = false;
+  /**
+   * Whether the methods were timed, and their times should be included in the report.
+   */
+  public boolean showTimes = false;
+  /**
+   * Whether the CPU time of the timed methods was measured as well.
+   */
+  public boolean showCpuTime = false;
+  /**
+   * The names of the threads (or thread groups) whose block hits were counted separately, or null.
+   * The per-thread hit counts of the blocks are ordered accordingly.
+   */
+  public String[] threadNames = null;
+  /**
+   * The counted calls between methods, or null if they were not counted.
+   */
+  public List<CallEdge> callEdges = null;
+  /**
+   * Whether the iteration counts of loop executions were recorded, as histograms of the loop blocks.
+   */
+  public boolean showLoops = false;
+  /**
+   * The recorded timeline of the block entries per method and class, or null if no timeline was recorded.
+   */
+  public Timeline timeline = null;
 
   /**
    * Appends the HTML header to the internal <code>content</code> StringBuilder.
@@ -100,6 +136,40 @@ public abstract class AbstractHtmlWriter {
     content.append("<h2>").append(heading).append("</h2>\n");
   }
 
+  /**
+   * Writes a note about estimated hit counts to the internal <code>content</code> StringBuilder,
+   * if the counts were sampled.
+   */
+  private void samplingNote() {
+    if (samplingRate > 1) {
+      content.append(String.format(
+          "<p class=\"note\">Hit counts are estimates (~), scaled up from a random sample of about 1 in %d block entries.</p>\n",
+          samplingRate));
+    }
+  }
+
+  /**
+   * Writes a note about the missing hit counts to the internal <code>content</code> StringBuilder,
+   * if only the coverage of blocks was recorded.
+   */
+  private void coverageNote() {
+    if (coverageOnly) {
+      content.append("<p class=\"note\">Only the coverage of code blocks was recorded, without hit counts.</p>\n");
+    }
+  }
+
+  /**
+   * Formats a hit count like {@link ReportUtil#formatHitCount}.
+   * If the counts were sampled, the count is prefixed with a <code>~</code> to mark it as an estimate.
+   *
+   * @param hits the hit count
+   * @return the formatted hit count string
+   */
+  String formatHitCount(long hits) {
+    String formatted = ReportUtil.formatHitCount(hits);
+    return (samplingRate > 1) ? "~" + formatted : formatted;
+  }
+
   /**
    * Should be overridden to generate the main content of the HTML document.
    */
@@ -135,6 +205,8 @@ public abstract class AbstractHtmlWriter {
     bodyStart();
     breadcrumbBar();
     heading(title);
+    samplingNote();
+    coverageNote();
     body();
     bodyEnd();
     footer();
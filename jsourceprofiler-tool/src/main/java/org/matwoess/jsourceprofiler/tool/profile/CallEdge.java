@@ -0,0 +1,13 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.tool.model.Method;
+
+/**
+ * Represents the counted calls from one method (or constructor) to another.
+ *
+ * @param caller the calling method, or null if no instrumented method was executed by the calling thread
+ * @param callee the called method
+ * @param calls  the number of calls
+ */
+public record CallEdge(Method caller, Method callee, long calls) {
+}
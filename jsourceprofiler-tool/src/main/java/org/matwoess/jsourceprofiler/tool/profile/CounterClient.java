@@ -0,0 +1,86 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+
+/**
+ * A local JMX client for the counter MBean of a running instrumented program.
+ * <p>
+ * The program must have been instrumented with the <code>--jmx</code> option.
+ * The client attaches to the process with the given id, starts its local management agent (if not running yet)
+ * and connects to the MBean registered by the <code>__Counter</code> class.
+ */
+public class CounterClient {
+  private static final String MBEAN_NAME = "auxiliary:type=__Counter";
+
+  private final long pid;
+
+  /**
+   * Creates a new client for the instrumented program with the given process id.
+   *
+   * @param pid the process id of the running instrumented program
+   */
+  public CounterClient(long pid) {
+    this.pid = pid;
+  }
+
+  /**
+   * Returns the current counts of all blocks in the running program.
+   *
+   * @return the block counts, ordered by block id
+   */
+  public long[] fetchCounts() {
+    return (long[]) invoke("getCounts");
+  }
+
+  /**
+   * Invokes the MBean operation with the given name (and no parameters) in the running program.
+   * <p>
+   * The client always detaches from the process afterward.
+   * If detaching fails, the failure is added as suppressed exception to the error of the invocation (if any),
+   * otherwise only a warning is printed, as the result of the operation is still valid.
+   *
+   * @param operation the name of the MBean operation
+   * @return the result of the operation
+   */
+  private Object invoke(String operation) {
+    VirtualMachine vm;
+    try {
+      vm = VirtualMachine.attach(String.valueOf(pid));
+    } catch (AttachNotSupportedException | IOException e) {
+      throw new RuntimeException("Could not attach to process " + pid, e);
+    }
+    RuntimeException failure = null;
+    try {
+      JMXServiceURL serviceUrl = new JMXServiceURL(vm.startLocalManagementAgent());
+      try (JMXConnector connector = JMXConnectorFactory.connect(serviceUrl)) {
+        MBeanServerConnection connection = connector.getMBeanServerConnection();
+        return connection.invoke(new ObjectName(MBEAN_NAME), operation, null, null);
+      }
+    } catch (IOException | JMException e) {
+      failure = new RuntimeException(e);
+      throw failure;
+    } catch (RuntimeException e) {
+      failure = e;
+      throw e;
+    } finally {
+      try {
+        vm.detach();
+      } catch (IOException e) {
+        if (failure != null) {
+          failure.addSuppressed(e);
+        } else {
+          System.out.println("Warning: could not detach from process " + pid + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Helper class to sum up the counts files of multiple runs of an instrumented program.
+ * <p>
+ * Programs instrumented with <code>--unique-counts</code> write a separate counts file for every run
+ * into the {@link IO#getRunCountsDir() run counts directory}. They have the same format as the counts file.
+ */
+public class CountsMerger {
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  /**
+   * Returns the counts files of all runs, sorted by file name.
+   *
+   * @return the list of run-unique counts files, empty if none were written
+   */
+  public static List<Path> getRunCountsFiles() {
+    Path runCountsDir = IO.getRunCountsDir();
+    if (!runCountsDir.toFile().isDirectory()) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(runCountsDir)) {
+      return files
+          .filter(file -> {
+            String fileName = file.getFileName().toString();
+            return fileName.startsWith("counts-") && fileName.endsWith(".dat");
+          })
+          .sorted()
+          .toList();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Sums up the block counts of all run-unique counts files.
+   *
+   * @param nBlocks the number of blocks of the instrumented program
+   * @return the summed block counts, ordered by block id
+   * @throws IllegalArgumentException if no run-unique counts files exist
+   * @see #merge(List, int)
+   */
+  public static long[] mergeRunCounts(int nBlocks) throws IllegalArgumentException {
+    List<Path> countsFiles = getRunCountsFiles();
+    if (countsFiles.isEmpty()) {
+      throw new IllegalArgumentException("No counts files to merge in: " + IO.getRunCountsDir());
+    }
+    return merge(countsFiles, nBlocks);
+  }
+
+  /**
+   * Sums up the block counts of the given counts files.
+   * <p>
+   * All files are memory-mapped, and the blocks are split into chunks that are summed up in parallel.
+   * This way, the files are never read into the heap as a whole,
+   * and the summation of large programs is spread over all available cores.
+   *
+   * @param countsFiles the counts files to merge (in the format of the default or the memory-mapped counter mode)
+   * @param nBlocks     the number of blocks of the instrumented program
+   * @return the summed block counts, ordered by block id
+   * @throws IllegalArgumentException if no counts files are given
+   */
+  public static long[] merge(List<Path> countsFiles, int nBlocks) throws IllegalArgumentException {
+    if (countsFiles.isEmpty()) {
+      throw new IllegalArgumentException("No counts files to merge.");
+    }
+    MappedByteBuffer[] buffers = new MappedByteBuffer[countsFiles.size()];
+    int[] headerSizes = new int[countsFiles.size()];
+    for (int f = 0; f < countsFiles.size(); f++) {
+      Path countsFile = countsFiles.get(f);
+      try (FileChannel channel = FileChannel.open(countsFile, StandardOpenOption.READ)) {
+        buffers[f] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        headerSizes[f] = getHeaderSize(countsFile, buffers[f], nBlocks);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    long[] counts = new long[nBlocks];
+    int nChunks = (nBlocks + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    IntStream.range(0, nChunks).parallel().forEach(chunk -> {
+      int from = chunk * CHUNK_SIZE;
+      int to = Math.min(from + CHUNK_SIZE, nBlocks);
+      for (int f = 0; f < buffers.length; f++) {
+        MappedByteBuffer buffer = buffers[f];
+        int headerSize = headerSizes[f];
+        for (int i = from; i < to; i++) {
+          counts[i] += buffer.getLong(headerSize + i * Long.BYTES);
+        }
+      }
+    });
+    return counts;
+  }
+
+  /**
+   * Validates the block count of a mapped counts file and returns the size of its header.
+   *
+   * @param countsFile the path of the counts file
+   * @param buffer     the mapped content of the counts file
+   * @param nBlocks    the expected number of blocks
+   * @return the header size in bytes (padded to 8 bytes for a memory-mapped counts file)
+   */
+  private static int getHeaderSize(Path countsFile, MappedByteBuffer buffer, int nBlocks) {
+    long dataSize = (long) nBlocks * Long.BYTES;
+    if (buffer.capacity() < Integer.BYTES || buffer.getInt(0) != nBlocks) {
+      throw new RuntimeException("Mismatching block count in counts file: " + countsFile);
+    }
+    if (buffer.capacity() == Integer.BYTES + dataSize) {
+      return Integer.BYTES;
+    }
+    if (buffer.capacity() == Long.BYTES + dataSize) {
+      return Long.BYTES; // padding of a memory-mapped counts file
+    }
+    throw new RuntimeException("Invalid size of counts file: " + countsFile);
+  }
+}
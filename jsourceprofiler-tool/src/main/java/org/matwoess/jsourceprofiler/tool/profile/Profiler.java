@@ -4,17 +4,32 @@ import org.matwoess.jsourceprofiler.common.IO;
 import org.matwoess.jsourceprofiler.common.JCompilerCommandBuilder;
 import org.matwoess.jsourceprofiler.common.JavaCommandBuilder;
 import org.matwoess.jsourceprofiler.common.Util;
+import org.matwoess.jsourceprofiler.tool.cli.CounterMode;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
 import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.BlockType;
+import org.matwoess.jsourceprofiler.tool.model.CodePosition;
+import org.matwoess.jsourceprofiler.tool.model.CodeRegion;
 import org.matwoess.jsourceprofiler.tool.model.JClass;
 import org.matwoess.jsourceprofiler.tool.model.JavaFile;
 import org.matwoess.jsourceprofiler.tool.model.Metadata;
+import org.matwoess.jsourceprofiler.tool.model.Method;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.PrimitiveIterator;
 
 /**
@@ -93,49 +108,155 @@ public class Profiler {
    * Generates the report from the metadata and counts files.
    * <p>
    * Before creation, the hit counts are added to the blocks from the counts file data.
+   * If every run wrote its own counts file, the counts of all runs are summed up instead (see {@link CountsMerger}).
    * <p>
    * First the report directory is cleared.
    * Then the following files are written:
    * <ul>
    *   <li>the index file</li>
+   *   <li>the thread overview (only in the per-thread counter mode)</li>
+   *   <li>the call graph (only if calls were counted)</li>
+   *   <li>the instrumentation overhead (only if hit counts were recorded)</li>
+   *   <li>the loop overview (only if loop histograms were recorded)</li>
+   *   <li>the timeline (only if a timeline was recorded)</li>
    *   <li>the source files</li>
    *   <li>the method index files for each class in the source files</li>
    * </ul>
    * Finally, the highlighting JavaScript file is copied to the report directory using {@link #copyReportResources}.
    */
   public void generateReport() {
-    JavaFile[] allJavaFiles;
+    Metadata metadata = Metadata.importMetadata(IO.getMetadataPath());
+    ProfilingOptions options = metadata.options();
+    long[] counts = options.uniqueCounts() ? CountsMerger.mergeRunCounts(metadata.blocksCount()) : readCounts(IO.getCountsPath());
+    long[] timings = options.timingEnabled() ? readTimings(IO.getTimingsPath()) : null;
+    JavaFile[] allJavaFiles = getAllJavaFiles(metadata);
+    if (options.counterMode() == CounterMode.ADAPTIVE) {
+      markSharedBlocks(allJavaFiles, readSharedBlocks(IO.getSharedBlocksPath()));
+    }
+    String[] threadNames = null;
+    if (options.counterMode() == CounterMode.PER_THREAD) {
+      Map<String, long[]> threadCounts = readNamedCounts(IO.getThreadCountsPath());
+      addThreadHitsToBlocks(allJavaFiles, threadCounts);
+      threadNames = threadCounts.keySet().toArray(String[]::new);
+    }
+    List<CallEdge> callEdges = options.callGraphEnabled() ? readCallEdges(IO.getCallEdgesPath(), allJavaFiles) : null;
+    if (options.loopHistograms()) {
+      addLoopHistogramsToBlocks(IO.getLoopHistogramsPath(), allJavaFiles);
+    }
+    if (options.exceptionExits()) {
+      addExceptionExitsToRegions(IO.getExceptionExitsPath(), allJavaFiles);
+    }
+    if (options.pathProfiling()) {
+      addPathCountsToBlocks(IO.getPathsPath(), allJavaFiles);
+    }
+    Timeline timeline = options.timelineInterval() > 0 ? readTimeline(IO.getTimelinePath(), allJavaFiles) : null;
+    boolean coverageOnly = options.counterMode() == CounterMode.COVERAGE;
+    writeReport(allJavaFiles, counts, timings, new ReportSettings(options.samplingRate(), coverageOnly, timings != null, options.cpuTimeEnabled(), threadNames, callEdges, options.loopHistograms(), timeline));
+  }
+
+  /**
+   * Generates the report from the metadata and the given block counts.
+   * <p>
+   * This allows creating a report from other sources than the counts file, like a counter snapshot
+   * or the merged counts of multiple runs.
+   * Method times, shared blocks, per-thread counts, call edges, loop histograms, exception exits, path counts and the timeline are not included,
+   * as they are only written at the end of the program.
+   *
+   * @param counts the hit count of every block (with a counter), ordered by block id
+   * @see #generateReport()
+   */
+  public void generateReport(long[] counts) {
+    Metadata metadata = Metadata.importMetadata(IO.getMetadataPath());
+    ProfilingOptions options = metadata.options();
+    writeReport(getAllJavaFiles(metadata), counts, null, ReportSettings.countsOnly(options.samplingRate(), options.counterMode() == CounterMode.COVERAGE));
+  }
+
+  /**
+   * Returns all Java files of the profiled project.
+   * If no main file was given, they are taken from the imported metadata.
+   *
+   * @param metadata the imported metadata
+   * @return the main file and all additional files
+   */
+  private JavaFile[] getAllJavaFiles(Metadata metadata) {
     if (mainJavaFile != null) {
-      allJavaFiles = Util.prependToArray(additionalJavaFiles, mainJavaFile);
-    } else {
-      allJavaFiles = Metadata.importMetadata(IO.getMetadataPath()).javaFiles();
+      return Util.prependToArray(additionalJavaFiles, mainJavaFile);
+    }
+    return metadata.javaFiles();
+  }
+
+  /**
+   * Adds the hit counts (and method times) to the blocks of all files and writes the report files.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   * @param counts       the block counts, ordered by block id
+   * @param timings      the method times read by {@link #readTimings}, or null if not available
+   * @param settings     the settings of the report, with the sampling rate to scale up the counts with
+   */
+  private static void writeReport(JavaFile[] allJavaFiles, long[] counts, long[] timings, ReportSettings settings) {
+    addHitCountToJavaFileBlocks(allJavaFiles, counts, settings.samplingRate());
+    if (timings != null) {
+      addTimesToMethods(allJavaFiles, timings);
     }
-    addHitCountToJavaFileBlocks(allJavaFiles);
     IO.clearDirectoryContents(IO.getReportDir());
-    new ReportClassIndexWriter(allJavaFiles).write();
+    writeReportFile(new ReportClassIndexWriter(allJavaFiles), settings);
+    if (settings.threadNames() != null) {
+      writeReportFile(new ReportThreadIndexWriter(allJavaFiles), settings);
+    }
+    if (settings.callEdges() != null) {
+      writeReportFile(new ReportCallGraphWriter(allJavaFiles), settings);
+    }
+    if (!settings.coverageOnly()) {
+      writeReportFile(new ReportOverheadWriter(allJavaFiles), settings);
+    }
+    if (Arrays.stream(allJavaFiles).flatMap(jFile -> jFile.foundBlocks.stream()).anyMatch(b -> b.pathCounts != null)) {
+      writeReportFile(new ReportPathsWriter(allJavaFiles), settings);
+    }
+    if (settings.showLoops()) {
+      writeReportFile(new ReportLoopIndexWriter(allJavaFiles), settings);
+    }
+    if (settings.timeline() != null) {
+      writeReportFile(new ReportTimelineWriter(allJavaFiles), settings);
+    }
     for (JavaFile jFile : allJavaFiles) {
       if (jFile.foundBlocks.isEmpty()) {
         continue; // exclude files without code blocks
       }
-      new ReportSourceWriter(jFile).write();
+      writeReportFile(new ReportSourceWriter(jFile), settings);
       for (JClass clazz : jFile.topLevelClasses) {
-        new ReportMethodIndexWriter(clazz, jFile).write();
+        writeReportFile(new ReportMethodIndexWriter(clazz, jFile), settings);
       }
     }
     copyReportResources();
   }
 
   /**
-   * Populate hit counts of blocks from the counts file data.
+   * Writes a single report file with the given writer.
+   *
+   * @param writer   the HTML writer of the report file
+   * @param settings the settings of the report
+   */
+  private static void writeReportFile(AbstractHtmlWriter writer, ReportSettings settings) {
+    settings.applyTo(writer);
+    writer.write();
+  }
+
+  /**
+   * Reads the block counts from the given counts file.
    * <p>
-   * An error is thrown if the number of counts does not match the number of blocks.
+   * The counts file of the memory-mapped counter mode has its header padded to 8 bytes.
+   * Such a file can also be read while the instrumented program is still running.
    *
-   * @param allJavaFiles the list of all java files contained in the project
+   * @param countsPath the path of the counts file (or a counts snapshot)
+   * @return the block counts, ordered by block id
    */
-  private static void addHitCountToJavaFileBlocks(JavaFile[] allJavaFiles) {
+  public static long[] readCounts(Path countsPath) {
     long[] counts;
-    try (DataInputStream dis = new DataInputStream(new FileInputStream(IO.getCountsPath().toString()))) {
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(countsPath.toString())))) {
       int nCounts = dis.readInt();
+      if (Files.size(countsPath) == Long.BYTES + (long) nCounts * Long.BYTES) {
+        dis.skipBytes(Integer.BYTES); // padding of a memory-mapped counts file
+      }
       counts = new long[nCounts];
       for (int i = 0; i < nCounts; i++) {
         counts[i] = dis.readLong();
@@ -143,6 +264,375 @@ public class Profiler {
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    return counts;
+  }
+
+  /**
+   * Reads the method times from the given timings file.
+   * <p>
+   * For every block, the file contains its total, self, maximum and CPU time in nanoseconds.
+   *
+   * @param timingsPath the path of the timings file
+   * @return the method times, four consecutive values per block id
+   */
+  public static long[] readTimings(Path timingsPath) {
+    long[] timings;
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(timingsPath.toString())))) {
+      int nBlocks = dis.readInt();
+      timings = new long[nBlocks * 4];
+      for (int i = 0; i < timings.length; i++) {
+        timings[i] = dis.readLong();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return timings;
+  }
+
+  /**
+   * Reads the ids of the blocks that were promoted to atomic increments in the adaptive counter mode.
+   *
+   * @param sharedBlocksPath the path of the shared blocks file
+   * @return the ids of all shared blocks
+   */
+  public static int[] readSharedBlocks(Path sharedBlocksPath) {
+    int[] sharedBlocks;
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(sharedBlocksPath.toString())))) {
+      sharedBlocks = new int[dis.readInt()];
+      for (int i = 0; i < sharedBlocks.length; i++) {
+        sharedBlocks[i] = dis.readInt();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return sharedBlocks;
+  }
+
+  /**
+   * Reads named block counts, like the counts of every thread (or thread group) or of every recorded phase.
+   * <p>
+   * The file starts with the number of blocks and the number of names.
+   * For every name, it is followed by the counts of all blocks.
+   *
+   * @param namedCountsPath the path of the thread counts or phases file
+   * @return the block counts (ordered by block id) by name, in the order of the file
+   */
+  public static Map<String, long[]> readNamedCounts(Path namedCountsPath) {
+    Map<String, long[]> namedCounts = new LinkedHashMap<>();
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(namedCountsPath.toString())))) {
+      int nBlocks = dis.readInt();
+      int nNames = dis.readInt();
+      for (int n = 0; n < nNames; n++) {
+        String name = dis.readUTF();
+        long[] counts = new long[nBlocks];
+        for (int i = 0; i < nBlocks; i++) {
+          counts[i] = dis.readLong();
+        }
+        namedCounts.put(name, counts);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return namedCounts;
+  }
+
+  /**
+   * Reads the counted calls between methods from the given call edges file.
+   * <p>
+   * The file starts with the number of edges and the number of calls that could not be counted,
+   * because the call edge table of the program was full.
+   * For every edge, it contains the block ids of the caller (<code>-1</code> if unknown) and the callee,
+   * followed by the number of calls.
+   *
+   * @param callEdgesPath the path of the call edges file
+   * @param allJavaFiles  the list of all java files contained in the project
+   * @return the call edges between the methods of the given files
+   */
+  private static List<CallEdge> readCallEdges(Path callEdgesPath, JavaFile[] allJavaFiles) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    List<CallEdge> callEdges = new ArrayList<>();
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(callEdgesPath.toString())))) {
+      int nEdges = dis.readInt();
+      long droppedCalls = dis.readLong();
+      if (droppedCalls > 0) {
+        System.out.println("Warning: " + droppedCalls + " calls were not included in the call graph (too many call edges).");
+      }
+      for (int i = 0; i < nEdges; i++) {
+        int callerId = dis.readInt();
+        int calleeId = dis.readInt();
+        long calls = dis.readLong();
+        if (callerId >= countedBlocks.size() || calleeId >= countedBlocks.size()) {
+          throw new RuntimeException("Mismatching block ids in call edges!");
+        }
+        Method caller = (callerId == -1) ? null : countedBlocks.get(callerId).method;
+        callEdges.add(new CallEdge(caller, countedBlocks.get(calleeId).method, calls));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return callEdges;
+  }
+
+  /**
+   * Reads the iteration count histograms of all executed loops and adds them to their loop blocks.
+   * <p>
+   * The file starts with the number of loops and the number of histogram buckets.
+   * For every loop, its block id is followed by the number of executions in every bucket.
+   *
+   * @param loopHistogramsPath the path of the loop histograms file
+   * @param allJavaFiles       the list of all java files contained in the project
+   */
+  private static void addLoopHistogramsToBlocks(Path loopHistogramsPath, JavaFile[] allJavaFiles) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(loopHistogramsPath.toString())))) {
+      int nLoops = dis.readInt();
+      int nBuckets = dis.readInt();
+      for (int i = 0; i < nLoops; i++) {
+        int blockId = dis.readInt();
+        if (blockId >= countedBlocks.size() || countedBlocks.get(blockId).blockType != BlockType.LOOP) {
+          throw new RuntimeException("Mismatching block ids in loop histograms!");
+        }
+        long[] histogram = new long[nBuckets];
+        for (int bucket = 0; bucket < nBuckets; bucket++) {
+          histogram[bucket] = dis.readLong();
+        }
+        countedBlocks.get(blockId).loopHistogram = histogram;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads the counts of all executed paths and adds them to the root blocks of their path regions.
+   * <p>
+   * The file starts with the number of executed path regions and the number of path executions that could not be counted.
+   * For every region, its block id and the number of executed paths are followed by the id and count of every path.
+   * Path regions without any executed path get empty path counts.
+   *
+   * @param pathsPath    the path of the path counts file
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  private static void addPathCountsToBlocks(Path pathsPath, JavaFile[] allJavaFiles) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    for (Block block : countedBlocks) {
+      if (block.isPathRegion()) {
+        block.pathCounts = new HashMap<>();
+      }
+    }
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(pathsPath.toString())))) {
+      int nRegions = dis.readInt();
+      long droppedPaths = dis.readLong();
+      if (droppedPaths > 0) {
+        System.out.println("Warning: " + droppedPaths + " path executions were not included in the path profiles (too many paths).");
+      }
+      for (int i = 0; i < nRegions; i++) {
+        int blockId = dis.readInt();
+        if (blockId >= countedBlocks.size() || !countedBlocks.get(blockId).isPathRegion()) {
+          throw new RuntimeException("Mismatching block ids in path counts!");
+        }
+        Block region = countedBlocks.get(blockId);
+        int nPaths = dis.readInt();
+        for (int p = 0; p < nPaths; p++) {
+          long pathId = dis.readLong();
+          region.pathCounts.put(pathId, dis.readLong());
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads the timeline snapshots and aggregates their block entries per method and per top-level class.
+   * <p>
+   * The file starts with the timeline interval, the number of dropped snapshots and the number of snapshots.
+   * Every snapshot consists of its time and its number of entries, followed by the block id and the count delta
+   * of every block that was entered since the previous snapshot.
+   *
+   * @param timelinePath the path of the timeline file
+   * @param allJavaFiles the list of all java files contained in the project
+   * @return the aggregated timeline
+   */
+  private static Timeline readTimeline(Path timelinePath, JavaFile[] allJavaFiles) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    Map<Method, long[]> methodSeries = new IdentityHashMap<>();
+    Map<JClass, long[]> classSeries = new IdentityHashMap<>();
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(timelinePath.toString())))) {
+      int intervalMillis = dis.readInt();
+      int droppedSnapshots = dis.readInt();
+      int nSnapshots = dis.readInt();
+      long[] times = new long[nSnapshots];
+      for (int s = 0; s < nSnapshots; s++) {
+        times[s] = dis.readLong();
+        int nEntries = dis.readInt();
+        for (int e = 0; e < nEntries; e++) {
+          int blockId = dis.readInt();
+          long delta = dis.readLong();
+          if (blockId >= countedBlocks.size()) {
+            throw new RuntimeException("Mismatching block ids in timeline!");
+          }
+          Block block = countedBlocks.get(blockId);
+          if (block.method != null) {
+            methodSeries.computeIfAbsent(block.method, m -> new long[nSnapshots])[s] += delta;
+          }
+          JClass topLevelClass = block.clazz;
+          while (topLevelClass.parentClass != null) {
+            topLevelClass = topLevelClass.parentClass;
+          }
+          classSeries.computeIfAbsent(topLevelClass, c -> new long[nSnapshots])[s] += delta;
+        }
+      }
+      return new Timeline(intervalMillis, droppedSnapshots, times, methodSeries, classSeries);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads the exception exits of all blocks and subtracts them from the code regions that were not reached.
+   * <p>
+   * The file starts with the number of entries.
+   * Every entry consists of the block id, the source line at which the exceptions left the block and their number.
+   * The block is either a method (or lambda) block, or a <code>try</code> block whose exceptions were caught.
+   * <p>
+   * Regions spanning over the line are split at the next line, so that the statements after it can be subtracted.
+   *
+   * @param exceptionExitsPath the path of the exception exits file
+   * @param allJavaFiles       the list of all java files contained in the project
+   * @see #subtractExceptionExits
+   */
+  private static void addExceptionExitsToRegions(Path exceptionExitsPath, JavaFile[] allJavaFiles) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    Map<Block, JavaFile> fileByBlock = new IdentityHashMap<>();
+    for (JavaFile jFile : allJavaFiles) {
+      jFile.foundBlocks.forEach(b -> fileByBlock.put(b, jFile));
+    }
+    Map<JavaFile, String> sourceByFile = new IdentityHashMap<>();
+    try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(exceptionExitsPath.toString())))) {
+      int nEntries = dis.readInt();
+      for (int i = 0; i < nEntries; i++) {
+        int blockId = dis.readInt();
+        int line = dis.readInt();
+        long exits = dis.readLong();
+        if (blockId >= countedBlocks.size()) {
+          throw new RuntimeException("Mismatching block ids in exception exits!");
+        }
+        if (line >= 0) {
+          Block block = countedBlocks.get(blockId);
+          JavaFile jFile = fileByBlock.get(block);
+          if (!sourceByFile.containsKey(jFile)) {
+            sourceByFile.put(jFile, Files.readString(jFile.sourceFile, StandardCharsets.ISO_8859_1));
+          }
+          subtractExceptionExits(block, line, exits, sourceByFile.get(jFile));
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Adds the given number of exceptional exits to all code regions after the given line,
+   * in the given block and the nested blocks containing the line.
+   * <p>
+   * These blocks were left by the exception, so their regions after the line were not reached.
+   * Regions that already subtract the hits of a nested block containing the line (e.g. a block ending with a <code>throw</code>)
+   * are skipped, as the exits are part of these hits.
+   * Lambdas and the methods of local classes are not descended into, as their code is not executed in place.
+   *
+   * @param block      the block left by the exceptions
+   * @param line       the source line at which the exceptions left the block
+   * @param exits      the number of exceptions
+   * @param sourceCode the source code of the file containing the block
+   */
+  private static void subtractExceptionExits(Block block, int line, long exits, String sourceCode) {
+    List<Block> enclosingBlocks = new ArrayList<>();
+    Block curBlock = block;
+    while (curBlock != null && curBlock.beg.line() <= line && line <= curBlock.end.line()) {
+      enclosingBlocks.add(curBlock);
+      curBlock = curBlock.innerBlocks.stream()
+          .filter(b -> b.blockType != BlockType.LAMBDA && b.method == block.method)
+          .filter(b -> b.beg.line() <= line && line <= b.end.line())
+          .findFirst()
+          .orElse(null);
+    }
+    for (int depth = 0; depth < enclosingBlocks.size(); depth++) {
+      curBlock = enclosingBlocks.get(depth);
+      List<Block> nestedBlocks = enclosingBlocks.subList(depth + 1, enclosingBlocks.size());
+      for (int i = 0; i < curBlock.codeRegions.size(); i++) {
+        CodeRegion region = curBlock.codeRegions.get(i);
+        if (region.beg.line() <= line && line < region.end.line()) {
+          CodePosition splitPos = getNextLineStart(sourceCode, region, line);
+          if (splitPos != null) {
+            curBlock.splitCodeRegion(region, splitPos);
+          }
+        } else if (region.beg.line() > line && nestedBlocks.stream().noneMatch(region.dependentBlocks::contains)) {
+          region.exceptionalExits += exits;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the position of the first non-whitespace character after the given line, inside the given region.
+   *
+   * @param sourceCode the source code of the file containing the region
+   * @param region     the code region spanning over the line
+   * @param line       the line to skip
+   * @return the position, or null if the rest of the region is empty
+   */
+  private static CodePosition getNextLineStart(String sourceCode, CodeRegion region, int line) {
+    int curLine = region.beg.line();
+    int pos = region.beg.pos();
+    while (curLine <= line && pos < region.end.pos()) {
+      if (sourceCode.charAt(pos++) == '\n') {
+        curLine++;
+      }
+    }
+    while (pos < region.end.pos() && Character.isWhitespace(sourceCode.charAt(pos))) {
+      if (sourceCode.charAt(pos++) == '\n') {
+        curLine++;
+      }
+    }
+    return (pos < region.end.pos()) ? new CodePosition(curLine, pos) : null;
+  }
+
+  /**
+   * Reads the block counts of the given phase, recorded by the program with <code>__Counter.begin</code>.
+   *
+   * @param phase the name of the phase
+   * @return the block counts of the phase, ordered by block id
+   * @throws IllegalArgumentException if no phases were recorded, or the phase does not exist
+   */
+  public static long[] readPhaseCounts(String phase) throws IllegalArgumentException {
+    Path phasesPath = IO.getPhasesPath();
+    if (!phasesPath.toFile().isFile()) {
+      throw new IllegalArgumentException("No phases were recorded, missing file: " + phasesPath);
+    }
+    Map<String, long[]> phaseCounts = readNamedCounts(phasesPath);
+    if (!phaseCounts.containsKey(phase)) {
+      throw new IllegalArgumentException("Unknown phase: " + phase + " (recorded phases: " + String.join(", ", phaseCounts.keySet()) + ")");
+    }
+    return phaseCounts.get(phase);
+  }
+
+  /**
+   * Populate hit counts of blocks from the counts file data.
+   * <p>
+   * An error is thrown if the number of counts does not match the number of blocks.
+   * <p>
+   * Sampled counts are scaled up by the sampling rate, to estimate the real hit counts.
+   * <p>
+   * The hits of inferred blocks (instrumented with profile guidance) are computed from the counted blocks next.
+   * The hits of derived blocks (instrumented with minimal counters) are computed afterward, in block order.
+   * This way, the hits of all blocks they are derived from are already available.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   * @param counts       the block counts, ordered by block id
+   * @param samplingRate the sampling rate of the counts (1 if not sampled)
+   */
+  public static void addHitCountToJavaFileBlocks(JavaFile[] allJavaFiles, long[] counts, int samplingRate) {
     PrimitiveIterator.OfLong allBlockCounts = Arrays.stream(counts).iterator();
     for (JavaFile jFile : allJavaFiles) {
       for (Block block : jFile.foundBlocks) {
@@ -152,12 +642,100 @@ public class Profiler {
         if (!allBlockCounts.hasNext()) {
           throw new RuntimeException("Ran out of block counts. Mismatching entry counts");
         }
-        block.hits = allBlockCounts.next();
+        block.hits = allBlockCounts.next() * samplingRate;
       }
     }
     if (allBlockCounts.hasNext()) {
       throw new RuntimeException("Too many block counts. Mismatching entry counts!");
     }
+    for (JavaFile jFile : allJavaFiles) {
+      for (Block block : jFile.foundBlocks) {
+        if (block.isInferred()) {
+          block.hits = block.getInferredHitCount();
+        }
+      }
+    }
+    for (JavaFile jFile : allJavaFiles) {
+      for (Block block : jFile.foundBlocks) {
+        if (block.isDerived() && !block.uncounted) {
+          block.hits = block.getDerivedHitCount();
+        }
+      }
+    }
+  }
+
+  /**
+   * Populate the times of all methods from the timings file data.
+   * <p>
+   * The blocks are numbered in the same order as in {@link #addHitCountToJavaFileBlocks}.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   * @param timings      the method times, four consecutive values per block id
+   */
+  private static void addTimesToMethods(JavaFile[] allJavaFiles, long[] timings) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    if (4 * countedBlocks.size() != timings.length) {
+      throw new RuntimeException("Mismatching entry counts in method times!");
+    }
+    for (int blockId = 0; blockId < countedBlocks.size(); blockId++) {
+      Block block = countedBlocks.get(blockId);
+      if (block.blockType.isMethod()) {
+        Method method = block.method;
+        method.totalTime = timings[4 * blockId];
+        method.selfTime = timings[4 * blockId + 1];
+        method.maxTime = timings[4 * blockId + 2];
+        method.cpuTime = timings[4 * blockId + 3];
+      }
+    }
+  }
+
+  /**
+   * Marks the blocks with the given ids as shared between threads.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   * @param sharedBlocks the ids of all shared blocks, numbered like in {@link #addHitCountToJavaFileBlocks}
+   */
+  private static void markSharedBlocks(JavaFile[] allJavaFiles, int[] sharedBlocks) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    for (int blockId : sharedBlocks) {
+      countedBlocks.get(blockId).shared = true;
+    }
+  }
+
+  /**
+   * Adds the hit counts of every thread to the blocks.
+   * The per-thread hit counts of a block are ordered like the thread names (the keys of the given map).
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   * @param threadCounts the block counts by thread name, numbered like in {@link #addHitCountToJavaFileBlocks}
+   */
+  private static void addThreadHitsToBlocks(JavaFile[] allJavaFiles, Map<String, long[]> threadCounts) {
+    List<Block> countedBlocks = getCountedBlocks(allJavaFiles);
+    List<long[]> countsByThread = List.copyOf(threadCounts.values());
+    for (int blockId = 0; blockId < countedBlocks.size(); blockId++) {
+      long[] threadHits = new long[countsByThread.size()];
+      for (int t = 0; t < threadHits.length; t++) {
+        long[] counts = countsByThread.get(t);
+        if (counts.length != countedBlocks.size()) {
+          throw new RuntimeException("Mismatching entry counts in thread counts!");
+        }
+        threadHits[t] = counts[blockId];
+      }
+      countedBlocks.get(blockId).threadHits = threadHits;
+    }
+  }
+
+  /**
+   * Returns all blocks with a counter, ordered by their counter id.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   * @return the list of all counted blocks
+   */
+  private static List<Block> getCountedBlocks(JavaFile[] allJavaFiles) {
+    return Arrays.stream(allJavaFiles)
+        .flatMap(jFile -> jFile.foundBlocks.stream())
+        .filter(block -> block.blockType.hasCounter())
+        .toList();
   }
 
   /**
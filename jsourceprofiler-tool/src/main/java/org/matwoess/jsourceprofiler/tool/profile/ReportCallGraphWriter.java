@@ -0,0 +1,221 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.JClass;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+import org.matwoess.jsourceprofiler.tool.model.Method;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The writer class for the call graph page.
+ * <p>
+ * This page is only generated if the calls between methods were counted.
+ * It contains an expandable call tree, starting at the methods without an instrumented caller,
+ * and a table listing the callers and callees of every method.
+ */
+public class ReportCallGraphWriter extends AbstractHtmlWriter {
+  private static final String NO_CALLER = "(no instrumented caller)";
+  private final List<Method> methods = new ArrayList<>();
+  private final Map<Method, Integer> methodIndices = new IdentityHashMap<>(); // overloaded methods are equal
+  private final Map<Method, JavaFile> fileByMethod = new IdentityHashMap<>();
+
+  /**
+   * Creates a new {@link ReportCallGraphWriter} object.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  public ReportCallGraphWriter(JavaFile[] allJavaFiles) {
+    for (JavaFile jFile : allJavaFiles) {
+      for (JClass clazz : jFile.topLevelClasses) {
+        for (Method meth : clazz.getMethodsRecursive()) {
+          if (!meth.isAbstract()) {
+            methodIndices.put(meth, methods.size());
+            methods.add(meth);
+            fileByMethod.put(meth, jFile);
+          }
+        }
+      }
+    }
+    title = "Call Graph";
+    cssFiles = new String[]{"css/index.css"};
+    includeScripts = new String[]{"https://ajax.googleapis.com/ajax/libs/jquery/3.6.3/jquery.min.js"};
+    bodyScripts = new String[]{"js/sorter.js", "js/calltree.js"};
+  }
+
+  /**
+   * Generates the main content of the HTML document
+   * by calling {@link #callTree} and {@link #sortedMethodTable}.
+   */
+  @Override
+  public void body() {
+    content.append("<h3>Call Tree</h3>\n");
+    callTree();
+    content.append("<h3>Callers and Callees</h3>\n");
+    sortedMethodTable();
+  }
+
+  /**
+   * Appends the (initially collapsed) call tree and the call graph data it is built from to the internal <code>content</code>.
+   * <p>
+   * As the call tree of a recursive program is infinite, its nodes are only created by <code>calltree.js</code>
+   * when their parent is expanded. A method that is already an ancestor of a node is not expanded again.
+   */
+  public void callTree() {
+    content.append("<ul id=\"calltree\" class=\"calltree\"></ul>\n")
+        .append("<script>\n")
+        .append("const callGraph = {\n")
+        .append("  methods: [\n");
+    for (Method meth : methods) {
+      content.append(String.format("    {name: \"%s\", href: \"%s\", anchor: \"%s\"},\n",
+          jsEscape(getDisplayName(meth)), jsEscape(getSourceHref(meth)), methodAnchor(meth)));
+    }
+    content.append("  ],\n")
+        .append(String.format("  roots: %s,\n", edgeList(getEdges(null, true))))
+        .append("  callees: [\n");
+    for (Method meth : methods) {
+      content.append("    ").append(edgeList(getEdges(meth, true))).append(",\n");
+    }
+    content.append("  ]\n")
+        .append("};\n")
+        .append("</script>\n");
+  }
+
+  /**
+   * Appends a table of all called methods with their callers and callees to the internal <code>content</code>.
+   * <p>
+   * The methods are sorted by their number of invocations, the callers and callees by their number of calls.
+   */
+  public void sortedMethodTable() {
+    List<Method> sortedMethods = methods.stream()
+        .filter(meth -> !getEdges(meth, false).isEmpty() || !getEdges(meth, true).isEmpty())
+        .sorted(Comparator.comparingLong((Method m) -> m.getMethodBlock().hits).reversed())
+        .toList();
+    content.append("<table class=\"sortable\">\n")
+        .append("<tr>\n")
+        .append("<th>Method</th>\n")
+        .append("<th class=\"metric desc\">Invocations</th>\n")
+        .append("<th class=\"metric\">Callers</th>\n")
+        .append("<th class=\"metric\">Callees</th>\n")
+        .append("</tr>\n");
+    for (Method meth : sortedMethods) {
+      Block methBlock = meth.getMethodBlock();
+      List<CallEdge> callerEdges = getEdges(meth, false);
+      List<CallEdge> calleeEdges = getEdges(meth, true);
+      content.append(String.format("<tr id=\"%s\">\n", methodAnchor(meth)))
+          .append(String.format("<td><a href=\"%s\">%s</a></td>\n", getSourceHref(meth), getDisplayName(meth)))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", methBlock.hits, formatHitCount(methBlock.hits)))
+          .append(String.format("<td class=\"metric callers\" data-total=\"%s\">%s</td>\n",
+              callerEdges.size(), edgeLinks(callerEdges, false)))
+          .append(String.format("<td class=\"metric callers\" data-total=\"%s\">%s</td>\n",
+              calleeEdges.size(), edgeLinks(calleeEdges, true)))
+          .append("</tr>\n");
+    }
+    content.append("</table>\n");
+  }
+
+  /**
+   * Returns the call edges from or to the given method, sorted by their number of calls in descending order.
+   *
+   * @param method  the method, or null for the calls without an instrumented caller
+   * @param callees true for the edges to the callees of the method, false for the edges from its callers
+   * @return the sorted list of call edges
+   */
+  private List<CallEdge> getEdges(Method method, boolean callees) {
+    return callEdges.stream()
+        .filter(edge -> (callees ? edge.caller() : edge.callee()) == method)
+        .sorted(Comparator.comparingLong(CallEdge::calls).reversed())
+        .toList();
+  }
+
+  /**
+   * Returns the given callee edges as a JavaScript array of <code>[method index, calls]</code> pairs.
+   *
+   * @param edges the call edges
+   * @return the JavaScript array literal
+   */
+  private String edgeList(List<CallEdge> edges) {
+    StringBuilder list = new StringBuilder("[");
+    for (CallEdge edge : edges) {
+      if (list.length() > 1) {
+        list.append(", ");
+      }
+      list.append(String.format("[%d, %d]", methodIndices.get(edge.callee()), edge.calls()));
+    }
+    return list.append("]").toString();
+  }
+
+  /**
+   * Returns the callers or callees of the given edges as links to their table rows, each with its number of calls.
+   *
+   * @param edges   the call edges
+   * @param callees true to list the callees of the edges, false to list the callers
+   * @return the HTML code of the list
+   */
+  private String edgeLinks(List<CallEdge> edges, boolean callees) {
+    List<String> links = new ArrayList<>();
+    for (CallEdge edge : edges) {
+      Method meth = callees ? edge.callee() : edge.caller();
+      String name = (meth == null) ? NO_CALLER : String.format("<a href=\"#%s\">%s</a>", methodAnchor(meth), getDisplayName(meth));
+      links.add(String.format("%s (%s)", name, ReportUtil.formatHitCount(edge.calls())));
+    }
+    return String.join("<br>", links);
+  }
+
+  /**
+   * Returns the name of the given method, qualified by the name of its class.
+   *
+   * @param method the method
+   * @return the display name
+   */
+  private static String getDisplayName(Method method) {
+    return method.getMethodBlock().clazz.getName() + "::" + method.name;
+  }
+
+  /**
+   * Returns the link to the declaration of the given method in its report source file.
+   *
+   * @param method the method
+   * @return the relative link
+   */
+  private String getSourceHref(Method method) {
+    Path sourceFileHref = IO.getReportDir().relativize(IO.getReportSourceFilePath(fileByMethod.get(method).relativePath));
+    return IO.normalize(sourceFileHref) + "#" + method.getMethodBlock().beg.line();
+  }
+
+  /**
+   * Returns the id of the table row of the given method in the call graph page.
+   * It is unique as long as no two methods of a class begin in the same line.
+   *
+   * @param method the method
+   * @return the HTML element id
+   */
+  static String methodAnchor(Method method) {
+    Block methBlock = method.getMethodBlock();
+    return String.format("%s::%s-%d", methBlock.clazz.getFullName(), method.name, methBlock.beg.line());
+  }
+
+  /**
+   * Escapes the given text for use in a JavaScript string literal.
+   *
+   * @param text the text to escape
+   * @return the escaped text
+   */
+  private static String jsEscape(String text) {
+    return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("</", "<\\/");
+  }
+
+  /**
+   * Defines the output path for the generated HTML document as {@link IO#getReportCallGraphPath}.
+   */
+  @Override
+  public Path getFileOutputPath() {
+    return IO.getReportCallGraphPath();
+  }
+}
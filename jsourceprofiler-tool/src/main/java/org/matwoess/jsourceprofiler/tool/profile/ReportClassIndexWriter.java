@@ -1,6 +1,7 @@
 package org.matwoess.jsourceprofiler.tool.profile;
 
 import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
 import org.matwoess.jsourceprofiler.tool.model.JClass;
 import org.matwoess.jsourceprofiler.tool.model.JavaFile;
 import org.matwoess.jsourceprofiler.tool.model.Method;
@@ -30,14 +31,61 @@ public class ReportClassIndexWriter extends AbstractHtmlWriter {
 
   /**
    * Generates the main content of the HTML document by calling {@link #sortedClassTable}.
+   * If the block hits were counted per thread, a link to the thread overview is added before.
+   * The same applies to the call graph, the loop overview and the timeline, if calls, loop histograms or a timeline
+   * were recorded, to the path profiles, if paths were recorded, and to the instrumentation overhead, if hit counts were recorded.
    */
   @Override
   public void body() {
+    if (threadNames != null) {
+      Path threadIndexHref = IO.getReportThreadIndexPath().getFileName();
+      content.append(String.format("<p><a href=\"%s\">Thread Overview</a> (%d threads)</p>\n",
+          IO.normalize(threadIndexHref), threadNames.length));
+    }
+    if (callEdges != null) {
+      Path callGraphHref = IO.getReportCallGraphPath().getFileName();
+      content.append(String.format("<p><a href=\"%s\">Call Graph</a> (%d call edges)</p>\n",
+          IO.normalize(callGraphHref), callEdges.size()));
+    }
+    if (!coverageOnly) {
+      Path overheadHref = IO.getReportOverheadPath().getFileName();
+      long inferredBlocks = Arrays.stream(allJavaFiles)
+          .flatMap(jFile -> jFile.foundBlocks.stream())
+          .filter(Block::isInferred)
+          .count();
+      content.append(String.format("<p><a href=\"%s\">Instrumentation Overhead</a> (%d blocks inferred from the previous run)</p>\n",
+          IO.normalize(overheadHref), inferredBlocks));
+    }
+    if (showLoops) {
+      Path loopIndexHref = IO.getReportLoopIndexPath().getFileName();
+      long executedLoops = Arrays.stream(allJavaFiles)
+          .flatMap(jFile -> jFile.foundBlocks.stream())
+          .filter(block -> block.loopHistogram != null)
+          .count();
+      content.append(String.format("<p><a href=\"%s\">Loop Overview</a> (%d executed loops)</p>\n",
+          IO.normalize(loopIndexHref), executedLoops));
+    }
+    long pathRegions = Arrays.stream(allJavaFiles)
+        .flatMap(jFile -> jFile.foundBlocks.stream())
+        .filter(block -> block.pathCounts != null)
+        .count();
+    if (pathRegions > 0) {
+      Path pathsHref = IO.getReportPathsPath().getFileName();
+      content.append(String.format("<p><a href=\"%s\">Path Profiles</a> (%d path regions)</p>\n",
+          IO.normalize(pathsHref), pathRegions));
+    }
+    if (timeline != null) {
+      Path timelineHref = IO.getReportTimelinePath().getFileName();
+      content.append(String.format("<p><a href=\"%s\">Timeline</a> (%d snapshots)</p>\n",
+          IO.normalize(timelineHref), timeline.times().length));
+    }
     sortedClassTable();
   }
 
   /**
    * Appends a table of all classes sorted by the number of method invocations to the internal <code>content</code>.
+   * <p>
+   * If only the coverage was recorded, the hit count columns are replaced by the code block coverage of each class.
    */
   public void sortedClassTable() {
     Map<JClass, JavaFile> fileByClass = new HashMap<>();
@@ -53,11 +101,20 @@ public class ReportClassIndexWriter extends AbstractHtmlWriter {
         .toList();
     content.append("<table class=\"sortable\">\n")
         .append("<tr>\n")
-        .append("<th>Class</th>\n")
-        .append("<th class=\"metric desc\">Total Method Calls</th>\n")
-        .append("<th class=\"metric\">Block Hit Max</th>\n")
-        .append("<th class=\"metric\">Method Coverage</th>\n")
-        .append("<th>Source File</th>\n")
+        .append("<th>Class</th>\n");
+    if (coverageOnly) {
+      content.append("<th class=\"metric desc\">Method Coverage</th>\n")
+          .append("<th class=\"metric\">Code Block Coverage</th>\n");
+    } else {
+      content.append("<th class=\"metric desc\">Total Method Calls</th>\n")
+          .append("<th class=\"metric\">Block Hit Max</th>\n")
+          .append("<th class=\"metric\">Method Coverage</th>\n");
+    }
+    if (showTimes) {
+      content.append("<th class=\"metric\">Self Time</th>\n")
+          .append("<th class=\"metric\">Max Method Time</th>\n");
+    }
+    content.append("<th>Source File</th>\n")
         .append("</tr>\n");
     for (JClass clazz : sortedClasses) {
       JavaFile javaFile = fileByClass.get(clazz);
@@ -67,15 +124,27 @@ public class ReportClassIndexWriter extends AbstractHtmlWriter {
       long aggregatedMethodHitCounts = clazz.getAggregatedMethodBlockCounts();
       long blockHitMax = getBlockHitMax(clazz);
       content.append("<tr>\n")
-          .append(String.format("<td><a href=\"%s\">%s</a></td>\n", IO.normalize(methIdxHref), clazz.getName()))
-          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
-              aggregatedMethodHitCounts, ReportUtil.formatHitCount(aggregatedMethodHitCounts)))
-          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
-              blockHitMax, ReportUtil.formatHitCount(blockHitMax)))
-          .append(String.format("<td class=\"metric coverage\" data-percentage=\"%s\" data-total=\"%s\">%s</td>\n",
-              methodCoverage.percentage(), methodCoverage.total(), methodCoverage))
-          .append(String.format("<td><a href=\"%s\">%s</a></td>\n",
-              IO.normalize(sourceFileHref), javaFile.sourceFile.toFile().getName()))
+          .append(String.format("<td><a href=\"%s\">%s</a></td>\n", IO.normalize(methIdxHref), clazz.getName()));
+      if (!coverageOnly) {
+        content.append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
+                aggregatedMethodHitCounts, formatHitCount(aggregatedMethodHitCounts)))
+            .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
+                blockHitMax, formatHitCount(blockHitMax)));
+      }
+      content.append(coverageCell(methodCoverage));
+      if (coverageOnly) {
+        content.append(coverageCell(getBlockCoverage(clazz)));
+      }
+      if (showTimes) {
+        long selfTime = getSelfTime(clazz);
+        long maxTime = getMaxMethodTime(clazz);
+        content.append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
+            selfTime, ReportUtil.formatTime(selfTime)))
+            .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
+                maxTime, ReportUtil.formatTime(maxTime)));
+      }
+      content.append(String.format("<td><a href=\"%s\">%s</a></td>\n",
+          IO.normalize(sourceFileHref), javaFile.sourceFile.toFile().getName()))
           .append("</tr>\n");
     }
     content.append("</table>\n");
@@ -95,6 +164,30 @@ public class ReportClassIndexWriter extends AbstractHtmlWriter {
     return new ComponentCoverage(coveredMethods, methods.size());
   }
 
+  /**
+   * Returns the code block coverage of a class (including inner classes) as a {@link ComponentCoverage} object.
+   * Covered blocks are those with at least one hit, uncounted blocks are not included.
+   *
+   * @param clazz the class to calculate the coverage for
+   * @return the block coverage object
+   */
+  private ComponentCoverage getBlockCoverage(JClass clazz) {
+    List<Block> blocks = clazz.getBlocksRecursive().stream().filter(b -> b.blockType.hasCounter() && !b.uncounted).toList();
+    int coveredBlocks = (int) blocks.stream().filter(b -> b.hits > 0).count();
+    return new ComponentCoverage(coveredBlocks, blocks.size());
+  }
+
+  /**
+   * Returns a sortable table cell for the given coverage.
+   *
+   * @param coverage the coverage object
+   * @return the table cell HTML code
+   */
+  private static String coverageCell(ComponentCoverage coverage) {
+    return String.format("<td class=\"metric coverage\" data-percentage=\"%s\" data-total=\"%s\">%s</td>\n",
+        coverage.percentage(), coverage.total(), coverage);
+  }
+
   /**
    * Returns the hit-count of the most frequent executed inner block inside a class and its methods.
    *
@@ -108,6 +201,32 @@ public class ReportClassIndexWriter extends AbstractHtmlWriter {
         .orElse(0L);
   }
 
+  /**
+   * Returns the self time of all methods inside a class (including inner classes).
+   * Self times do not overlap, so this is the time spent in the code of the class itself.
+   *
+   * @param clazz the class to calculate the self time for
+   * @return the sum of the self times of all methods in nanoseconds
+   */
+  private long getSelfTime(JClass clazz) {
+    return clazz.getMethodsRecursive().stream()
+        .mapToLong(m -> m.selfTime)
+        .sum();
+  }
+
+  /**
+   * Returns the duration of the longest method invocation inside a class (including inner classes).
+   *
+   * @param clazz the class to calculate the maximum for
+   * @return the maximum invocation time of all methods in nanoseconds
+   */
+  private long getMaxMethodTime(JClass clazz) {
+    return clazz.getMethodsRecursive().stream()
+        .mapToLong(m -> m.maxTime)
+        .max()
+        .orElse(0L);
+  }
+
   /**
    * Defines the output path for the generated HTML document as {@link IO#getReportIndexPath}.
    */
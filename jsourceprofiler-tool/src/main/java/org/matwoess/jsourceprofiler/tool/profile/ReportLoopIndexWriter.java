@@ -0,0 +1,151 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The writer class for the loop overview page.
+ * <p>
+ * This page is only generated if loop histograms were recorded.
+ * It lists all executed loops with their number of executions and iterations,
+ * and how the executions are distributed over the power-of-two iteration count buckets.
+ */
+public class ReportLoopIndexWriter extends AbstractHtmlWriter {
+  private static final int MAX_BAR_HEIGHT = 24;
+  private final JavaFile[] allJavaFiles;
+
+  /**
+   * Creates a new {@link ReportLoopIndexWriter} object.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  public ReportLoopIndexWriter(JavaFile[] allJavaFiles) {
+    this.allJavaFiles = allJavaFiles;
+    title = "Loop Overview";
+    cssFiles = new String[]{"css/index.css"};
+    includeScripts = new String[]{"https://ajax.googleapis.com/ajax/libs/jquery/3.6.3/jquery.min.js"};
+    bodyScripts = new String[]{"js/sorter.js"};
+  }
+
+  /**
+   * Generates the main content of the HTML document by calling {@link #sortedLoopTable}.
+   */
+  @Override
+  public void body() {
+    sortedLoopTable();
+  }
+
+  /**
+   * Appends a table of all executed loops sorted by their number of executions to the internal <code>content</code>.
+   * <p>
+   * The average iteration count is based on the hit count of the loop block,
+   * so it is omitted if only the coverage of blocks was recorded.
+   */
+  public void sortedLoopTable() {
+    List<Block> loops = new ArrayList<>();
+    Map<Block, JavaFile> fileByLoop = new IdentityHashMap<>();
+    for (JavaFile jFile : allJavaFiles) {
+      for (Block block : jFile.foundBlocks) {
+        if (block.loopHistogram != null) {
+          loops.add(block);
+          fileByLoop.put(block, jFile);
+        }
+      }
+    }
+    loops.sort(Comparator.comparingLong(ReportLoopIndexWriter::getExecutions).reversed());
+    content.append("<table class=\"sortable\">\n")
+        .append("<tr>\n")
+        .append("<th>Loop</th>\n")
+        .append("<th class=\"metric desc\">Executions</th>\n");
+    if (!coverageOnly) {
+      content.append("<th class=\"metric\">Iterations</th>\n")
+          .append("<th class=\"metric\">Avg. Iterations</th>\n");
+    }
+    content.append("<th class=\"metric\">Max. Iterations</th>\n")
+        .append("<th>Iterations per Execution</th>\n")
+        .append("</tr>\n");
+    for (Block loop : loops) {
+      long executions = getExecutions(loop);
+      int maxBucket = getMaxBucket(loop.loopHistogram);
+      Path sourceFileHref = IO.getReportDir().relativize(IO.getReportSourceFilePath(fileByLoop.get(loop).relativePath));
+      String lineNrRef = IO.normalize(sourceFileHref) + "#" + loop.loopBeg.line();
+      String loopName = loop.clazz.getName() + (loop.method != null ? "::" + loop.method.name : "");
+      content.append("<tr>\n")
+          .append(String.format("<td><a href=\"%s\">%s</a> (line %d)</td>\n", lineNrRef, loopName, loop.loopBeg.line()))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", executions, ReportUtil.formatHitCount(executions)));
+      if (!coverageOnly) {
+        double avgIterations = (double) loop.hits / executions;
+        content.append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", loop.hits, formatHitCount(loop.hits)))
+            .append(String.format("<td class=\"metric\" data-total=\"%s\">%,.1f</td>\n", avgIterations, avgIterations));
+      }
+      content.append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", maxBucket, ReportUtil.formatIterationRange(maxBucket)))
+          .append(histogramCell(loop.loopHistogram, executions, maxBucket))
+          .append("</tr>\n");
+    }
+    content.append("</table>\n");
+  }
+
+  /**
+   * Returns a table cell with a bar for every bucket of the given loop histogram, up to the highest non-empty one.
+   * <p>
+   * The bar heights are relative to the most frequent bucket. Every bar shows its iteration range on hover.
+   *
+   * @param histogram  the loop histogram
+   * @param executions the total number of loop executions
+   * @param maxBucket  the highest non-empty bucket
+   * @return the table cell HTML code
+   */
+  private static String histogramCell(long[] histogram, long executions, int maxBucket) {
+    long maxCount = Arrays.stream(histogram).max().orElse(0);
+    StringBuilder cell = new StringBuilder("<td class=\"histogram\">");
+    for (int bucket = 0; bucket <= maxBucket; bucket++) {
+      long count = histogram[bucket];
+      int height = (count > 0) ? Math.max(1, (int) Math.round((double) MAX_BAR_HEIGHT * count / maxCount)) : 0;
+      cell.append(String.format("<span style=\"height: %dpx\" title=\"%s iterations: %s executions (%.1f%%)\"></span>",
+          height, ReportUtil.formatIterationRange(bucket), ReportUtil.formatHitCount(count), 100.0 * count / executions));
+    }
+    return cell.append("</td>\n").toString();
+  }
+
+  /**
+   * Returns the number of executions of the given loop block.
+   *
+   * @param loop the loop block
+   * @return the sum of all buckets of the loop histogram
+   */
+  private static long getExecutions(Block loop) {
+    return Arrays.stream(loop.loopHistogram).sum();
+  }
+
+  /**
+   * Returns the highest non-empty bucket of the given loop histogram.
+   *
+   * @param histogram the loop histogram
+   * @return the index of the bucket, or 0 if all buckets are empty
+   */
+  private static int getMaxBucket(long[] histogram) {
+    for (int bucket = histogram.length - 1; bucket > 0; bucket--) {
+      if (histogram[bucket] > 0) {
+        return bucket;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Defines the output path for the generated HTML document as {@link IO#getReportLoopIndexPath}.
+   */
+  @Override
+  public Path getFileOutputPath() {
+    return IO.getReportLoopIndexPath();
+  }
+}
@@ -13,6 +13,8 @@ import java.util.List;
 /**
  * The writer class for the method index overview page of a java class.
  * This page lists all methods of a class sorted by the number of invocations.
+ * <p>
+ * If the calls between methods were counted, the number of callers of each method links to the call graph page.
  */
 public class ReportMethodIndexWriter extends AbstractHtmlWriter {
   private final JClass clazz;
@@ -43,6 +45,8 @@ public class ReportMethodIndexWriter extends AbstractHtmlWriter {
 
   /**
    * Appends a table of all methods sorted by the number of invocations to the internal <code>content</code>.
+   * <p>
+   * If only the coverage was recorded, only the code block coverage of each method is shown.
    */
   public void sortedMethodTable() {
     List<Method> sortedMethods = clazz.getMethodsRecursive().stream()
@@ -51,11 +55,26 @@ public class ReportMethodIndexWriter extends AbstractHtmlWriter {
         .toList();
     content.append("<table class=\"sortable\">\n")
         .append("<tr>\n")
-        .append("<th>Method</th>\n")
-        .append("<th class=\"metric desc\">Invocations</th>\n")
-        .append("<th class=\"metric\">Block Hit Max</th>\n")
-        .append("<th class=\"metric\">Code Block Coverage</th>\n")
-        .append("</tr>\n");
+        .append("<th>Method</th>\n");
+    if (coverageOnly) {
+      content.append("<th class=\"metric desc\">Code Block Coverage</th>\n");
+    } else {
+      content.append("<th class=\"metric desc\">Invocations</th>\n")
+          .append("<th class=\"metric\">Block Hit Max</th>\n")
+          .append("<th class=\"metric\">Code Block Coverage</th>\n");
+    }
+    if (showTimes) {
+      content.append("<th class=\"metric\">Total Time</th>\n")
+          .append("<th class=\"metric\">Self Time</th>\n")
+          .append("<th class=\"metric\">Max Time</th>\n");
+    }
+    if (showCpuTime) {
+      content.append("<th class=\"metric\">CPU Time</th>\n");
+    }
+    if (callEdges != null) {
+      content.append("<th class=\"metric\">Callers</th>\n");
+    }
+    content.append("</tr>\n");
     Path sourceFileHref = IO.getReportDir().relativize(reportSourceFile);
     for (Method meth : sortedMethods) {
       Block methBlock = meth.getMethodBlock();
@@ -67,27 +86,64 @@ public class ReportMethodIndexWriter extends AbstractHtmlWriter {
       long methodHitCount = methBlock.hits;
       long blockHitMax = getBlockHitMax(meth);
       content.append("<tr>\n")
-          .append(String.format("<td><a href=\"%s\">%s</a></td>\n", lineNrRef, methName))
-          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
-              methodHitCount, ReportUtil.formatHitCount(methodHitCount)))
-          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
-              blockHitMax, ReportUtil.formatHitCount(blockHitMax)))
-          .append(String.format("<td class=\"metric coverage\" data-percentage=\"%s\" data-total=\"%s\">%s</td>\n",
-              blockCoverage.percentage(), blockCoverage.total(), blockCoverage))
-          .append("</tr>\n");
+          .append(String.format("<td><a href=\"%s\">%s</a></td>\n", lineNrRef, methName));
+      if (!coverageOnly) {
+        content.append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
+                methodHitCount, formatHitCount(methodHitCount)))
+            .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n",
+                blockHitMax, formatHitCount(blockHitMax)));
+      }
+      content.append(String.format("<td class=\"metric coverage\" data-percentage=\"%s\" data-total=\"%s\">%s</td>\n",
+              blockCoverage.percentage(), blockCoverage.total(), blockCoverage));
+      if (showTimes) {
+        content.append(timeCell(meth.totalTime))
+            .append(timeCell(meth.selfTime))
+            .append(timeCell(meth.maxTime));
+      }
+      if (showCpuTime) {
+        content.append(timeCell(meth.cpuTime));
+      }
+      if (callEdges != null) {
+        content.append(callersCell(meth));
+      }
+      content.append("</tr>\n");
     }
     content.append("</table>\n");
   }
 
+  /**
+   * Returns a sortable table cell for the given duration.
+   *
+   * @param nanos the duration in nanoseconds
+   * @return the table cell HTML code
+   */
+  private static String timeCell(long nanos) {
+    return String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", nanos, ReportUtil.formatTime(nanos));
+  }
+
+  /**
+   * Returns a sortable table cell with the number of distinct callers of the given method,
+   * linking to the method in the call graph page.
+   *
+   * @param method the method
+   * @return the table cell HTML code
+   */
+  private String callersCell(Method method) {
+    long callers = callEdges.stream().filter(edge -> edge.callee() == method).count();
+    Path callGraphHref = IO.getReportDir().relativize(IO.getReportCallGraphPath());
+    String methodHref = IO.normalize(callGraphHref) + "#" + ReportCallGraphWriter.methodAnchor(method);
+    return String.format("<td class=\"metric\" data-total=\"%s\"><a href=\"%s\">%s</a></td>\n", callers, methodHref, callers);
+  }
+
   /**
    * Returns the block coverage of a method as a {@link ComponentCoverage} object.
-   * Covered blocks are those with at least one hit.
+   * Covered blocks are those with at least one hit, uncounted blocks are not included.
    *
    * @param method the method to calculate the coverage for
    * @return the block coverage object
    */
   private ComponentCoverage getBlockCoverage(Method method) {
-    List<Block> blocks = method.getBlocksRecursive().stream().filter(b -> b.blockType.hasCounter()).toList();
+    List<Block> blocks = method.getBlocksRecursive().stream().filter(b -> b.blockType.hasCounter() && !b.uncounted).toList();
     int coveredBlocks = (int) blocks.stream().filter(b -> b.hits > 0).count();
     return new ComponentCoverage(coveredBlocks, blocks.size());
   }
@@ -0,0 +1,206 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The writer class for the instrumentation overhead page.
+ * <p>
+ * This page is only generated if hit counts were recorded.
+ * It lists how many counter increments every method contributed to the run,
+ * and how many increments were saved by blocks without their own counter (derived or inferred blocks).
+ * Methods with a large share of the increments are the ones worth re-instrumenting with <code>--profile-guided</code>.
+ */
+public class ReportOverheadWriter extends AbstractHtmlWriter {
+  private final JavaFile[] allJavaFiles;
+
+  /**
+   * The blocks of a method (or the class-level blocks of a class) and the file containing them.
+   *
+   * @param name   the qualified method name
+   * @param file   the java file containing the blocks
+   * @param blocks the blocks in block order
+   */
+  private record MethodBlocks(String name, JavaFile file, List<Block> blocks) {
+  }
+
+  /**
+   * Creates a new {@link ReportOverheadWriter} object.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  public ReportOverheadWriter(JavaFile[] allJavaFiles) {
+    this.allJavaFiles = allJavaFiles;
+    title = "Instrumentation Overhead";
+    cssFiles = new String[]{"css/index.css"};
+    includeScripts = new String[]{"https://ajax.googleapis.com/ajax/libs/jquery/3.6.3/jquery.min.js"};
+    bodyScripts = new String[]{"js/sorter.js"};
+  }
+
+  /**
+   * Generates the main content of the HTML document by calling {@link #sortedOverheadTable}.
+   */
+  @Override
+  public void body() {
+    sortedOverheadTable();
+  }
+
+  /**
+   * Appends a summary and a table of all methods sorted by their counter increments to the internal <code>content</code>.
+   * <p>
+   * For every method, the table shows the number of counters, the increments they executed (the sum of their hits),
+   * the share of all increments, and the counted block with the most hits.
+   * The saved increments are the hits of the derived and inferred blocks of the method.
+   * Methods without any hits are omitted.
+   */
+  public void sortedOverheadTable() {
+    List<MethodBlocks> methods = getMethodBlocks();
+    long totalIncrements = methods.stream().mapToLong(m -> getIncrements(m.blocks())).sum();
+    long totalSaved = methods.stream().mapToLong(m -> getSavedIncrements(m.blocks())).sum();
+    long totalInferred = methods.stream().mapToLong(m -> getInferredBlocks(m.blocks())).sum();
+    methods.sort(Comparator.comparingLong((MethodBlocks m) -> getIncrements(m.blocks())).reversed());
+    content.append(String.format("<p>Counter increments: %s, saved increments: %s (blocks inferred from the previous run: %d)</p>\n",
+        formatHitCount(totalIncrements), formatHitCount(totalSaved), totalInferred));
+    content.append("<table class=\"sortable\">\n")
+        .append("<tr>\n")
+        .append("<th>Method</th>\n")
+        .append("<th class=\"metric\">Counters</th>\n")
+        .append("<th class=\"metric desc\">Increments</th>\n")
+        .append("<th class=\"metric\">Share</th>\n")
+        .append("<th class=\"metric\">Hottest Counter</th>\n")
+        .append("<th class=\"metric\">Inferred Blocks</th>\n")
+        .append("<th class=\"metric\">Saved Increments</th>\n")
+        .append("</tr>\n");
+    for (MethodBlocks method : methods) {
+      long increments = getIncrements(method.blocks());
+      long saved = getSavedIncrements(method.blocks());
+      long counters = getCounters(method.blocks());
+      long inferred = getInferredBlocks(method.blocks());
+      if (increments == 0 && saved == 0) {
+        continue;
+      }
+      Block first = method.blocks().get(0);
+      Block hottest = method.blocks().stream()
+          .filter(ReportOverheadWriter::isCounted)
+          .max(Comparator.comparingLong(b -> b.hits))
+          .orElse(first);
+      Path sourceFileHref = IO.getReportDir().relativize(IO.getReportSourceFilePath(method.file().relativePath));
+      String sourceHref = IO.normalize(sourceFileHref);
+      double share = (totalIncrements > 0) ? 100.0 * increments / totalIncrements : 0;
+      content.append("<tr>\n")
+          .append(String.format("<td><a href=\"%s#%d\">%s</a></td>\n", sourceHref, first.beg.line(), method.name()))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%d</td>\n", counters, counters))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", increments, formatHitCount(increments)))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%.1f%%</td>\n", share, share))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\"><a href=\"%s#%d\">line %d</a> (%s)</td>\n",
+              hottest.hits, sourceHref, hottest.beg.line(), hottest.beg.line(), formatHitCount(hottest.hits)))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%d</td>\n", inferred, inferred))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", saved, formatHitCount(saved)))
+          .append("</tr>\n");
+    }
+    content.append("</table>\n");
+  }
+
+  /**
+   * Groups the blocks of all files by their method, in the order of their first block.
+   * Class-level blocks are grouped by their class.
+   *
+   * @return the list of method blocks
+   */
+  private List<MethodBlocks> getMethodBlocks() {
+    List<MethodBlocks> methods = new ArrayList<>();
+    for (JavaFile jFile : allJavaFiles) {
+      Map<Object, MethodBlocks> blocksByMethod = new IdentityHashMap<>();
+      for (Block block : jFile.foundBlocks) {
+        if (!block.blockType.hasCounter()) {
+          continue;
+        }
+        Object owner = (block.method != null) ? block.method : block.clazz;
+        MethodBlocks method = blocksByMethod.computeIfAbsent(owner, o -> {
+          String name = block.clazz.getName() + (block.method != null ? "::" + block.method.name : " (class-level)");
+          MethodBlocks newMethod = new MethodBlocks(name, jFile, new ArrayList<>());
+          methods.add(newMethod);
+          return newMethod;
+        });
+        method.blocks().add(block);
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Returns whether the given block has its own counter.
+   *
+   * @param block the block
+   * @return whether the block is neither derived, uncounted nor inferred
+   */
+  private static boolean isCounted(Block block) {
+    return !block.isDerived() && !block.uncounted && !block.isInferred();
+  }
+
+  /**
+   * Returns whether the hits of the given block were computed without its own counter.
+   *
+   * @param block the block
+   * @return whether the block is a derived (and not uncounted) or an inferred block
+   */
+  private static boolean isSaved(Block block) {
+    return block.isDerived() && !block.uncounted || block.isInferred();
+  }
+
+  /**
+   * Returns the number of counters of the given blocks.
+   *
+   * @param blocks the blocks of a method
+   * @return the number of blocks with their own counter
+   */
+  private static long getCounters(List<Block> blocks) {
+    return blocks.stream().filter(ReportOverheadWriter::isCounted).count();
+  }
+
+  /**
+   * Returns the number of inferred blocks among the given blocks.
+   *
+   * @param blocks the blocks of a method
+   * @return the number of blocks whose hits are inferred from the previous run
+   */
+  private static long getInferredBlocks(List<Block> blocks) {
+    return blocks.stream().filter(Block::isInferred).count();
+  }
+
+  /**
+   * Returns the number of counter increments executed for the given blocks.
+   *
+   * @param blocks the blocks of a method
+   * @return the sum of the hits of all blocks with their own counter
+   */
+  private static long getIncrements(List<Block> blocks) {
+    return blocks.stream().filter(ReportOverheadWriter::isCounted).mapToLong(b -> b.hits).sum();
+  }
+
+  /**
+   * Returns the number of counter increments saved by the given blocks.
+   *
+   * @param blocks the blocks of a method
+   * @return the sum of the hits of all derived and inferred blocks
+   */
+  private static long getSavedIncrements(List<Block> blocks) {
+    return blocks.stream().filter(ReportOverheadWriter::isSaved).mapToLong(b -> b.hits).sum();
+  }
+
+  /**
+   * Defines the output path for the generated HTML document as {@link IO#getReportOverheadPath}.
+   */
+  @Override
+  public Path getFileOutputPath() {
+    return IO.getReportOverheadPath();
+  }
+}
@@ -0,0 +1,155 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The writer class for the path profile page.
+ * <p>
+ * This page is only generated if paths were recorded with <code>--paths</code>.
+ * For every path region (a path-profiled method body or loop body), it lists the hottest paths
+ * with their number of executions, and shows the source code of the region with the blocks entered on each path highlighted.
+ */
+public class ReportPathsWriter extends AbstractHtmlWriter {
+  private static final int TOP_PATHS = 10;
+  private final JavaFile[] allJavaFiles;
+
+  /**
+   * Creates a new {@link ReportPathsWriter} object.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  public ReportPathsWriter(JavaFile[] allJavaFiles) {
+    this.allJavaFiles = allJavaFiles;
+    title = "Path Profiles";
+    cssFiles = new String[]{"css/index.css"};
+    includeScripts = new String[0];
+  }
+
+  /**
+   * Generates the main content of the HTML document by calling {@link #pathRegions}.
+   */
+  @Override
+  public void body() {
+    pathRegions();
+  }
+
+  /**
+   * Appends the hottest paths of all path regions, sorted by their number of executions, to the internal <code>content</code>.
+   */
+  public void pathRegions() {
+    List<Block> regions = new ArrayList<>();
+    Map<Block, JavaFile> fileByRegion = new IdentityHashMap<>();
+    for (JavaFile jFile : allJavaFiles) {
+      for (Block block : jFile.foundBlocks) {
+        if (block.pathCounts != null) {
+          regions.add(block);
+          fileByRegion.put(block, jFile);
+        }
+      }
+    }
+    regions.sort(Comparator.comparingLong(ReportPathsWriter::getExecutions).reversed());
+    for (Block region : regions) {
+      regionSection(region, fileByRegion.get(region));
+    }
+  }
+
+  /**
+   * Appends the heading, summary and hottest paths of the given path region.
+   *
+   * @param region the root block of the path region
+   * @param jFile  the java file containing the region
+   */
+  private void regionSection(Block region, JavaFile jFile) {
+    long executions = getExecutions(region);
+    Path sourceFileHref = IO.getReportDir().relativize(IO.getReportSourceFilePath(jFile.relativePath));
+    int firstLine = (region.loopBeg != null) ? region.loopBeg.line() : region.beg.line();
+    int lastLine = (region.loopEnd != null) ? region.loopEnd.line() : region.end.line();
+    String name = region.clazz.getName() + "::" + region.method.name;
+    if (region.loopBeg != null) {
+      name += " (loop in line " + firstLine + ")";
+    }
+    content.append(String.format("<h3><a href=\"%s#%d\">%s</a></h3>\n", IO.normalize(sourceFileHref), firstLine, name))
+        .append(String.format("<p>%s executions, %d of %s possible paths taken</p>\n",
+            ReportUtil.formatHitCount(executions), region.pathCounts.size(), ReportUtil.formatHitCount(region.pathCount)));
+    if (executions == 0) {
+      return;
+    }
+    List<String> lines;
+    try {
+      lines = Files.readString(jFile.sourceFile, StandardCharsets.ISO_8859_1).lines().toList();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    List<Block> regionBlocks = jFile.foundBlocks.stream().filter(b -> b.pathRegion == region).toList();
+    List<Map.Entry<Long, Long>> paths = new ArrayList<>(region.pathCounts.entrySet());
+    paths.sort(Map.Entry.<Long, Long>comparingByValue().reversed());
+    for (int rank = 0; rank < Math.min(TOP_PATHS, paths.size()); rank++) {
+      Map.Entry<Long, Long> path = paths.get(rank);
+      double share = 100.0 * path.getValue() / executions;
+      content.append(String.format("<p>Path %d: %s executions (%.1f%%)</p>\n", rank + 1, ReportUtil.formatHitCount(path.getValue()), share))
+          .append(pathSource(lines, firstLine, lastLine, regionBlocks, region.getPathBlocks(path.getKey())));
+    }
+  }
+
+  /**
+   * Returns the source code of the path region, with the lines of the entered blocks highlighted.
+   * <p>
+   * Every line belongs to the innermost block of the region containing it (the latest one starting before it),
+   * and is marked as on the path if this block was entered.
+   *
+   * @param lines         the lines of the source file
+   * @param firstLine     the first line of the region
+   * @param lastLine      the last line of the region
+   * @param regionBlocks  all blocks of the region, in block order
+   * @param enteredBlocks the blocks entered on the path
+   * @return the <code>pre</code> element HTML code
+   */
+  private static String pathSource(List<String> lines, int firstLine, int lastLine, List<Block> regionBlocks, List<Block> enteredBlocks) {
+    Set<Block> entered = Collections.newSetFromMap(new IdentityHashMap<>());
+    entered.addAll(enteredBlocks);
+    StringBuilder pre = new StringBuilder("<pre class=\"path\">");
+    for (int line = firstLine; line <= lastLine && line <= lines.size(); line++) {
+      Block owner = null;
+      for (Block block : regionBlocks) {
+        if (block.beg.line() <= line && line <= block.end.line()) {
+          owner = block;
+        }
+      }
+      String cssClass = (owner == null || entered.contains(owner)) ? "on" : "off";
+      pre.append(String.format("<span class=\"%s\">%4d  %s</span>\n", cssClass, line, ReportUtil.escapeHtmlTagCharacters(lines.get(line - 1))));
+    }
+    return pre.append("</pre>\n").toString();
+  }
+
+  /**
+   * Returns the number of executions of the given path region.
+   *
+   * @param region the root block of the path region
+   * @return the sum of the counts of all paths
+   */
+  private static long getExecutions(Block region) {
+    return region.pathCounts.values().stream().mapToLong(Long::longValue).sum();
+  }
+
+  /**
+   * Defines the output path for the generated HTML document as {@link IO#getReportPathsPath}.
+   */
+  @Override
+  public Path getFileOutputPath() {
+    return IO.getReportPathsPath();
+  }
+}
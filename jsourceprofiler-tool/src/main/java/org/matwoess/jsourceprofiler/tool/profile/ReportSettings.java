@@ -0,0 +1,45 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import java.util.List;
+
+/**
+ * Represents the settings shared by all files of a report, passed on to every {@link AbstractHtmlWriter}.
+ *
+ * @param samplingRate the sampling rate of the counts (1 if not sampled)
+ * @param coverageOnly whether only the coverage of blocks was recorded (the counts are 0 or 1)
+ * @param showTimes    whether method times are available
+ * @param showCpuTime  whether the CPU times of methods are available
+ * @param threadNames  the names of the threads the block hits were counted for, or null if not available
+ * @param callEdges    the counted calls between methods, or null if not available
+ * @param showLoops    whether the iteration counts of loop executions are available
+ * @param timeline     the recorded timeline, or null if not available
+ */
+public record ReportSettings(int samplingRate, boolean coverageOnly, boolean showTimes, boolean showCpuTime, String[] threadNames, List<CallEdge> callEdges, boolean showLoops, Timeline timeline) {
+
+  /**
+   * Returns the settings of a report that only shows the block counts.
+   *
+   * @param samplingRate the sampling rate of the counts (1 if not sampled)
+   * @param coverageOnly whether only the coverage of blocks was recorded
+   * @return the new settings
+   */
+  public static ReportSettings countsOnly(int samplingRate, boolean coverageOnly) {
+    return new ReportSettings(samplingRate, coverageOnly, false, false, null, null, false, null);
+  }
+
+  /**
+   * Copies the settings into the fields of the given writer.
+   *
+   * @param writer the HTML writer of a report file
+   */
+  public void applyTo(AbstractHtmlWriter writer) {
+    writer.samplingRate = samplingRate;
+    writer.coverageOnly = coverageOnly;
+    writer.showTimes = showTimes;
+    writer.showCpuTime = showCpuTime;
+    writer.threadNames = threadNames;
+    writer.callEdges = callEdges;
+    writer.showLoops = showLoops;
+    writer.timeline = timeline;
+  }
+}
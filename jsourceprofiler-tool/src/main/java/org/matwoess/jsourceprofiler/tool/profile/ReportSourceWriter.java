@@ -11,8 +11,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -20,7 +23,10 @@ import java.util.stream.Collectors;
  * The writer class for the annotated source code report file of a java file.
  */
 public class ReportSourceWriter extends AbstractHtmlWriter {
+  private static final int MAX_THREADS_IN_TITLE = 10;
   private final JavaFile javaFile;
+  private final Map<Block, String> threadDistributions = new HashMap<>();
+  private final Map<Block, String> iterationDistributions = new HashMap<>();
 
   /**
    * Creates a new {@link ReportSourceWriter} object for the given java file.
@@ -111,13 +117,16 @@ public class ReportSourceWriter extends AbstractHtmlWriter {
 
   /**
    * Removes empty spans and spans with only whitespace from the given annotated code.
+   * <p>
+   * Empty spans are removed first, as they can separate the leading whitespace of a line from its first span
+   * (e.g. where a code region was split at the start of the line).
    *
    * @param code the annotated code
    * @return the post-processed annotated code
    */
   private String postProcessAnnotatedCode(String code) {
-    code = blankStartSpanBeforeSpanPattern.matcher(code).replaceAll("$2$1$3");
     code = emptySpanPattern.matcher(code).replaceAll("");
+    code = blankStartSpanBeforeSpanPattern.matcher(code).replaceAll("$2$1$3");
     return code;
   }
 
@@ -199,6 +208,15 @@ public class ReportSourceWriter extends AbstractHtmlWriter {
    * If the code region is not null, the hit count is overridden with the region hit count.
    * <p>
    * In the title attribute, the hit count is shown for information on hover.
+   * If only the coverage was recorded, the title only states whether the block was covered.
+   * Then the hits of dependent control break blocks are unknown, so a region is covered if its block is.
+   * Recorded exceptional exits before the region are listed after the hits of the dependent blocks.
+   * Blocks whose counter was promoted to atomic increments (in the adaptive counter mode) are marked as shared.
+   * Uncounted blocks (and regions depending on them) are marked as not counted, as their hits are unknown.
+   * The hits of inferred blocks are marked as an estimate, inferred from the previous run.
+   * If the block hits were counted per thread, their distribution is listed as well (see {@link #threadDistribution}).
+   * For loop blocks with a recorded histogram, the executions are listed by their iteration count
+   * (see {@link #iterationDistribution}).
    *
    * @param activeBlocks the list of active blocks
    * @param block        the innermost active block
@@ -206,26 +224,103 @@ public class ReportSourceWriter extends AbstractHtmlWriter {
    * @return the HTML span element
    */
   private String codeSpan(List<Block> activeBlocks, Block block, CodeRegion region) {
-    long hits = (region != null) ? region.getHitCount() : block.hits;
-    String coverageClass = hits > 0 ? "c" : "nc";
-    title = ReportUtil.formatHitCount(hits) + " hit" + (hits == 1 ? "" : "s");
-    String classes = "b " + (region != null ? "r " : "");
+    long hits = (region != null && !coverageOnly) ? region.getHitCount() : block.hits;
+    boolean counted = !block.uncounted && (region == null || region.isCounted());
+    String coverageClass = !counted ? "u" : hits > 0 ? "c" : "nc";
+    if (!counted) {
+      title = "not counted (only the method invocations are)";
+    } else if (coverageOnly) {
+      title = hits > 0 ? "covered" : "not covered";
+    } else {
+      title = formatHitCount(hits) + " hit" + (hits == 1 ? "" : "s");
+    }
+    String classes = "b " + (region != null ? "r " : "") + (block.shared ? "s " : "");
     classes += activeBlocks.stream().map(b -> "b" + b.id).collect(Collectors.joining(" "));
     if (region != null) {
       classes += " r" + activeBlocks.get(activeBlocks.size() - 1).id + "_" + region.id;
-      if (!region.dependentBlocks.isEmpty()) {
+      if ((!region.dependentBlocks.isEmpty() || region.exceptionalExits > 0) && !coverageOnly && counted) {
         title += " ("
-            + ReportUtil.formatHitCount(region.block.hits) + " - "
+            + formatHitCount(region.block.hits)
             + region.dependentBlocks.stream()
-            .map(b -> ReportUtil.formatHitCount(b.hits))
-            .collect(Collectors.joining(" - "))
+            .map(b -> " - " + formatHitCount(b.hits))
+            .collect(Collectors.joining())
+            + (region.exceptionalExits > 0 ? " - " + formatHitCount(region.exceptionalExits) + " thrown" : "")
             + ")";
-        classes = getDependentBlockClasses(region) + " " + classes;
+        if (!region.dependentBlocks.isEmpty()) {
+          classes = getDependentBlockClasses(region) + " " + classes;
+        }
       }
     }
+    if (block.isInferred() && counted && !coverageOnly) {
+      title = (samplingRate > 1 ? "" : "~") + title + " [inferred from the previous run]";
+    }
+    if (block.shared) {
+      title += " [shared by multiple threads]";
+    }
+    if (threadNames != null && block.threadHits != null) {
+      title += threadDistributions.computeIfAbsent(block, this::threadDistribution);
+    }
+    if (block.loopHistogram != null) {
+      title += iterationDistributions.computeIfAbsent(block, this::iterationDistribution);
+    }
     return String.format("<span class=\"%s %s\" title=\"%s\">", coverageClass, classes, title);
   }
 
+  /**
+   * Returns the distribution of the hits of the given block over the threads, to be appended to a title attribute.
+   * <p>
+   * Every thread with at least one hit is listed on its own line, starting with the most frequent one.
+   * Only the first {@value #MAX_THREADS_IN_TITLE} threads are listed.
+   *
+   * @param block the block to list the per-thread hits for
+   * @return the title attribute lines with the per-thread hits
+   */
+  private String threadDistribution(Block block) {
+    List<Integer> threads = new ArrayList<>();
+    long totalHits = 0;
+    for (int t = 0; t < block.threadHits.length; t++) {
+      if (block.threadHits[t] > 0) {
+        threads.add(t);
+        totalHits += block.threadHits[t];
+      }
+    }
+    if (threads.isEmpty()) {
+      return "";
+    }
+    threads.sort(Comparator.comparingLong((Integer t) -> block.threadHits[t]).reversed());
+    StringBuilder builder = new StringBuilder("&#10;Block entries by thread:");
+    for (int t : threads.subList(0, Math.min(threads.size(), MAX_THREADS_IN_TITLE))) {
+      builder.append(String.format("&#10;  %s: %s (%.1f%%)", ReportUtil.escapeHtml(threadNames[t]),
+          formatHitCount(block.threadHits[t]), 100.0 * block.threadHits[t] / totalHits));
+    }
+    if (threads.size() > MAX_THREADS_IN_TITLE) {
+      builder.append(String.format("&#10;  (%d more threads)", threads.size() - MAX_THREADS_IN_TITLE));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Returns the executions of the given loop block by their iteration count, to be appended to a title attribute.
+   * <p>
+   * Every non-empty bucket of the loop histogram is listed on its own line, with its range of iteration counts.
+   *
+   * @param block the loop block to list the executions for
+   * @return the title attribute lines with the loop executions
+   */
+  private String iterationDistribution(Block block) {
+    long executions = Arrays.stream(block.loopHistogram).sum();
+    StringBuilder builder = new StringBuilder(String.format("&#10;%s loop execution%s by iterations:",
+        ReportUtil.formatHitCount(executions), executions == 1 ? "" : "s"));
+    for (int bucket = 0; bucket < block.loopHistogram.length; bucket++) {
+      long count = block.loopHistogram[bucket];
+      if (count > 0) {
+        builder.append(String.format("&#10;  %s: %s (%.1f%%)", ReportUtil.formatIterationRange(bucket),
+            ReportUtil.formatHitCount(count), 100.0 * count / executions));
+      }
+    }
+    return builder.toString();
+  }
+
   /**
    * Returns the classes for all the dependent control breaks of the given code region.
    *
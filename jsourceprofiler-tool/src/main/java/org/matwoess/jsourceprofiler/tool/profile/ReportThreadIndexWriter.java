@@ -0,0 +1,190 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.JClass;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+import org.matwoess.jsourceprofiler.tool.model.Method;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The writer class for the thread overview page.
+ * <p>
+ * This page is only generated in the per-thread counter mode.
+ * It lists the block hits of every thread (or group of threads),
+ * and how the invocations of every method are distributed over the threads.
+ */
+public class ReportThreadIndexWriter extends AbstractHtmlWriter {
+  private final JavaFile[] allJavaFiles;
+
+  /**
+   * Creates a new {@link ReportThreadIndexWriter} object.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  public ReportThreadIndexWriter(JavaFile[] allJavaFiles) {
+    this.allJavaFiles = allJavaFiles;
+    title = "Thread Overview";
+    cssFiles = new String[]{"css/index.css"};
+    includeScripts = new String[]{"https://ajax.googleapis.com/ajax/libs/jquery/3.6.3/jquery.min.js"};
+    bodyScripts = new String[]{"js/sorter.js"};
+  }
+
+  /**
+   * Generates the main content of the HTML document
+   * by calling {@link #sortedThreadTable} and {@link #sortedMethodTable}.
+   */
+  @Override
+  public void body() {
+    sortedThreadTable();
+    content.append("<h3>Method Invocations by Thread</h3>\n");
+    sortedMethodTable();
+  }
+
+  /**
+   * Appends a table of all threads sorted by their number of block hits to the internal <code>content</code>.
+   */
+  public void sortedThreadTable() {
+    List<Block> countedBlocks = getCountedBlocks();
+    long[] blockHits = new long[threadNames.length];
+    long[] methodCalls = new long[threadNames.length];
+    int[] coveredBlocks = new int[threadNames.length];
+    for (Block block : countedBlocks) {
+      for (int t = 0; t < threadNames.length; t++) {
+        long hits = block.threadHits[t];
+        blockHits[t] += hits;
+        if (block.blockType.isMethod()) {
+          methodCalls[t] += hits;
+        }
+        if (hits > 0) {
+          coveredBlocks[t]++;
+        }
+      }
+    }
+    long totalBlockHits = Arrays.stream(blockHits).sum();
+    content.append("<table class=\"sortable\">\n")
+        .append("<tr>\n")
+        .append("<th>Thread</th>\n")
+        .append("<th class=\"metric desc\">Block Hits</th>\n")
+        .append("<th class=\"metric\">Share of Block Hits</th>\n")
+        .append("<th class=\"metric\">Method Calls</th>\n")
+        .append("<th class=\"metric\">Code Block Coverage</th>\n")
+        .append("</tr>\n");
+    Integer[] sortedThreads = sortedByDescendingValue(blockHits);
+    for (int t : sortedThreads) {
+      double share = (totalBlockHits > 0) ? 100.0 * blockHits[t] / totalBlockHits : 0;
+      ComponentCoverage blockCoverage = new ComponentCoverage(coveredBlocks[t], countedBlocks.size());
+      content.append("<tr>\n")
+          .append(String.format("<td>%s</td>\n", ReportUtil.escapeHtml(threadNames[t])))
+          .append(hitCountCell(blockHits[t]))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%.1f%%</td>\n", share, share))
+          .append(hitCountCell(methodCalls[t]))
+          .append(String.format("<td class=\"metric coverage\" data-percentage=\"%s\" data-total=\"%s\">%s</td>\n",
+              blockCoverage.percentage(), blockCoverage.total(), blockCoverage))
+          .append("</tr>\n");
+    }
+    content.append("</table>\n");
+  }
+
+  /**
+   * Appends a table of all invoked methods with their invocations by each thread to the internal <code>content</code>.
+   * <p>
+   * The threads are ordered by their total number of method calls, the methods by their total number of invocations.
+   */
+  public void sortedMethodTable() {
+    long[] methodCalls = new long[threadNames.length];
+    for (Block block : getCountedBlocks()) {
+      if (block.blockType.isMethod()) {
+        for (int t = 0; t < threadNames.length; t++) {
+          methodCalls[t] += block.threadHits[t];
+        }
+      }
+    }
+    Integer[] sortedThreads = sortedByDescendingValue(methodCalls);
+    content.append("<table class=\"sortable\">\n")
+        .append("<tr>\n")
+        .append("<th>Method</th>\n")
+        .append("<th class=\"metric desc\">Invocations</th>\n");
+    for (int t : sortedThreads) {
+      content.append(String.format("<th class=\"metric\">%s</th>\n", ReportUtil.escapeHtml(threadNames[t])));
+    }
+    content.append("</tr>\n");
+    List<Method> methods = new ArrayList<>();
+    Map<Method, JavaFile> fileByMethod = new IdentityHashMap<>(); // overloaded methods are equal
+    for (JavaFile jFile : allJavaFiles) {
+      for (JClass clazz : jFile.topLevelClasses) {
+        for (Method meth : clazz.getMethodsRecursive()) {
+          methods.add(meth);
+          fileByMethod.put(meth, jFile);
+        }
+      }
+    }
+    List<Method> sortedMethods = methods.stream()
+        .filter(meth -> !meth.isAbstract() && meth.getMethodBlock().hits > 0 && meth.getMethodBlock().threadHits != null)
+        .sorted(Comparator.comparingLong((Method m) -> m.getMethodBlock().hits).reversed())
+        .toList();
+    for (Method meth : sortedMethods) {
+      Block methBlock = meth.getMethodBlock();
+      Path sourceFileHref = IO.getReportDir().relativize(IO.getReportSourceFilePath(fileByMethod.get(meth).relativePath));
+      String lineNrRef = IO.normalize(sourceFileHref) + "#" + methBlock.beg.line();
+      content.append("<tr>\n")
+          .append(String.format("<td><a href=\"%s\">%s</a></td>\n", lineNrRef, methBlock.clazz.getName() + "::" + meth.name))
+          .append(hitCountCell(methBlock.hits));
+      for (int t : sortedThreads) {
+        content.append(hitCountCell(methBlock.threadHits[t]));
+      }
+      content.append("</tr>\n");
+    }
+    content.append("</table>\n");
+  }
+
+  /**
+   * Returns a sortable table cell for the given hit count.
+   *
+   * @param hits the hit count
+   * @return the table cell HTML code
+   */
+  private String hitCountCell(long hits) {
+    return String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", hits, formatHitCount(hits));
+  }
+
+  /**
+   * Returns the thread indices, sorted by the given per-thread values in descending order.
+   *
+   * @param values the value of every thread
+   * @return the sorted thread indices
+   */
+  private static Integer[] sortedByDescendingValue(long[] values) {
+    Integer[] indices = new Integer[values.length];
+    Arrays.setAll(indices, i -> i);
+    Arrays.sort(indices, (a, b) -> Long.compare(values[b], values[a]));
+    return indices;
+  }
+
+  /**
+   * Returns all blocks with a counter and per-thread hit counts.
+   *
+   * @return the list of all counted blocks
+   */
+  private List<Block> getCountedBlocks() {
+    return Arrays.stream(allJavaFiles)
+        .flatMap(jFile -> jFile.foundBlocks.stream())
+        .filter(block -> block.blockType.hasCounter() && block.threadHits != null)
+        .toList();
+  }
+
+  /**
+   * Defines the output path for the generated HTML document as {@link IO#getReportThreadIndexPath}.
+   */
+  @Override
+  public Path getFileOutputPath() {
+    return IO.getReportThreadIndexPath();
+  }
+}
@@ -0,0 +1,153 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.JClass;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+import org.matwoess.jsourceprofiler.tool.model.Method;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The writer class for the timeline page.
+ * <p>
+ * This page is only generated if a timeline was recorded.
+ * It lists all executed top-level classes and methods with a sparkline of their block entries over time,
+ * showing when they became hot (or cooled down) during the program run.
+ */
+public class ReportTimelineWriter extends AbstractHtmlWriter {
+  private static final int SPARKLINE_HEIGHT = 20;
+  private final JavaFile[] allJavaFiles;
+
+  /**
+   * Creates a new {@link ReportTimelineWriter} object.
+   *
+   * @param allJavaFiles the list of all java files contained in the project
+   */
+  public ReportTimelineWriter(JavaFile[] allJavaFiles) {
+    this.allJavaFiles = allJavaFiles;
+    title = "Timeline";
+    cssFiles = new String[]{"css/index.css"};
+    includeScripts = new String[]{"https://ajax.googleapis.com/ajax/libs/jquery/3.6.3/jquery.min.js"};
+    bodyScripts = new String[]{"js/sorter.js"};
+  }
+
+  /**
+   * Generates the main content of the HTML document.
+   * <p>
+   * A short summary of the recorded snapshots is followed by the class table and the method table.
+   */
+  @Override
+  public void body() {
+    long[] times = timeline.times();
+    long duration = (times.length > 0) ? times[times.length - 1] : 0;
+    content.append(String.format("<p>%d snapshots every %d ms, over %s.", times.length, timeline.intervalMillis(),
+        ReportUtil.formatTime(duration * 1_000_000L)));
+    if (timeline.droppedSnapshots() > 0) {
+      content.append(String.format(" The first %d snapshots were dropped (ring buffer full).", timeline.droppedSnapshots()));
+    }
+    content.append("</p>\n");
+    Map<JClass, JavaFile> fileByClass = new IdentityHashMap<>();
+    Map<Method, JavaFile> fileByMethod = new IdentityHashMap<>();
+    for (JavaFile jFile : allJavaFiles) {
+      jFile.topLevelClasses.forEach(clazz -> fileByClass.put(clazz, jFile));
+      for (Block block : jFile.foundBlocks) {
+        if (block.method != null) {
+          fileByMethod.put(block.method, jFile);
+        }
+      }
+    }
+    content.append("<h2>Classes</h2>\n");
+    sortedSeriesTable("Class", timeline.classSeries(), clazz -> {
+      Path methIdxHref = IO.getReportMethodIndexPath(clazz.name).getFileName();
+      return String.format("<a href=\"%s\">%s</a>", IO.normalize(methIdxHref), clazz.getName());
+    });
+    content.append("<h2>Methods</h2>\n");
+    sortedSeriesTable("Method", timeline.methodSeries(), method -> {
+      Block methodBlock = method.getMethodBlock();
+      Path sourceFileHref = IO.getReportDir().relativize(IO.getReportSourceFilePath(fileByMethod.get(method).relativePath));
+      String lineNrRef = IO.normalize(sourceFileHref) + "#" + methodBlock.beg.line();
+      return String.format("<a href=\"%s\">%s</a>", lineNrRef, methodBlock.clazz.getName() + "::" + method.name);
+    });
+  }
+
+  /**
+   * Appends a table of the given series sorted by their total block entries to the internal <code>content</code>.
+   * <p>
+   * Every row shows the total and the peak block entries per snapshot interval (with its time), and a sparkline.
+   *
+   * @param header    the header of the name column
+   * @param series    the block entries per snapshot, by their class or method
+   * @param linkCell  the function returning the linked name of a class or method
+   * @param <T>       the type of the series keys
+   */
+  private <T> void sortedSeriesTable(String header, Map<T, long[]> series, Function<T, String> linkCell) {
+    List<Map.Entry<T, long[]>> entries = series.entrySet().stream()
+        .sorted(Comparator.comparingLong((Map.Entry<T, long[]> e) -> Arrays.stream(e.getValue()).sum()).reversed())
+        .toList();
+    content.append("<table class=\"sortable\">\n")
+        .append("<tr>\n")
+        .append(String.format("<th>%s</th>\n", header))
+        .append("<th class=\"metric desc\">Block Entries</th>\n")
+        .append("<th class=\"metric\">Peak Entries</th>\n")
+        .append("<th class=\"metric\">Peak Time</th>\n")
+        .append("<th>Timeline</th>\n")
+        .append("</tr>\n");
+    for (Map.Entry<T, long[]> entry : entries) {
+      long[] values = entry.getValue();
+      long total = Arrays.stream(values).sum() * samplingRate;
+      int peak = 0;
+      for (int s = 1; s < values.length; s++) {
+        if (values[s] > values[peak]) {
+          peak = s;
+        }
+      }
+      long peakEntries = values[peak] * samplingRate;
+      long peakTime = timeline.times()[peak];
+      content.append("<tr>\n")
+          .append(String.format("<td>%s</td>\n", linkCell.apply(entry.getKey())))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", total, formatHitCount(total)))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", peakEntries, formatHitCount(peakEntries)))
+          .append(String.format("<td class=\"metric\" data-total=\"%s\">%s</td>\n", peakTime,
+              ReportUtil.formatTime(peakTime * 1_000_000L)))
+          .append(sparklineCell(values))
+          .append("</tr>\n");
+    }
+    content.append("</table>\n");
+  }
+
+  /**
+   * Returns a table cell with an SVG sparkline of the given block entries over the snapshot times.
+   * <p>
+   * The line is scaled to the highest value of the series, so it shows the relative activity over time.
+   *
+   * @param values the block entries per snapshot
+   * @return the table cell HTML code
+   */
+  private String sparklineCell(long[] values) {
+    long[] times = timeline.times();
+    long maxValue = Math.max(1, Arrays.stream(values).max().orElse(0));
+    long width = Math.max(1, times[times.length - 1]);
+    StringBuilder points = new StringBuilder();
+    for (int s = 0; s < values.length; s++) {
+      double y = SPARKLINE_HEIGHT - (double) SPARKLINE_HEIGHT * values[s] / maxValue;
+      points.append(String.format("%d,%.1f ", times[s], y));
+    }
+    return String.format("<td class=\"sparkline\"><svg viewBox=\"0 0 %d %d\" preserveAspectRatio=\"none\">"
+        + "<polyline points=\"%s\"/></svg></td>\n", width, SPARKLINE_HEIGHT, points.toString().trim());
+  }
+
+  /**
+   * Defines the output path for the generated HTML document as {@link IO#getReportTimelinePath}.
+   */
+  @Override
+  public Path getFileOutputPath() {
+    return IO.getReportTimelinePath();
+  }
+}
@@ -15,6 +15,32 @@ public class ReportUtil {
     return String.format("%,d", number);
   }
 
+  /**
+   * Format a duration in nanoseconds as a string in milliseconds, with three decimal places.
+   *
+   * @param nanos the duration in nanoseconds
+   * @return the formatted duration string
+   */
+  static String formatTime(long nanos) {
+    return String.format("%,.3f ms", nanos / 1e6);
+  }
+
+  /**
+   * Format the range of iteration counts of a loop histogram bucket, like <code>4-7</code> for bucket 3.
+   * <p>
+   * Bucket 0 contains loop executions without iterations, bucket <i>k</i> those with 2<sup>k-1</sup> to 2<sup>k</sup>-1 iterations.
+   *
+   * @param bucket the index of the histogram bucket
+   * @return the formatted iteration range string
+   */
+  static String formatIterationRange(int bucket) {
+    if (bucket <= 1) {
+      return String.valueOf(bucket);
+    }
+    long from = 1L << (bucket - 1);
+    return formatHitCount(from) + "-" + formatHitCount(2 * from - 1);
+  }
+
   /**
    * Escapes the HTML tag characters <code>&lt;</code> and <code>&gt;</code> in the given code.
    *
@@ -24,4 +50,14 @@ public class ReportUtil {
   static String escapeHtmlTagCharacters(String code) {
     return code.replace("<", "&lt;").replace(">", "&gt;");
   }
+
+  /**
+   * Escapes the given text to be used inside an HTML attribute value or element.
+   *
+   * @param text the text to escape
+   * @return the escaped text
+   */
+  static String escapeHtml(String text) {
+    return escapeHtmlTagCharacters(text.replace("&", "&amp;")).replace("\"", "&quot;");
+  }
 }
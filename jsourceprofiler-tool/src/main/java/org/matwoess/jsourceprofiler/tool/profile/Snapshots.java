@@ -0,0 +1,97 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.common.IO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Helper class to access the counter snapshots written by a running instrumented program.
+ * <p>
+ * Snapshots are stored in the {@link IO#getSnapshotsDir() snapshots directory}
+ * and are identified by their (1-based) sequence number.
+ * They have the same format as the counts file.
+ */
+public class Snapshots {
+  private static final Pattern SNAPSHOT_FILE_NAME = Pattern.compile("counts-(\\d+)\\.dat");
+
+  /**
+   * Returns the sequence numbers of all existing snapshots in ascending order.
+   *
+   * @return the list of snapshot sequence numbers, empty if no snapshots were written
+   */
+  public static List<Integer> getSequenceNumbers() {
+    Path snapshotsDir = IO.getSnapshotsDir();
+    if (!snapshotsDir.toFile().isDirectory()) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(snapshotsDir)) {
+      return files
+          .map(file -> SNAPSHOT_FILE_NAME.matcher(file.getFileName().toString()))
+          .filter(Matcher::matches)
+          .map(matcher -> Integer.parseInt(matcher.group(1)))
+          .sorted()
+          .toList();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads the block counts for the given snapshot selection.
+   * <p>
+   * The selection is either a single snapshot (<code>n</code> or <code>latest</code>),
+   * or a range of two snapshots (<code>n..m</code>).
+   * For a range, the counts of the first snapshot are subtracted from the counts of the second,
+   * to get the hit counts of the time span between the two snapshots.
+   *
+   * @param selection the snapshot selection string
+   * @return the block counts for the selection
+   * @throws IllegalArgumentException if a selected snapshot does not exist
+   */
+  public static long[] readCounts(String selection) throws IllegalArgumentException {
+    String[] parts = selection.split("\\.\\.");
+    long[] counts = readSnapshot(parts[parts.length - 1]);
+    if (parts.length == 1) {
+      return counts;
+    }
+    long[] baseCounts = readSnapshot(parts[0]);
+    if (baseCounts.length != counts.length) {
+      throw new RuntimeException("Mismatching entry counts in snapshots: " + selection);
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] -= baseCounts[i];
+    }
+    return counts;
+  }
+
+  /**
+   * Reads the counts of a single snapshot.
+   *
+   * @param snapshot the sequence number of the snapshot or <code>latest</code>
+   * @return the block counts of the snapshot
+   * @throws IllegalArgumentException if the snapshot does not exist
+   */
+  private static long[] readSnapshot(String snapshot) throws IllegalArgumentException {
+    int sequenceNumber;
+    if (snapshot.equals("latest")) {
+      List<Integer> sequenceNumbers = getSequenceNumbers();
+      if (sequenceNumbers.isEmpty()) {
+        throw new IllegalArgumentException("No snapshots found in: " + IO.getSnapshotsDir());
+      }
+      sequenceNumber = sequenceNumbers.get(sequenceNumbers.size() - 1);
+    } else {
+      sequenceNumber = Integer.parseInt(snapshot);
+    }
+    Path snapshotPath = IO.getSnapshotPath(sequenceNumber);
+    if (!snapshotPath.toFile().isFile()) {
+      throw new IllegalArgumentException("Snapshot not found: " + snapshotPath);
+    }
+    return Profiler.readCounts(snapshotPath);
+  }
+}
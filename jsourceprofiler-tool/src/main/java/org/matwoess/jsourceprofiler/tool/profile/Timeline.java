@@ -0,0 +1,20 @@
+package org.matwoess.jsourceprofiler.tool.profile;
+
+import org.matwoess.jsourceprofiler.tool.model.JClass;
+import org.matwoess.jsourceprofiler.tool.model.Method;
+
+import java.util.Map;
+
+/**
+ * Represents the recorded timeline of the block entries, aggregated per method and per top-level class.
+ * <p>
+ * Every series contains the number of block entries between the previous snapshot and the snapshot at the same index.
+ *
+ * @param intervalMillis   the interval between two snapshots in milliseconds
+ * @param droppedSnapshots the number of oldest snapshots that were overwritten in the ring buffer of the program
+ * @param times            the time of every snapshot in milliseconds since the program start
+ * @param methodSeries     the block entries of every executed method
+ * @param classSeries      the block entries of every executed top-level class
+ */
+public record Timeline(int intervalMillis, int droppedSnapshots, long[] times, Map<Method, long[]> methodSeries, Map<JClass, long[]> classSeries) {
+}
@@ -0,0 +1,46 @@
+// Builds the expandable call tree from the call graph data of the page using jQuery.
+$(document).ready(function () {
+  appendCallNodes($('#calltree'), callGraph.roots, []);
+});
+
+/**
+ * Appends a node for every callee of the given call edges to a list of the call tree.
+ *
+ * A node can be expanded by clicking on it, which appends the nodes for its own callees.
+ * They are only created once, when the node is expanded for the first time.
+ * Recursive calls are marked, but not expanded, as the tree would be infinite.
+ *
+ * @param list  the <code>ul</code> element to append the nodes to
+ * @param edges the call edges as <code>[method index, calls]</code> pairs
+ * @param path  the method indices of all ancestor nodes
+ */
+function appendCallNodes(list, edges, path) {
+  for (const [callee, calls] of edges) {
+    const method = callGraph.methods[callee];
+    const isRecursive = path.includes(callee);
+    const isExpandable = !isRecursive && callGraph.callees[callee].length > 0;
+    const node = $('<li>');
+    const toggle = $('<span class="toggle">').text(isExpandable ? '▸' : '•');
+    node.append(toggle)
+      .append($('<a>').attr('href', method.href).text(method.name))
+      .append($('<span class="calls">').text(` ${calls.toLocaleString('en-US')} calls`))
+      .append($('<a class="details">').attr('href', '#' + method.anchor).text('callers'));
+    if (isRecursive) {
+      node.append($('<span class="recursive">').text('(recursive)'));
+    }
+    if (isExpandable) {
+      toggle.addClass('expandable').click(function () {
+        let children = node.children('ul');
+        if (children.length === 0) {
+          children = $('<ul>');
+          appendCallNodes(children, callGraph.callees[callee], path.concat(callee));
+          node.append(children);
+        } else {
+          children.toggle();
+        }
+        toggle.text(children.is(':visible') ? '▾' : '▸');
+      });
+    }
+    list.append(node);
+  }
+}
@@ -4,12 +4,15 @@ import org.matwoess.jsourceprofiler.common.OS;
 import org.matwoess.jsourceprofiler.common.RunMode;
 import org.junit.jupiter.api.Test;
 import org.matwoess.jsourceprofiler.tool.cli.Arguments;
+import org.matwoess.jsourceprofiler.tool.cli.CounterMode;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -60,28 +63,28 @@ public class ArgumentsTest {
   @Test
   public void testDefaultMode() {
     Arguments args = Arguments.parse(new String[]{simpleExampleFile.toString()});
-    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, false, false, null);
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.DEFAULT, false, null);
     assertEquals(expected, args);
   }
 
   @Test
   public void testDefaultMode_withFolder() {
     Arguments args = Arguments.parse(new String[]{"-d", samplesFolder.toString(), simpleExampleFile.toString()});
-    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, samplesFolder, false, false, null);
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, samplesFolder, CounterMode.DEFAULT, false, null);
     assertEquals(expected, args);
   }
 
   @Test
   public void testDefaultMode_withArgument() {
     Arguments args = Arguments.parse(new String[]{algorithmsExampleFile.toString(), "10"});
-    Arguments expected = new Arguments(RunMode.DEFAULT, algorithmsExampleFile, null, false, false, new String[]{"10"});
+    Arguments expected = new Arguments(RunMode.DEFAULT, algorithmsExampleFile, null, CounterMode.DEFAULT, false, new String[]{"10"});
     assertEquals(expected, args);
   }
 
   @Test
   public void testDefaultMode_withFolder_withArgument() {
     Arguments args = Arguments.parse(new String[]{"-d", samplesFolder.toString(), algorithmsExampleFile.toString(), "20"});
-    Arguments expected = new Arguments(RunMode.DEFAULT, algorithmsExampleFile, samplesFolder, false, false, new String[]{"20"});
+    Arguments expected = new Arguments(RunMode.DEFAULT, algorithmsExampleFile, samplesFolder, CounterMode.DEFAULT, false, new String[]{"20"});
     assertEquals(expected, args);
   }
 
@@ -151,7 +154,7 @@ public class ArgumentsTest {
 
   @Test
   public void testReportOnly() {
-    Arguments expected = new Arguments(RunMode.REPORT_ONLY, null, null, false, false, null);
+    Arguments expected = new Arguments(RunMode.REPORT_ONLY, null, null, CounterMode.DEFAULT, false, null);
     assertEquals(expected, Arguments.parse(new String[]{"-r"}));
   }
 
@@ -164,14 +167,14 @@ public class ArgumentsTest {
 
   @Test
   public void testInstrumentOnly() {
-    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, simpleExampleFile, null, false, false, null);
+    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, simpleExampleFile, null, CounterMode.DEFAULT, false, null);
     assertEquals(expected, Arguments.parse(new String[]{"-i", simpleExampleFile.toString()}));
     assertEquals(expected, Arguments.parse(new String[]{"--instrument-only", simpleExampleFile.toString()}));
   }
 
   @Test
   public void testInstrumentOnly_folder() {
-    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, false, false, null);
+    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, CounterMode.DEFAULT, false, null);
     assertEquals(expected, Arguments.parse(new String[]{"-i", samplesFolder.toString()}));
     assertEquals(expected, Arguments.parse(new String[]{"--instrument-only", samplesFolder.toString()}));
   }
@@ -181,7 +184,7 @@ public class ArgumentsTest {
     Arguments args = Arguments.parse(new String[]{
         "-v", "-s", "-d", samplesFolder.toString(), lambdaExampleFile.toString(), "arg1", "arg2", "arg3"});
     Arguments expected = new Arguments(
-        RunMode.DEFAULT, lambdaExampleFile, samplesFolder, true, true, new String[]{"arg1", "arg2", "arg3"});
+        RunMode.DEFAULT, lambdaExampleFile, samplesFolder, CounterMode.SYNCHRONIZED, true, new String[]{"arg1", "arg2", "arg3"});
     assertEquals(expected, args);
   }
 
@@ -197,6 +200,290 @@ public class ArgumentsTest {
     assertEquals("Multiple run modes specified.", exception.getMessage());
   }
 
+  @Test
+  public void testStripedCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.STRIPED, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--striped", simpleExampleFile.toString()}));
+    assertEquals(expected, Arguments.parse(new String[]{"--striped", "--striped", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testMappedCounters() {
+    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, CounterMode.MAPPED, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--mapped", "-i", samplesFolder.toString()}));
+  }
+
+  @Test
+  public void testAdaptiveCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.ADAPTIVE, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--adaptive", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--adaptive", "--striped", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testToggleableCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.TOGGLEABLE, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--toggleable", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--toggleable", "--coverage", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testHolderCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.HOLDER, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--holders", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--holders", "--synchronized", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testCoverageCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.COVERAGE, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--coverage", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--coverage", "--sample", "10", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testSampledCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.SAMPLED).setSamplingRate(100).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--sample", "100", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--sample", "1", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Invalid sampling rate: 1", exception.getMessage());
+    String[] args2 = new String[]{"--sample", "x", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("Invalid sampling rate: x", exception.getMessage());
+    String[] args3 = new String[]{"--sample"};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args3));
+    assertEquals("No sampling rate specified.", exception.getMessage());
+    String[] args4 = new String[]{"-s", "--sample", "10", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args4));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testPerThreadCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, CounterMode.PER_THREAD, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--per-thread", simpleExampleFile.toString()}));
+    expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.PER_THREAD).setThreadPattern("pool-\\d+").build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--thread-pattern", "pool-\\d+", simpleExampleFile.toString()}));
+    assertEquals(expected, Arguments.parse(new String[]{"--per-thread", "--thread-pattern", "pool-\\d+", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--thread-pattern", "pool-(", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Invalid thread pattern: pool-(", exception.getMessage());
+    String[] args2 = new String[]{"--thread-pattern"};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("No thread pattern specified.", exception.getMessage());
+    String[] args3 = new String[]{"--per-thread", "--adaptive", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args3));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testMultipleCounterModes() {
+    String[] args1 = new String[]{"-s", "--striped", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+    String[] args2 = new String[]{"--striped", "-v", "--synchronized", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+    String[] args3 = new String[]{"--mapped", "--striped", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args3));
+    assertEquals("Multiple counter modes specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testSnapshotInterval() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setSnapshotInterval(60).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--snapshot-interval", "60", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--snapshot-interval", "-1", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Invalid snapshot interval: -1", exception.getMessage());
+    String[] args2 = new String[]{"--snapshot-interval", "1m", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("Invalid snapshot interval: 1m", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--snapshot-interval"}));
+    assertEquals("No snapshot interval specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testTimeline() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setTimelineInterval(100).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--timeline", "100", simpleExampleFile.toString()}));
+    String[] args1 = new String[]{"--timeline", "0", simpleExampleFile.toString()};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Invalid timeline interval: 0", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--timeline"}));
+    assertEquals("No timeline interval specified.", exception.getMessage());
+  }
+
+  @Test
+  public void testReportOnly_snapshot() {
+    Arguments expected = new Arguments(RunMode.REPORT_ONLY, null, null, ProfilingOptions.defaults(), "latest", null, -1, List.of(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"-r", "--snapshot", "latest"}));
+    expected = new Arguments(RunMode.REPORT_ONLY, null, null, ProfilingOptions.defaults(), "2..latest", null, -1, List.of(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--snapshot", "2..latest", "-r"}));
+    String[] args1 = new String[]{"-r", "--snapshot", "2..first"};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Invalid snapshot: 2..first", exception.getMessage());
+    String[] args2 = new String[]{"--snapshot", "1", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("A snapshot can only be selected in the report-only run mode.", exception.getMessage());
+  }
+
+  @Test
+  public void testReportPhase() {
+    Arguments expected = new Arguments(RunMode.REPORT_ONLY, null, null, ProfilingOptions.defaults(), null, "steady", -1, List.of(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"-r", "--phase", "steady"}));
+    expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, ProfilingOptions.defaults(), null, "steady", -1, List.of(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--phase", "steady", simpleExampleFile.toString()}));
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"-r", "--phase"}));
+    assertEquals("No phase specified.", exception.getMessage());
+    String[] args1 = new String[]{"-i", "--phase", "steady", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("A phase cannot be selected in the instrument-only run mode.", exception.getMessage());
+    String[] args2 = new String[]{"-r", "--phase", "steady", "--snapshot", "latest"};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("A phase cannot be selected together with a snapshot or an attached process.", exception.getMessage());
+  }
+
+  @Test
+  public void testReportOnly_attach() {
+    Arguments expected = new Arguments(RunMode.REPORT_ONLY, null, null, ProfilingOptions.defaults(), null, null, 1234, List.of(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"-r", "--attach", "1234"}));
+    String[] args1 = new String[]{"-r", "--attach", "0"};
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args1));
+    assertEquals("Invalid process id: 0", exception.getMessage());
+    String[] args2 = new String[]{"--attach", "1234", simpleExampleFile.toString()};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args2));
+    assertEquals("A process can only be attached to in the report-only run mode.", exception.getMessage());
+    String[] args3 = new String[]{"-r", "--attach", "1234", "--snapshot", "latest"};
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(args3));
+    assertEquals("A snapshot cannot be selected when attaching to a process.", exception.getMessage());
+  }
+
+  @Test
+  public void testJmxEnabled() {
+    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, simpleExampleFile, null, new ProfilingOptions.Builder().setJmxEnabled(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--jmx", "-i", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testTimingEnabled() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.STRIPED).setTimingEnabled(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--timing", "--striped", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testCpuTimeEnabled() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setTimingEnabled(true).setCpuTimeEnabled(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--cpu-time", simpleExampleFile.toString()}));
+    assertEquals(expected, Arguments.parse(new String[]{"--timing", "--cpu-time", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testCallGraphEnabled() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setTimingEnabled(true).setCallGraphEnabled(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--call-graph", "--timing", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testLoopHistograms() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.STRIPED).setLoopHistograms(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--loop-histograms", "--striped", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testExceptionExits() {
+    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, new ProfilingOptions.Builder().setExceptionExits(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--exception-exits", "-i", samplesFolder.toString()}));
+  }
+
+  @Test
+  public void testUniqueCounts() {
+    Arguments expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.MAPPED).setUniqueCounts(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--unique-counts", "--mapped", "-i", samplesFolder.toString()}));
+  }
+
+  @Test
+  public void testMinimalCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.SAMPLED).setSamplingRate(10).setMinimalCounters(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--minimal-counters", "--sample", "10", simpleExampleFile.toString()}));
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--minimal-counters", "--per-thread", simpleExampleFile.toString()}));
+    assertEquals("Minimal counters cannot be used with the per-thread counter mode.", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--coverage", "--minimal-counters", simpleExampleFile.toString()}));
+    assertEquals("Minimal counters cannot be used with the coverage counter mode.", exception.getMessage());
+  }
+
+  @Test
+  public void testLoopLocalCounters() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setLoopLocalCounters(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--loop-local-counters", simpleExampleFile.toString()}));
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--loop-local-counters", "--synchronized", simpleExampleFile.toString()}));
+    assertEquals("Loop-local counters can only be used with the default counter mode.", exception.getMessage());
+  }
+
+  @Test
+  public void testPreserveInlining() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setPreserveInlining(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--preserve-inlining", simpleExampleFile.toString()}));
+    expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setCounterMode(CounterMode.HOLDER).setMinimalCounters(true).setPreserveInlining(true).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--holders", "--minimal-counters", "--preserve-inlining", simpleExampleFile.toString()}));
+  }
+
+  @Test
+  public void testProfileGuided() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setGuidedThreshold(1000).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--profile-guided", "1000", simpleExampleFile.toString()}));
+    expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, new ProfilingOptions.Builder().setMinimalCounters(true).setGuidedThreshold(1).build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--minimal-counters", "--profile-guided", "1", "-i", samplesFolder.toString()}));
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--profile-guided"}));
+    assertEquals("No hit threshold specified.", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--profile-guided", "0", simpleExampleFile.toString()}));
+    assertEquals("Invalid hit threshold: 0", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--profile-guided", "many", simpleExampleFile.toString()}));
+    assertEquals("Invalid hit threshold: many", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--coverage", "--profile-guided", "100", simpleExampleFile.toString()}));
+    assertEquals("Profile-guided instrumentation cannot be used with the coverage counter mode.", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--profile-guided", "100", "-r"}));
+    assertEquals("Profile-guided instrumentation requires instrumenting the program.", exception.getMessage());
+  }
+
+  @Test
+  public void testPathProfiling() {
+    Arguments expected = new Arguments(RunMode.DEFAULT, simpleExampleFile, null, new ProfilingOptions.Builder().setPathPattern("Simple::main").build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--paths", "Simple::main", simpleExampleFile.toString()}));
+    expected = new Arguments(RunMode.INSTRUMENT_ONLY, samplesFolder, null, new ProfilingOptions.Builder().setMinimalCounters(true).setPathPattern("parse|eval").build(), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--minimal-counters", "--paths", "parse|eval", "-i", samplesFolder.toString()}));
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--paths"}));
+    assertEquals("No path pattern specified.", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--paths", "main(", simpleExampleFile.toString()}));
+    assertEquals("Invalid path pattern: main(", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--paths", "main", "-r"}));
+    assertEquals("Path profiling requires instrumenting the program.", exception.getMessage());
+  }
+
+  @Test
+  public void testMergeCounts() {
+    Arguments expected = new Arguments(RunMode.MERGE_COUNTS, null, null, CounterMode.DEFAULT, false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--merge-counts"}));
+    Path countsFile = samplesFolder.resolve("Simple.java"); // any existing file
+    expected = new Arguments(RunMode.MERGE_COUNTS, null, null, ProfilingOptions.defaults(), null, null, -1, List.of(countsFile, countsFile), false, null);
+    assertEquals(expected, Arguments.parse(new String[]{"--merge-counts", countsFile.toString(), countsFile.toString()}));
+    var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--merge-counts", "-r"}));
+    assertEquals("Multiple run modes specified.", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--merge-counts", samplesFolder.toString()}));
+    assertEquals("Not a counts file: " + samplesFolder.toAbsolutePath().normalize(), exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"--phase", "steady", "--merge-counts"}));
+    assertEquals("A phase cannot be selected in the merge-counts run mode.", exception.getMessage());
+  }
+
   @Test
   public void testOnlyOptions() {
     var exception = assertThrows(IllegalArgumentException.class, () -> Arguments.parse(new String[]{"-s"}));
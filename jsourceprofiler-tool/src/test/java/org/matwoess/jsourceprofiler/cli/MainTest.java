@@ -3,13 +3,14 @@ package org.matwoess.jsourceprofiler.cli;
 import org.junit.jupiter.api.Test;
 import org.matwoess.jsourceprofiler.common.*;
 import org.matwoess.jsourceprofiler.tool.cli.Main;
+import org.matwoess.jsourceprofiler.tool.model.Metadata;
+import org.matwoess.jsourceprofiler.tool.profile.CountsMerger;
+import org.matwoess.jsourceprofiler.tool.profile.Profiler;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.PrintStream;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import static com.github.stefanbirkner.systemlambda.SystemLambda.catchSystemExit;
 import static org.junit.jupiter.api.Assertions.*;
@@ -151,4 +152,485 @@ public class MainTest {
     assertFalse(instrumentedContent.contains("incLambda("));
   }
 
+  @Test
+  public void testInstrumentOnly_counterHeader() throws IOException {
+    Main.main(new String[]{"--timing", "-i", simpleExampleFile.toString()});
+    Metadata metadata = Metadata.importMetadata(IO.getMetadataPath());
+    try (DataInputStream dis = new DataInputStream(new FileInputStream(IO.getCounterHeaderPath().toFile()))) {
+      assertEquals(Metadata.COUNTER_HEADER_VERSION, dis.readInt());
+      assertEquals(metadata.blocksCount(), dis.readInt());
+      assertEquals("DEFAULT", dis.readUTF());
+      assertEquals(1, dis.readInt());
+      assertEquals("", dis.readUTF());
+      assertEquals(-1, dis.readInt());
+      assertEquals(-1, dis.readInt());
+      assertFalse(dis.readBoolean());
+      assertTrue(dis.readBoolean());
+      for (int i = 0; i < 6; i++) {
+        assertFalse(dis.readBoolean());
+      }
+      assertEquals(-1, dis.read());
+    }
+  }
+
+  @Test
+  public void testReportOnly_snapshots() throws IOException {
+    Main.main(new String[]{"--snapshot-interval", "0", "-i", simpleExampleFile.toString()});
+    int nBlocks = Metadata.importMetadata(IO.getMetadataPath()).blocksCount();
+    IO.clearDirectoryContents(IO.getSnapshotsDir());
+    IO.createDirectoriesIfNotExists(IO.getSnapshotPath(1));
+    writeSnapshot(1, nBlocks, 1);
+    writeSnapshot(2, nBlocks, 3);
+    Main.main(new String[]{"-r", "--snapshot", "1"});
+    Main.main(new String[]{"-r", "--snapshot", "latest"});
+    Main.main(new String[]{"-r", "--snapshot", "1..latest"});
+    assertTrue(IO.getReportIndexSymLinkPath().toFile().exists());
+    RuntimeException ex = assertThrows(RuntimeException.class, () -> Main.main(new String[]{"-r", "--snapshot", "3"}));
+    assertTrue(ex.getMessage().contains("counts-000003.dat"));
+  }
+
+  @Test
+  public void testReportOnly_attach() throws IOException, InterruptedException {
+    Path mainFile = Files.createTempDirectory("attach").resolve("Waiting.java");
+    Files.writeString(mainFile, """
+        public class Waiting {
+          public static void main(String[] args) throws Exception {
+            for (int i = 0; i < 5; i++) {
+              System.out.println("iteration " + i);
+            }
+            System.out.println("ready");
+            System.in.read();
+          }
+        }
+        """);
+    Main.main(new String[]{"--jmx", "-i", mainFile.toString()});
+    Path instrDir = IO.getInstrumentDir();
+    int exitCode = Util.runCommand(new JCompilerCommandBuilder()
+        .setClassPath(instrDir)
+        .setDirectory(instrDir)
+        .addSourceFile(instrDir.resolve(mainFile.getFileName()))
+        .build());
+    assertEquals(0, exitCode);
+    Process process = new ProcessBuilder(new JavaCommandBuilder()
+        .setClassPath(instrDir)
+        .setMainClass("Waiting")
+        .build()).start();
+    try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+      String line;
+      do {
+        line = output.readLine();
+      } while (line != null && !line.equals("ready"));
+      Main.main(new String[]{"-r", "--attach", String.valueOf(process.pid())});
+      String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+      assertTrue(reportSource.contains("5 hits"));
+    } finally {
+      process.getOutputStream().close();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testDefaultMode_phases() throws IOException {
+    Path mainFile = Files.createTempDirectory("phases").resolve("Phases.java");
+    Files.writeString(mainFile, """
+        public class Phases {
+          public static void main(String[] args) {
+            for (int i = 0; i < 100; i++) {
+              work(i);
+            }
+            auxiliary.__Counter.begin("steady");
+            for (int i = 0; i < 7; i++) {
+              work(i);
+            }
+            auxiliary.__Counter.end();
+          }
+        
+          static int work(int i) {
+            return i * 2;
+          }
+        }
+        """);
+    Main.main(new String[]{"--phase", "steady", mainFile.toString()});
+    assertTrue(IO.getPhasesPath().toFile().isFile());
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("7 hits"));
+    assertFalse(reportSource.contains("107 hits"));
+    Main.main(new String[]{"-r"});
+    reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("107 hits"));
+    RuntimeException ex = assertThrows(IllegalArgumentException.class, () -> Main.main(new String[]{"-r", "--phase", "warmup"}));
+    assertEquals("Unknown phase: warmup (recorded phases: steady)", ex.getMessage());
+    Main.main(new String[]{"-i", mainFile.toString()});
+    assertFalse(IO.getPhasesPath().toFile().exists());
+  }
+
+  @Test
+  public void testDefaultMode_counterOverflow() throws IOException {
+    Path mainFile = Files.createTempDirectory("overflow").resolve("Overflow.java");
+    // block 1 is the loop body, its counter is set close to 2^31 instead of iterating billions of times
+    Files.writeString(mainFile, """
+        public class Overflow {
+          public static void main(String[] args) {
+            auxiliary.__Counter.addHits(1, Integer.MAX_VALUE - 1L);
+            for (int i = 0; i < 3; i++) {
+              // the second increment reaches 2^31 and is carried over to the promoted count
+            }
+            auxiliary.__Counter.addHits(1, 3_000_000_000L);
+          }
+        }
+        """);
+    Main.main(new String[]{mainFile.toString()});
+    long expectedHits = Integer.MAX_VALUE - 1L + 3 + 3_000_000_000L;
+    assertEquals(expectedHits, Profiler.readCounts(IO.getCountsPath())[1]);
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("5,147,483,649 hits"));
+  }
+
+  @Test
+  public void testDefaultMode_minimalCounters() throws IOException {
+    Path mainFile = Files.createTempDirectory("minimal").resolve("Minimal.java");
+    Files.writeString(mainFile, """
+        public class Minimal {
+          public static void main(String[] args) {
+            int total = 0;
+            for (int i = 0; i < 20; i++) {
+              if (i % 3 == 0) {
+                total += 1;
+              } else if (i % 3 == 1) {
+                total += 2;
+              } else {
+                total += 3;
+              }
+              try {
+                total += kind(i);
+              } finally {
+                total++;
+              }
+            }
+          }
+        
+          static int kind(int i) {
+            return switch (i % 4) {
+              case 0 -> 10;
+              case 1 -> 20;
+              default -> 30;
+            };
+          }
+        }
+        """);
+    Main.main(new String[]{"--minimal-counters", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("try {\n"));
+    assertTrue(instrumented.contains("} finally {\n"));
+    assertTrue(instrumented.contains("} else {\n"));
+    assertTrue(instrumented.contains("default -> 30;"));
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("20 hits")); // try and finally
+    assertTrue(reportSource.contains("6 hits")); // else
+    assertTrue(reportSource.contains("10 hits")); // default case
+  }
+
+  @Test
+  public void testDefaultMode_exceptionExits() throws IOException {
+    Path mainFile = Files.createTempDirectory("exceptions").resolve("Exceptions.java");
+    Files.writeString(mainFile, """
+        public class Exceptions {
+          public static void main(String[] args) {
+            int caught = 0;
+            for (int i = 0; i < 10; i++) {
+              try {
+                work(i);
+              } catch (IllegalStateException e) {
+                caught++;
+              }
+            }
+            System.out.println(caught);
+          }
+        
+          static void work(int i) {
+            check(i);
+            System.out.println("done");
+          }
+        
+          static void check(int i) {
+            if (i > 6) {
+              throw new IllegalStateException();
+            }
+            System.out.println("checked");
+          }
+        }
+        """);
+    Main.main(new String[]{"--exception-exits", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("__Counter.exceptionExit("));
+    assertTrue(instrumented.contains("__Counter.exceptionCaught("));
+    assertTrue(instrumented.contains("__Counter.enterFrame()"));
+    assertTrue(IO.getExceptionExitsPath().toFile().exists());
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("7 hits (10 - 3 thrown)")); // println after check
+    // the region split after the throwing line starts at the line beginning, its indentation is not a span of its own
+    assertTrue(reportSource.contains("<tr id=\"16\"><td class=\"code\"><span class=\"c b r b4 r4_1\" title=\"7 hits (10 - 3 thrown)\">"
+        + "    System.out.println(\"done\");</span></td></tr>"));
+    assertTrue(reportSource.contains("3 hits")); // catch
+    assertTrue(reportSource.contains("7 hits (10 - 3)")); // println after throwing if
+    assertFalse(reportSource.contains("10 - 3 - 3 thrown"));
+  }
+
+  @Test
+  public void testDefaultMode_toggleableCounters() throws IOException {
+    Path mainFile = Files.createTempDirectory("toggleable").resolve("Toggle.java");
+    Files.writeString(mainFile, """
+        public class Toggle {
+          public static void main(String[] args) throws Exception {
+            Class<?> counter = Class.forName("auxiliary.__Counter");
+            counter.getMethod("disable").invoke(null);
+            for (int i = 0; i < 10; i++) {
+              work(i);
+            }
+            counter.getMethod("enable").invoke(null);
+            for (int i = 0; i < 5; i++) {
+              work(i);
+            }
+          }
+        
+          static int work(int i) {
+            return i * 2;
+          }
+        }
+        """);
+    Main.main(new String[]{"--toggleable", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("__Counter.incToggleable("));
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"0 hits\">      work(i);")); // first loop, disabled
+    assertTrue(reportSource.contains("title=\"5 hits\">    return i * 2;")); // only enabled calls
+  }
+
+  @Test
+  public void testDefaultMode_loopLocalCounters() throws IOException {
+    Path mainFile = Files.createTempDirectory("looplocal").resolve("LoopLocal.java");
+    Files.writeString(mainFile, """
+        public class LoopLocal {
+          public static void main(String[] args) {
+            int sum = 0;
+            for (int i = 0; i < 10; i++) {
+              sum += i;
+            }
+            try {
+              for (int i = 0; i < 10; i++) {
+                if (i == 4) {
+                  throw new IllegalStateException();
+                }
+              }
+            } catch (IllegalStateException e) {
+              System.out.println(sum);
+            }
+          }
+        }
+        """);
+    Main.main(new String[]{"--loop-local-counters", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("__hits"));
+    assertTrue(instrumented.contains("__Counter.addHits("));
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"10 hits\">      sum += i;"));
+    assertTrue(reportSource.contains("title=\"5 hits\">        if (i == 4)")); // flushed on the exception
+  }
+
+  @Test
+  public void testDefaultMode_counterHolders() throws IOException {
+    Main.main(new String[]{"--holders", lambdaExampleFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(lambdaExampleFile.getFileName()));
+    assertTrue(instrumented.contains("__Counts_Lambdas.HITS[0]++;"));
+    assertTrue(instrumented.contains("__Counter.incLambdaHolder(__Counts_Lambdas.HITS, "));
+    assertTrue(instrumented.contains("final class __Counts_Lambdas {static final long[] HITS = __Counter.register(0, "));
+    assertFalse(instrumented.contains("__Counter.inc("));
+    String reportSource = Files.readString(IO.getReportSourceFilePath(lambdaExampleFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"6 hits\""));
+  }
+
+  @Test
+  public void testDefaultMode_preserveInlining() throws IOException {
+    Path mainFile = Files.createTempDirectory("inlining").resolve("Inlining.java");
+    Files.writeString(mainFile, """
+        public class Inlining {
+          public static void main(String[] args) {
+            int sum = 0;
+            for (int i = -5; i < 10; i++) {
+              sum += sign(i);
+            }
+            System.out.println(sum);
+          }
+        
+          static int sign(int x) {
+            if (x < 0) {
+              return -1;
+            } else if (x > 0) {
+              return 1;
+            }
+            return 0;
+          }
+        }
+        """);
+    Main.main(new String[]{"--preserve-inlining", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("static int sign(int x) {__Counter.inc("));
+    assertTrue(instrumented.contains("if (x < 0) {\n"));
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"15 hits\">    if (x &lt; 0)"));
+    assertTrue(reportSource.contains("title=\"not counted (only the method invocations are)\">      return -1;"));
+    assertTrue(reportSource.contains("title=\"not counted (only the method invocations are)\">    return 0;"));
+    assertTrue(reportSource.contains("title=\"15 hits\">      sum += sign(i);"));
+  }
+
+  @Test
+  public void testDefaultMode_methodSizeLimit() throws IOException {
+    Path mainFile = Files.createTempDirectory("sizelimit").resolve("SizeLimit.java");
+    StringBuilder cases = new StringBuilder();
+    for (int i = 0; i < 3200; i++) {
+      cases.append(String.format("      case %d: r = x * %d + %d; break;%n", i, i % 97, i));
+    }
+    Files.writeString(mainFile, """
+        public class SizeLimit {
+          public static void main(String[] args) {
+            System.out.println(map(1) + map(2));
+          }
+        
+          static int map(int x) {
+            int r = 0;
+            switch (x) {
+        %s      default: r = -1;
+            }
+            return r;
+          }
+        }
+        """.formatted(cases));
+    Main.main(new String[]{mainFile.toString()}); // compiles only with the method counter of 'map'
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"2 hits\">    return r;"));
+    assertTrue(reportSource.contains("not counted"));
+  }
+
+  @Test
+  public void testDefaultMode_profileGuided() throws IOException {
+    Path mainFile = Files.createTempDirectory("guided").resolve("Guided.java");
+    Files.writeString(mainFile, """
+        public class Guided {
+          public static void main(String[] args) {
+            int sum = 0;
+            for (int i = 0; i < 100; i++) {
+              if (i % 4 == 0) {
+                sum += i;
+              }
+            }
+            System.out.println(sum);
+          }
+        }
+        """);
+    Main.main(new String[]{mainFile.toString()});
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"100 hits\">      if (i % 4 == 0)"));
+    Main.main(new String[]{"--profile-guided", "50", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("for (int i = 0; i < 100; i++) {\n"));
+    assertTrue(instrumented.contains("if (i % 4 == 0) {__Counter.inc("));
+    reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"~100 hits [inferred from the previous run]\">      if (i % 4 == 0)"));
+    assertTrue(reportSource.contains("title=\"25 hits\">        sum += i;"));
+    String overhead = Files.readString(IO.getReportOverheadPath());
+    assertTrue(overhead.contains("Guided::main"));
+    assertTrue(overhead.contains("blocks inferred from the previous run: 1"));
+  }
+
+  @Test
+  public void testDefaultMode_pathProfiling() throws IOException {
+    Path mainFile = Files.createTempDirectory("paths").resolve("Paths.java");
+    Files.writeString(mainFile, """
+        public class Paths {
+          static int classify(int i) {
+            int r = 0;
+            if (i % 2 == 0) {
+              r += 1;
+            } else {
+              r += 2;
+            }
+            for (int j = 0; j < i % 3; j++) {
+              r++;
+            }
+            return r;
+          }
+
+          public static void main(String[] args) {
+            int sum = 0;
+            for (int i = 0; i < 100; i++) {
+              sum += classify(i);
+            }
+            System.out.println(sum);
+          }
+        }
+        """);
+    Main.main(new String[]{"--paths", "::classify", mainFile.toString()});
+    String instrumented = Files.readString(IO.getInstrumentedFilePath(mainFile.getFileName()));
+    assertTrue(instrumented.contains("long __path0 = 0;try {"));
+    assertTrue(instrumented.contains("__path0 += 1L;"));
+    assertTrue(instrumented.contains("__path0 += 2L;"));
+    assertTrue(instrumented.contains("} finally {__Counter.recordPath(0, __path0);}}"));
+    assertFalse(instrumented.contains("__path5"));
+    String paths = Files.readString(IO.getReportPathsPath());
+    assertTrue(paths.contains("Paths::classify</a>"));
+    assertTrue(paths.contains("<p>100 executions, 2 of 3 possible paths taken</p>"));
+    assertTrue(paths.contains("<p>Path 1: 50 executions (50.0%)</p>"));
+    assertTrue(paths.contains("Paths::classify (loop in line 9)</a>"));
+    assertTrue(paths.contains("<span class=\"off\">   7        r += 2;</span>"));
+    String index = Files.readString(IO.getReportIndexPath());
+    assertTrue(index.contains("Path Profiles</a> (2 path regions)"));
+  }
+
+  @Test
+  public void testMergeCounts_uniqueCounts() throws IOException {
+    Main.main(new String[]{"--unique-counts", simpleExampleFile.toString()});
+    assertEquals(1, CountsMerger.getRunCountsFiles().size());
+    String reportSource = Files.readString(IO.getReportSourceFilePath(simpleExampleFile.getFileName()));
+    assertTrue(reportSource.contains("1 hit"));
+    for (String runId : new String[]{"shard-1", "shard-2"}) {
+      String[] command = {"java", "-Djsourceprofiler.runId=" + runId, "-cp", IO.getClassesDir().toString(), "Simple"};
+      assertEquals(0, Util.runCommand(command));
+    }
+    assertTrue(IO.getRunCountsDir().resolve("counts-shard-2.dat").toFile().isFile());
+    assertEquals(3, CountsMerger.getRunCountsFiles().size());
+    Main.main(new String[]{"--merge-counts"});
+    reportSource = Files.readString(IO.getReportSourceFilePath(simpleExampleFile.getFileName()));
+    assertTrue(reportSource.contains("3 hits"));
+    Main.main(new String[]{"--merge-counts", IO.getRunCountsDir().resolve("counts-shard-1.dat").toString()});
+    reportSource = Files.readString(IO.getReportSourceFilePath(simpleExampleFile.getFileName()));
+    assertFalse(reportSource.contains("3 hits"));
+    Main.main(new String[]{"-r"});
+    reportSource = Files.readString(IO.getReportSourceFilePath(simpleExampleFile.getFileName()));
+    assertTrue(reportSource.contains("3 hits"));
+  }
+
+  @Test
+  public void testMergeCounts_mismatchingBlockCount() throws IOException {
+    Main.main(new String[]{"--snapshot-interval", "0", "-i", simpleExampleFile.toString()});
+    int nBlocks = Metadata.importMetadata(IO.getMetadataPath()).blocksCount();
+    IO.clearDirectoryContents(IO.getSnapshotsDir());
+    IO.createDirectoriesIfNotExists(IO.getSnapshotPath(1));
+    writeSnapshot(1, nBlocks, 2);
+    writeSnapshot(2, nBlocks + 1, 3);
+    long[] counts = CountsMerger.merge(List.of(IO.getSnapshotPath(1), IO.getSnapshotPath(1)), nBlocks);
+    assertEquals(4, counts[0]);
+    RuntimeException ex = assertThrows(RuntimeException.class, () -> Main.main(new String[]{"--merge-counts", IO.getSnapshotPath(2).toString()}));
+    assertTrue(ex.getMessage().startsWith("Mismatching block count in counts file"));
+    ex = assertThrows(IllegalArgumentException.class, () -> Main.main(new String[]{"--merge-counts"}));
+    assertTrue(ex.getMessage().startsWith("No counts files to merge in"));
+  }
+
+  private static void writeSnapshot(int sequenceNumber, int nBlocks, long count) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(IO.getSnapshotPath(sequenceNumber).toFile()))) {
+      dos.writeInt(nBlocks);
+      for (int i = 0; i < nBlocks; i++) {
+        dos.writeLong(count);
+      }
+    }
+  }
 }
@@ -5,10 +5,16 @@ import org.matwoess.jsourceprofiler.common.JCompilerCommandBuilder;
 import org.matwoess.jsourceprofiler.common.JavaCommandBuilder;
 import org.matwoess.jsourceprofiler.common.Util;
 import org.junit.jupiter.api.Test;
+import org.matwoess.jsourceprofiler.tool.model.Metadata;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -151,6 +157,38 @@ public class SamplesTest {
     TestUtils.instrumentFolderAndProfile(samplesFolder, "AllSamples.java");
   }
 
+  @Test
+  public void testAllSamplesSample_Folder_Timing() throws IOException {
+    Path mainFile = samplesFolder.resolve("AllSamples.java");
+    TestUtils.instrumentAndProfileWithArgs("--timing", "-d", samplesFolder.toString(), mainFile.toString());
+    assertTrue(IO.getTimingsPath().toFile().isFile());
+    String classIndex = Files.readString(IO.getReportIndexPath());
+    assertTrue(classIndex.contains("Self Time"));
+    String methodIndex = Files.readString(IO.getReportMethodIndexPath("AllSamples"));
+    assertTrue(methodIndex.contains("Max Time"));
+    assertFalse(methodIndex.contains("CPU Time"));
+  }
+
+  @Test
+  public void testAllSamplesSample_Folder_CpuTime() throws IOException {
+    Path mainFile = samplesFolder.resolve("AllSamples.java");
+    TestUtils.instrumentAndProfileWithArgs("--cpu-time", "-d", samplesFolder.toString(), mainFile.toString());
+    String methodIndex = Files.readString(IO.getReportMethodIndexPath("AllSamples"));
+    assertTrue(methodIndex.contains("CPU Time"));
+  }
+
+  @Test
+  public void testAllSamplesSample_Folder_CallGraph() throws IOException {
+    Path mainFile = samplesFolder.resolve("AllSamples.java");
+    TestUtils.instrumentAndProfileWithArgs("--call-graph", "--timing", "-d", samplesFolder.toString(), mainFile.toString());
+    assertTrue(IO.getCallEdgesPath().toFile().isFile());
+    String callGraph = Files.readString(IO.getReportCallGraphPath());
+    assertTrue(callGraph.contains("<tr id=\"Algorithms::fib-23\">"));
+    assertTrue(callGraph.contains("<a href=\"#Algorithms::fib-23\">Algorithms::fib</a> (266)<br><a href=\"#Algorithms::main-4\">Algorithms::main</a> (9)"));
+    String methodIndex = Files.readString(IO.getReportMethodIndexPath("Algorithms"));
+    assertTrue(methodIndex.contains("<a href=\"callgraph.html#Algorithms::fib-23\">2</a>"));
+  }
+
 
   @Test
   public void testHelperSample_NoMainClass() {
@@ -200,6 +238,32 @@ public class SamplesTest {
     TestUtils.instrumentFolderAndProfile(samplesFolder, "ControlBreaks.java");
   }
 
+  @Test
+  public void testControlBreaksSample_LoopHistograms() throws IOException {
+    Path mainFile = samplesFolder.resolve("ControlBreaks.java");
+    TestUtils.instrumentAndProfileWithArgs("--loop-histograms", mainFile.toString());
+    assertTrue(IO.getLoopHistogramsPath().toFile().isFile());
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"13 hits&#10;4 loop executions by iterations:&#10;  1: 1 (25.0%)&#10;  4-7: 3 (75.0%)\""));
+    assertTrue(reportSource.contains("title=\"15 hits&#10;5 loop executions by iterations:&#10;  1: 4 (80.0%)&#10;  8-15: 1 (20.0%)\""));
+    String classIndex = Files.readString(IO.getReportIndexPath());
+    assertTrue(classIndex.contains("<a href=\"loops.html\">Loop Overview</a> (10 executed loops)"));
+    assertTrue(IO.getReportLoopIndexPath().toFile().isFile());
+  }
+
+  @Test
+  public void testAlgorithmsSample_Timeline() throws IOException {
+    Path mainFile = samplesFolder.resolve("Algorithms.java");
+    TestUtils.instrumentAndProfileWithArgs("--timeline", "10", mainFile.toString(), "20");
+    assertTrue(IO.getTimelinePath().toFile().isFile());
+    String classIndex = Files.readString(IO.getReportIndexPath());
+    assertTrue(classIndex.contains("<a href=\"timeline.html\">Timeline</a>"));
+    String timeline = Files.readString(IO.getReportTimelinePath());
+    assertTrue(timeline.contains("<a href=\"index_Algorithms.html\">Algorithms</a>"));
+    assertTrue(timeline.contains("Algorithms::fib</a>"));
+    assertTrue(timeline.contains("<polyline points="));
+  }
+
   @Test
   public void testLocalFilesSample() throws IOException {
     Path mainFile = samplesFolder.resolve("LocalFiles.java");
@@ -231,6 +295,75 @@ public class SamplesTest {
     TestUtils.instrumentAndProfileWithArgs("--synchronized", mainFile.toString(), String.valueOf(5_000_000), "4");
   }
 
+  @Test
+  public void testParallelSumSample_StripedCounters() throws IOException {
+    Path mainFile = samplesFolder.resolve("ParallelSum.java");
+    TestUtils.instrumentAndProfileWithArgs("--striped", mainFile.toString(), String.valueOf(5_000_000), "4");
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"5,000,000 hits\">        partialSum = accumulate(partialSum, getNumberAtIndex(i));"));
+  }
+
+  @Test
+  public void testParallelSumSample_MappedCounters() throws IOException {
+    Path mainFile = samplesFolder.resolve("ParallelSum.java");
+    TestUtils.instrumentAndProfileWithArgs("--mapped", mainFile.toString(), String.valueOf(5_000_000), "4");
+    int nBlocks = Metadata.importMetadata(IO.getMetadataPath()).blocksCount();
+    File countsFile = IO.getCountsPath().toFile();
+    assertTrue(countsFile.isFile());
+    assertEquals(8 + 8L * nBlocks, countsFile.length());
+    try (DataInputStream dis = new DataInputStream(new FileInputStream(countsFile))) {
+      assertEquals(nBlocks, dis.readInt());
+      assertEquals(0, dis.readInt());
+    }
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"5,000,000 hits\">        partialSum = accumulate(partialSum, getNumberAtIndex(i));"));
+  }
+
+  @Test
+  public void testParallelSumSample_AdaptiveCounters() throws IOException {
+    Path mainFile = samplesFolder.resolve("ParallelSum.java");
+    TestUtils.instrumentAndProfileWithArgs("--adaptive", mainFile.toString(), String.valueOf(5_000_000), "4");
+    assertTrue(IO.getSharedBlocksPath().toFile().isFile());
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("[shared by multiple threads]"));
+  }
+
+  @Test
+  public void testParallelSumSample_PerThreadCounters() throws IOException {
+    Path mainFile = samplesFolder.resolve("ParallelSum.java");
+    TestUtils.instrumentAndProfileWithArgs("--thread-pattern", "pool-\\d+", mainFile.toString(), String.valueOf(5_000_000), "4");
+    assertTrue(IO.getThreadCountsPath().toFile().isFile());
+    String threadIndex = Files.readString(IO.getReportThreadIndexPath());
+    assertTrue(threadIndex.contains("<td>pool-1</td>"));
+    assertTrue(threadIndex.contains("<td>main</td>"));
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("pool-1: 5,000,000 (100.0%)"));
+  }
+
+  @Test
+  public void testParallelSumSample_Coverage() throws IOException {
+    Path mainFile = samplesFolder.resolve("ParallelSum.java");
+    TestUtils.instrumentAndProfileWithArgs("--coverage", mainFile.toString(), String.valueOf(5_000_000), "4");
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    assertTrue(reportSource.contains("title=\"covered\""));
+    assertFalse(reportSource.contains(" hits"));
+    String classIndex = Files.readString(IO.getReportIndexPath());
+    assertTrue(classIndex.contains("Code Block Coverage"));
+    assertFalse(classIndex.contains("Total Method Calls"));
+  }
+
+  @Test
+  public void testParallelSumSample_SampledCounters() throws IOException {
+    Path mainFile = samplesFolder.resolve("ParallelSum.java");
+    TestUtils.instrumentAndProfileWithArgs("--sample", "100", mainFile.toString(), String.valueOf(5_000_000), "4");
+    String reportSource = Files.readString(IO.getReportSourceFilePath(mainFile.getFileName()));
+    Matcher matcher = Pattern.compile("title=\"~([\\d,]+) hits\">        partialSum = accumulate").matcher(reportSource);
+    assertTrue(matcher.find());
+    long estimate = Long.parseLong(matcher.group(1).replace(",", ""));
+    // about 50,000 samples of 100 hits each, so the estimate should be well within 5%
+    assertTrue(Math.abs(estimate - 5_000_000) <= 250_000, "estimate: " + estimate);
+  }
+
   @Test
   public void testParallelSumSample_noCounters() {
     Path mainFile = samplesFolder.resolve("ParallelSum.java");
@@ -0,0 +1,118 @@
+package org.matwoess.jsourceprofiler.tool.instrument;
+
+import org.junit.jupiter.api.Test;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
+import org.matwoess.jsourceprofiler.tool.model.Block;
+import org.matwoess.jsourceprofiler.tool.model.BlockType;
+import org.matwoess.jsourceprofiler.tool.model.JavaFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.matwoess.jsourceprofiler.tool.instrument.InliningPolicy.*;
+
+public class InliningPolicyTest {
+  // two counter-statements (method and if block) of 6 bytes each
+  private static final int COUNTERS_SIZE = 12;
+  // the if statement and the return statement of the test method
+  private static final int BASE_SIZE = 12;
+
+  @Test
+  public void testMaxInlineSize() throws IOException {
+    ProfilingOptions options = new ProfilingOptions.Builder().setPreserveInlining(true).build();
+    assertFalse(isReduced(MAX_INLINE_SIZE - COUNTERS_SIZE, options));
+    assertTrue(isReduced(MAX_INLINE_SIZE - COUNTERS_SIZE + 1, options));
+    assertTrue(isReduced(MAX_INLINE_SIZE, options));
+    assertFalse(isReduced(MAX_INLINE_SIZE + 1, options)); // not inlined without counters either
+  }
+
+  @Test
+  public void testFreqInlineSize() throws IOException {
+    ProfilingOptions options = new ProfilingOptions.Builder().setPreserveInlining(true).build();
+    assertFalse(isReduced(FREQ_INLINE_SIZE - COUNTERS_SIZE, options));
+    assertTrue(isReduced(FREQ_INLINE_SIZE - COUNTERS_SIZE + 1, options));
+    assertTrue(isReduced(FREQ_INLINE_SIZE, options));
+    assertFalse(isReduced(FREQ_INLINE_SIZE + 1, options));
+  }
+
+  @Test
+  public void testMaxMethodSize() throws IOException {
+    ProfilingOptions options = ProfilingOptions.defaults();
+    assertFalse(isReduced(MAX_METHOD_SIZE - COUNTERS_SIZE, options));
+    assertTrue(isReduced(MAX_METHOD_SIZE - COUNTERS_SIZE + 1, options));
+  }
+
+  @Test
+  public void testFreqInlineSize_withTiming() throws IOException {
+    ProfilingOptions options = new ProfilingOptions.Builder().setPreserveInlining(true).setTimingEnabled(true).build();
+    // startTiming, two copies of the finally block with stopTiming (for the return in the if block and at the end)
+    int timingSize = 5 + 2 * 8 + TRY_FINALLY_SIZE;
+    assertFalse(isReduced(FREQ_INLINE_SIZE - COUNTERS_SIZE - timingSize, options));
+    assertTrue(isReduced(FREQ_INLINE_SIZE - COUNTERS_SIZE - timingSize + 1, options));
+  }
+
+  @Test
+  public void testMaxMethodSize_withLoopLocalCounters() throws IOException {
+    ProfilingOptions options = new ProfilingOptions.Builder().setLoopLocalCounters(true).build();
+    String content = """
+        class Sizes {
+          static int m(int x) {
+            while (x > 0) {
+              x--;
+            }
+        %s    return x;
+          }
+        }
+        """;
+    // the while statement and the return statement take 12 bytes as well, its wrapper 3 + 2 * 8 + 8
+    int loopSize = 3 + 2 * 8 + TRY_FINALLY_SIZE;
+    assertFalse(isReduced(content, MAX_METHOD_SIZE - COUNTERS_SIZE - loopSize, options));
+    assertTrue(isReduced(content, MAX_METHOD_SIZE - COUNTERS_SIZE - loopSize + 1, options));
+  }
+
+  private static boolean isReduced(int originalSize, ProfilingOptions options) throws IOException {
+    String content = """
+        class Sizes {
+          static int m(int x) {
+            if (x > 0) {
+              return 1;
+            }
+        %s    return x;
+          }
+        }
+        """;
+    return isReduced(content, originalSize, options);
+  }
+
+  /**
+   * Analyzes the given class, with statements inserted into its method,
+   * so that the estimated size of the method is the given size.
+   *
+   * @return whether the inner block of the method was left uncounted
+   */
+  private static boolean isReduced(String content, int originalSize, ProfilingOptions options) throws IOException {
+    String fileContent = content.formatted(fillerStatements(originalSize - BASE_SIZE));
+    JavaFile javaFile = TestInstrumentUtils.analyzeStringContent(fileContent, options, false).javaFiles[0];
+    Block methodBlock = javaFile.foundBlocks.stream().filter(b -> b.blockType == BlockType.METHOD).findFirst().orElseThrow();
+    String sourceCode = Files.readString(javaFile.sourceFile, StandardCharsets.ISO_8859_1);
+    assertEquals(originalSize, estimateBytecodeSize(sourceCode, methodBlock, List.of()));
+    return methodBlock.innerBlocks.get(0).uncounted;
+  }
+
+  /**
+   * Returns statements with the given estimated size, using assignments of 5 bytes and increments of 3 bytes.
+   *
+   * @param size the size in bytes (at least 8)
+   * @return the statements, one per line
+   */
+  private static String fillerStatements(int size) {
+    int increments = 0;
+    while ((size - 3 * increments) % 5 != 0) {
+      increments++;
+    }
+    return "    x = 1;\n".repeat((size - 3 * increments) / 5) + "    x++;\n".repeat(increments);
+  }
+}
@@ -1,8 +1,12 @@
 package org.matwoess.jsourceprofiler.tool.instrument;
 
+import org.matwoess.jsourceprofiler.tool.model.CodeInsert;
 import org.matwoess.jsourceprofiler.tool.model.JavaFile;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.matwoess.jsourceprofiler.tool.instrument.TestProgramBuilder.*;
 import static org.matwoess.jsourceprofiler.tool.instrument.TestInstrumentUtils.parseJavaFile;
 import static org.matwoess.jsourceprofiler.tool.model.BlockType.*;
@@ -244,4 +248,52 @@ public class LambdaExpressionsTest {
     );
     TestInstrumentUtils.assertResultEquals(expected, parseJavaFile(fileContent));
   }
+
+  @Test
+  public void testSSLambdaRewriting_ValueOnlyBodies() {
+    String fileContent = """
+        class A {
+          Function<Integer, Integer> addTwo = x -> x + 2;
+          Function<Object, String> cast = o -> (String) o;
+          Supplier<int[]> array = () -> new int[]{1, 2};
+          Runnable print = () -> System.out.println("x -> x + 1");
+          Function<String, String> trim = s -> s.trim();
+          Supplier<Object> create = () -> new Object();
+        }
+        """;
+    Instrumenter instrumenter = TestInstrumentUtils.analyzeStringContent(fileContent);
+    JavaFile javaFile = instrumenter.javaFiles[0];
+    List<String> lambdaInserts = instrumenter.getCodeInserts(javaFile, fileContent).stream()
+        .map(CodeInsert::code)
+        .filter(code -> code.contains("__Counter.inc"))
+        .toList();
+    assertEquals(List.of(
+        "{__Counter.inc(0);return ",
+        "{__Counter.inc(1);return ",
+        "{__Counter.inc(2);return ",
+        "__Counter.incLambda(3, () -> ",
+        "__Counter.incLambda(4, () -> ",
+        "__Counter.incLambda(5, () -> "
+    ), lambdaInserts);
+  }
+
+  @Test
+  public void testSSLambdaBodyAnalysis() {
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("x * 2"));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("a ? b() : c()"));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("!list.isEmpty()"));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("(a)"));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("x.length"));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("\"text\""));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("y -> y.run()"));
+    assertTrue(LambdaBodyAnalyzer.isValueOnly("new List<int[]>[n]"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("x = 5"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("counter++"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("++counter"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("list.add(x)"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("new Thread(r)"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("new ArrayList<int[]>() {}"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("((Runnable) r).run()"));
+    assertFalse(LambdaBodyAnalyzer.isValueOnly("list.add(/* a + b */ x)"));
+  }
 }
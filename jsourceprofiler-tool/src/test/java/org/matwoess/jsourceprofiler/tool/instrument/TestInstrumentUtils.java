@@ -3,6 +3,8 @@ package org.matwoess.jsourceprofiler.tool.instrument;
 import org.matwoess.jsourceprofiler.common.OS;
 import org.matwoess.jsourceprofiler.common.RunMode;
 import org.matwoess.jsourceprofiler.tool.cli.Arguments;
+import org.matwoess.jsourceprofiler.tool.cli.CounterMode;
+import org.matwoess.jsourceprofiler.tool.cli.ProfilingOptions;
 import org.matwoess.jsourceprofiler.tool.model.JavaFile;
 
 import java.io.IOException;
@@ -28,9 +30,13 @@ public class TestInstrumentUtils {
   }
 
   public static Instrumenter analyzeStringContent(String content) {
+    return analyzeStringContent(content, new ProfilingOptions.Builder().setCounterMode(CounterMode.DEFAULT).build(), true);
+  }
+
+  public static Instrumenter analyzeStringContent(String content, ProfilingOptions options, boolean verbose) {
     Path file = createTempFileWithContent(content);
     JavaFile javaFile = new JavaFile(file);
-    Arguments args = new Arguments(RunMode.DEFAULT, null, null, false, true, null);
+    Arguments args = new Arguments(RunMode.DEFAULT, null, null, options, verbose, null);
     Instrumenter instrumenter = new Instrumenter(new JavaFile[]{javaFile}, args);
     instrumenter.analyzeFiles();
     return instrumenter;